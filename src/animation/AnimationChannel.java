@@ -0,0 +1,95 @@
+package animation;
+
+/**
+ * 一个正在播放的动画片段，由Animator.play()创建，用于控制播放的进度和速度。
+ */
+public class AnimationChannel {
+
+    // 动画片段
+    final AnimationClip clip;
+    // 与轨道一一对应的目标
+    final AnimationTarget[] targets;
+
+    // 当前时间（秒）
+    float time;
+    // 播放速度
+    float speed = 1f;
+    // 是否循环播放
+    boolean loop;
+    // 是否已经停止
+    boolean stopped;
+    // 非循环播放已经结束，并且最后一帧已经写入目标。
+    boolean settled;
+
+    AnimationChannel(AnimationClip clip, AnimationTarget[] targets, boolean loop) {
+        this.clip = clip;
+        this.targets = targets;
+        this.loop = loop;
+    }
+
+    /**
+     * 推进播放时间。循环播放时回到开头，否则停在最后一帧。
+     * @param delta
+     */
+    void advance(float delta) {
+        time += delta * speed;
+        float length = clip.getLength();
+        if (length <= 0f) {
+            time = 0f;
+        } else if (loop) {
+            time %= length;
+            if (time < 0f) {
+                time += length;
+            }
+        } else {
+            time = Math.max(0f, Math.min(time, length));
+        }
+    }
+
+    public AnimationClip getClip() {
+        return clip;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public void setTime(float time) {
+        this.time = time;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * 非循环播放时，是否已经播放到最后一帧。
+     * @return
+     */
+    public boolean isFinished() {
+        return !loop && time >= clip.getLength();
+    }
+
+    /**
+     * 停止播放，目标保持当前的姿势。
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
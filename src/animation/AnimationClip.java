@@ -0,0 +1,51 @@
+package animation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 动画片段，由若干关键帧轨道组成。
+ * <p>
+ * 片段本身不引用任何物体，播放时由Animator把第i条轨道绑定到第i个目标上，因此同一个片段可以被多个角色同时播放。
+ * </p>
+ */
+public class AnimationClip {
+
+    // 名称
+    private final String name;
+    // 轨道
+    private final List<KeyframeTrack> tracks = new ArrayList<KeyframeTrack>();
+    // 时长（秒）
+    private float length;
+
+    public AnimationClip(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 添加一条轨道，片段的时长为所有轨道中最长的一条。
+     * @param track
+     * @return 轨道编号
+     */
+    public int addTrack(KeyframeTrack track) {
+        tracks.add(track);
+        length = Math.max(length, track.getLength());
+        return tracks.size() - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<KeyframeTrack> getTracks() {
+        return tracks;
+    }
+
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    public float getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,18 @@
+package animation;
+
+import math.Quaternion;
+import math.Vector3f;
+
+/**
+ * 动画的目标，接收轨道计算出的相对变换。
+ */
+public interface AnimationTarget {
+
+    /**
+     * 设置相对变换
+     * @param translation 平移，轨道没有平移动画时为null。
+     * @param rotation 旋转，轨道没有旋转动画时为null。
+     * @param scale 缩放，轨道没有缩放动画时为null。
+     */
+    void setTransform(Vector3f translation, Quaternion rotation, Vector3f scale);
+}
@@ -0,0 +1,409 @@
+package animation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import math.Quaternion;
+import math.Vector3f;
+import scene.Spatial;
+
+/**
+ * 动画播放器，每帧计算所有正在播放的关键帧轨道，并把结果写入目标。
+ * <p>
+ * 所有轨道的关键帧被连续地保存在几个数组中，每个关键帧10个float：平移(3)、旋转(4)、缩放(3)。
+ * 多个角色播放同一个片段时，相同的轨道只保存一份关键帧，只有播放进度是各自独立的。
+ * 每条轨道记住上一帧所在的关键帧，播放时间只会向前推进，因此每帧只需要向后移动几步，不需要二分查找。
+ * 计算结果先写入输出数组，轨道较多时分成多个任务并行计算，最后在当前线程中依次写入目标，
+ * 因为修改场景图的变换不是线程安全的。
+ * </p>
+ */
+public class Animator {
+
+    // 每个关键帧和每个输出占用的float数量
+    private final static int VALUE_STRIDE = 10;
+    // 分量标志
+    private final static int TRANSLATION = 1;
+    private final static int ROTATION = 2;
+    private final static int SCALE = 4;
+
+    // 一个并行任务至少处理的轨道数量
+    private final static int PARALLEL_GRAIN = 4096;
+
+    // 正在播放的片段
+    private List<AnimationChannel> channels = new ArrayList<AnimationChannel>();
+    // 片段是否有增减，需要重新生成数组。
+    private boolean changed = false;
+
+    // 轨道数量
+    private int trackCount;
+    // 轨道所属的片段
+    private int[] trackChannels = new int[0];
+    // 轨道的第一个关键帧在关键帧数组中的位置
+    private int[] keyOffsets = new int[0];
+    // 轨道的关键帧数量
+    private int[] keyCounts = new int[0];
+    // 轨道当前所在的关键帧
+    private int[] cursors = new int[0];
+    // 轨道包含的分量
+    private int[] masks = new int[0];
+    // 轨道的目标
+    private AnimationTarget[] targets = new AnimationTarget[0];
+
+    // 关键帧时间和数值
+    private float[] keyTimes = new float[0];
+    private float[] keyValues = new float[0];
+
+    // 各片段的当前时间
+    private float[] channelTimes = new float[0];
+    // 各片段本帧是否需要计算。已经播放结束的片段只在结束的那一帧写入目标，
+    // 之后不再重复写入，以免目标的世界变换和骨骼的版本号每帧都发生变化。
+    private boolean[] channelActive = new boolean[0];
+    // 各轨道的计算结果
+    private float[] outputs = new float[0];
+
+    // 是否允许并行计算
+    private boolean parallel = true;
+
+    // 临时变量
+    private Vector3f translation = new Vector3f();
+    private Quaternion rotation = new Quaternion();
+    private Vector3f scale = new Vector3f();
+
+    /**
+     * 播放动画片段
+     * @param clip
+     * @param targets 与片段的轨道一一对应的目标，可以为null，表示忽略这条轨道。
+     * @param loop 是否循环播放
+     * @return 用于控制播放的对象
+     */
+    public AnimationChannel play(AnimationClip clip, AnimationTarget[] targets, boolean loop) {
+        if (targets.length != clip.getTrackCount()) {
+            throw new IllegalArgumentException("Clip " + clip.getName() + " needs " + clip.getTrackCount() + " targets.");
+        }
+        AnimationChannel channel = new AnimationChannel(clip, targets, loop);
+        channels.add(channel);
+        changed = true;
+        return channel;
+    }
+
+    /**
+     * 推进所有片段的播放时间，计算轨道并写入目标。已经停止的片段会被移除，已经播放结束的片段不再写入目标。
+     * @param delta 与上一帧的间隔时间（秒）
+     */
+    public void update(float delta) {
+        for(int i = channels.size() - 1; i >= 0; i--) {
+            if (channels.get(i).stopped) {
+                channels.remove(i);
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+            changed = false;
+        }
+
+        int active = 0;
+        int len = channels.size();
+        for(int i = 0; i < len; i++) {
+            AnimationChannel channel = channels.get(i);
+            channel.advance(delta);
+            channelTimes[i] = channel.time;
+
+            // 上一帧已经写入了最后一帧的片段不需要再计算
+            boolean finished = channel.isFinished();
+            channelActive[i] = !(finished && channel.settled);
+            channel.settled = finished;
+            if (channelActive[i]) {
+                active++;
+            }
+        }
+        if (active == 0) {
+            return;
+        }
+
+        if (parallel && trackCount > PARALLEL_GRAIN) {
+            ForkJoinPool.commonPool().invoke(new EvaluateTask(0, trackCount));
+        } else {
+            evaluate(0, trackCount);
+        }
+        apply();
+    }
+
+    /**
+     * 把正在播放的片段的轨道连续地保存到数组中
+     */
+    private void rebuild() {
+        // 统计轨道数量，相同的轨道只计算一次关键帧。
+        int tracks = 0;
+        int keys = 0;
+        int len = channels.size();
+        Map<KeyframeTrack, Integer> keyOffsetMap = new IdentityHashMap<KeyframeTrack, Integer>();
+        List<KeyframeTrack> uniqueTracks = new ArrayList<KeyframeTrack>();
+        for(int i = 0; i < len; i++) {
+            AnimationChannel channel = channels.get(i);
+            List<KeyframeTrack> clipTracks = channel.clip.getTracks();
+            for(int j = 0; j < clipTracks.size(); j++) {
+                if (channel.targets[j] == null) {
+                    continue;
+                }
+                tracks++;
+                KeyframeTrack src = clipTracks.get(j);
+                if (!keyOffsetMap.containsKey(src)) {
+                    keyOffsetMap.put(src, keys);
+                    uniqueTracks.add(src);
+                    keys += src.getKeyframeCount();
+                }
+            }
+        }
+
+        trackCount = tracks;
+        trackChannels = new int[tracks];
+        keyOffsets = new int[tracks];
+        keyCounts = new int[tracks];
+        cursors = new int[tracks];
+        masks = new int[tracks];
+        targets = new AnimationTarget[tracks];
+        keyTimes = new float[keys];
+        keyValues = new float[keys * VALUE_STRIDE];
+        channelTimes = new float[len];
+        channelActive = new boolean[len];
+        outputs = new float[tracks * VALUE_STRIDE];
+
+        for(int i = 0; i < uniqueTracks.size(); i++) {
+            KeyframeTrack src = uniqueTracks.get(i);
+            writeKeyframes(src, keyOffsetMap.get(src));
+        }
+
+        int track = 0;
+        for(int i = 0; i < len; i++) {
+            AnimationChannel channel = channels.get(i);
+            List<KeyframeTrack> clipTracks = channel.clip.getTracks();
+            for(int j = 0; j < clipTracks.size(); j++) {
+                if (channel.targets[j] == null) {
+                    continue;
+                }
+                KeyframeTrack src = clipTracks.get(j);
+                trackChannels[track] = i;
+                keyOffsets[track] = keyOffsetMap.get(src);
+                keyCounts[track] = src.getKeyframeCount();
+                targets[track] = channel.targets[j];
+                masks[track] = (src.getTranslations() != null ? TRANSLATION : 0)
+                        | (src.getRotations() != null ? ROTATION : 0)
+                        | (src.getScales() != null ? SCALE : 0);
+                track++;
+            }
+        }
+    }
+
+    /**
+     * 把一条轨道的关键帧写入数组，缺少的分量使用单位变换。
+     * @param src
+     * @param offset 第一个关键帧的位置
+     */
+    private void writeKeyframes(KeyframeTrack src, int offset) {
+        float[] times = src.getTimes();
+        float[] t = src.getTranslations();
+        float[] r = src.getRotations();
+        float[] s = src.getScales();
+        for(int k = 0, key = offset; k < times.length; k++, key++) {
+            int v = key * VALUE_STRIDE;
+            keyTimes[key] = times[k];
+            keyValues[v]     = t != null ? t[k * 3] : 0f;
+            keyValues[v + 1] = t != null ? t[k * 3 + 1] : 0f;
+            keyValues[v + 2] = t != null ? t[k * 3 + 2] : 0f;
+            keyValues[v + 3] = r != null ? r[k * 4] : 0f;
+            keyValues[v + 4] = r != null ? r[k * 4 + 1] : 0f;
+            keyValues[v + 5] = r != null ? r[k * 4 + 2] : 0f;
+            keyValues[v + 6] = r != null ? r[k * 4 + 3] : 1f;
+            keyValues[v + 7] = s != null ? s[k * 3] : 1f;
+            keyValues[v + 8] = s != null ? s[k * 3 + 1] : 1f;
+            keyValues[v + 9] = s != null ? s[k * 3 + 2] : 1f;
+        }
+    }
+
+    /**
+     * 计算一个范围内的轨道，不同的范围可以并行计算。
+     * 旋转使用归一化的线性插值(nlerp)，关键帧之间的角度较小时与球面线性插值几乎相同，但不需要三角函数。
+     * @param from
+     * @param to 开区间
+     */
+    private void evaluate(int from, int to) {
+        for(int i = from; i < to; i++) {
+            if (!channelActive[trackChannels[i]]) {
+                continue;
+            }
+            int offset = keyOffsets[i];
+            int last = keyCounts[i] - 1;
+            float time = channelTimes[trackChannels[i]];
+
+            // 从上一帧的位置向后查找，循环播放回到开头时从头开始。
+            int cursor = cursors[i];
+            if (time < keyTimes[offset + cursor]) {
+                cursor = 0;
+            }
+            while (cursor < last && keyTimes[offset + cursor + 1] <= time) {
+                cursor++;
+            }
+            cursors[i] = cursor;
+
+            int a = (offset + cursor) * VALUE_STRIDE;
+            int out = i * VALUE_STRIDE;
+            float t0 = keyTimes[offset + cursor];
+            if (cursor == last || time <= t0) {
+                System.arraycopy(keyValues, a, outputs, out, VALUE_STRIDE);
+                continue;
+            }
+
+            int b = a + VALUE_STRIDE;
+            float f = (time - t0) / (keyTimes[offset + cursor + 1] - t0);
+
+            // 平移和缩放线性插值
+            outputs[out]     = keyValues[a]     + (keyValues[b]     - keyValues[a])     * f;
+            outputs[out + 1] = keyValues[a + 1] + (keyValues[b + 1] - keyValues[a + 1]) * f;
+            outputs[out + 2] = keyValues[a + 2] + (keyValues[b + 2] - keyValues[a + 2]) * f;
+            outputs[out + 7] = keyValues[a + 7] + (keyValues[b + 7] - keyValues[a + 7]) * f;
+            outputs[out + 8] = keyValues[a + 8] + (keyValues[b + 8] - keyValues[a + 8]) * f;
+            outputs[out + 9] = keyValues[a + 9] + (keyValues[b + 9] - keyValues[a + 9]) * f;
+
+            // 旋转沿较短的路径插值
+            float ax = keyValues[a + 3], ay = keyValues[a + 4], az = keyValues[a + 5], aw = keyValues[a + 6];
+            float bx = keyValues[b + 3], by = keyValues[b + 4], bz = keyValues[b + 5], bw = keyValues[b + 6];
+            if (ax * bx + ay * by + az * bz + aw * bw < 0f) {
+                bx = -bx;
+                by = -by;
+                bz = -bz;
+                bw = -bw;
+            }
+            float x = ax + (bx - ax) * f;
+            float y = ay + (by - ay) * f;
+            float z = az + (bz - az) * f;
+            float w = aw + (bw - aw) * f;
+            float n = x * x + y * y + z * z + w * w;
+            n = n > 0f ? (float) (1.0 / Math.sqrt(n)) : 0f;
+            outputs[out + 3] = x * n;
+            outputs[out + 4] = y * n;
+            outputs[out + 5] = z * n;
+            outputs[out + 6] = w * n;
+        }
+    }
+
+    /**
+     * 把计算结果依次写入目标
+     */
+    private void apply() {
+        for(int i = 0; i < trackCount; i++) {
+            if (!channelActive[trackChannels[i]]) {
+                continue;
+            }
+            int out = i * VALUE_STRIDE;
+            int mask = masks[i];
+            Vector3f t = null;
+            Quaternion r = null;
+            Vector3f s = null;
+            if ((mask & TRANSLATION) != 0) {
+                t = translation.set(outputs[out], outputs[out + 1], outputs[out + 2]);
+            }
+            if ((mask & ROTATION) != 0) {
+                r = rotation.set(outputs[out + 3], outputs[out + 4], outputs[out + 5], outputs[out + 6]);
+            }
+            if ((mask & SCALE) != 0) {
+                s = scale.set(outputs[out + 7], outputs[out + 8], outputs[out + 9]);
+            }
+            targets[i].setTransform(t, r, s);
+        }
+    }
+
+    /**
+     * 获得正在播放的片段
+     * @return
+     */
+    public List<AnimationChannel> getChannels() {
+        return channels;
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /**
+     * 设置轨道较多时是否并行计算
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * 以物体的相对变换作为动画目标
+     * @param spatial
+     * @return
+     */
+    public static AnimationTarget target(final Spatial spatial) {
+        return new AnimationTarget() {
+            @Override
+            public void setTransform(Vector3f translation, Quaternion rotation, Vector3f scale) {
+                if (translation != null) {
+                    spatial.setLocalTranslation(translation);
+                }
+                if (rotation != null) {
+                    spatial.setLocalRotation(rotation);
+                }
+                if (scale != null) {
+                    spatial.setLocalScale(scale.x, scale.y, scale.z);
+                }
+            }
+        };
+    }
+
+    /**
+     * 以骨骼中一个关节的相对变换作为动画目标
+     * @param skeleton
+     * @param joint
+     * @return
+     */
+    public static AnimationTarget target(final Skeleton skeleton, final int joint) {
+        return new AnimationTarget() {
+            @Override
+            public void setTransform(Vector3f translation, Quaternion rotation, Vector3f scale) {
+                if (translation != null) {
+                    skeleton.setLocalTranslation(joint, translation);
+                }
+                if (rotation != null) {
+                    skeleton.setLocalRotation(joint, rotation);
+                }
+                if (scale != null) {
+                    skeleton.getLocalTransform(joint).setScale(scale);
+                }
+            }
+        };
+    }
+
+    /**
+     * 按轨道范围划分的并行任务
+     */
+    private class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        EvaluateTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                evaluate(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EvaluateTask(from, mid), new EvaluateTask(mid, to));
+            }
+        }
+    }
+}
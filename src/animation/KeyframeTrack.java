@@ -0,0 +1,79 @@
+package animation;
+
+/**
+ * 关键帧轨道，记录一个目标在各个时刻的平移、旋转和缩放。
+ * <p>
+ * 关键帧的时间按升序排列。平移和缩放每个关键帧3个float，旋转为四元数(x, y, z, w)，每个关键帧4个float。
+ * 不需要动画的分量可以为null，播放时不会修改目标的这个分量。
+ * </p>
+ */
+public class KeyframeTrack {
+
+    // 关键帧时间（秒）
+    private final float[] times;
+    // 平移
+    private final float[] translations;
+    // 旋转
+    private final float[] rotations;
+    // 缩放
+    private final float[] scales;
+
+    /**
+     * @param times 关键帧时间，按升序排列，至少有一个关键帧。
+     * @param translations 平移，可以为null。
+     * @param rotations 旋转，可以为null。
+     * @param scales 缩放，可以为null。
+     */
+    public KeyframeTrack(float[] times, float[] translations, float[] rotations, float[] scales) {
+        if (times == null || times.length == 0) {
+            throw new IllegalArgumentException("A track needs at least one keyframe.");
+        }
+        for(int i = 1; i < times.length; i++) {
+            if (times[i] < times[i - 1]) {
+                throw new IllegalArgumentException("Keyframe times must be in ascending order.");
+            }
+        }
+        checkLength(translations, times.length * 3, "translations");
+        checkLength(rotations, times.length * 4, "rotations");
+        checkLength(scales, times.length * 3, "scales");
+
+        this.times = times;
+        this.translations = translations;
+        this.rotations = rotations;
+        this.scales = scales;
+    }
+
+    private static void checkLength(float[] values, int length, String name) {
+        if (values != null && values.length != length) {
+            throw new IllegalArgumentException(name + " must have " + length + " values.");
+        }
+    }
+
+    public int getKeyframeCount() {
+        return times.length;
+    }
+
+    /**
+     * 获得最后一个关键帧的时间
+     * @return
+     */
+    public float getLength() {
+        return times[times.length - 1];
+    }
+
+    public float[] getTimes() {
+        return times;
+    }
+
+    public float[] getTranslations() {
+        return translations;
+    }
+
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public float[] getScales() {
+        return scales;
+    }
+}
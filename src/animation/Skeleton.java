@@ -0,0 +1,211 @@
+package animation;
+
+import math.Matrix4f;
+import math.Quaternion;
+import math.Transform;
+import math.Vector3f;
+
+/**
+ * 骨骼，由一组按层次组织的关节组成。
+ * <p>
+ * 关节用整数编号表示，父关节的编号必须小于子关节，因此按编号顺序遍历就能保证父关节先于子关节计算。
+ * 每个关节保存相对于父关节的变换，update()计算出模型空间的变换，
+ * 再乘以绑定姿势的逆矩阵得到蒙皮矩阵。蒙皮矩阵以3x4矩阵（按行存储，12个float）的形式紧凑地保存在一个数组中。
+ * </p>
+ */
+public class Skeleton {
+
+    /**
+     * 每个蒙皮矩阵占用的float数量
+     */
+    public final static int MATRIX_STRIDE = 12;
+
+    // 关节名称
+    private final String[] names;
+    // 父关节编号，根关节为-1。
+    private final int[] parents;
+
+    // 绑定姿势下的相对变换
+    private final Transform[] bindTransforms;
+    // 当前的相对变换
+    private final Transform[] localTransforms;
+    // 模型空间变换
+    private final Transform[] modelTransforms;
+    // 绑定姿势下模型空间变换的逆矩阵
+    private final Matrix4f[] inverseBindMatrices;
+
+    // 蒙皮矩阵
+    private final float[] skinMatrices;
+
+    // 相对变换是否被修改
+    private boolean changed = true;
+    // 蒙皮矩阵的版本号，每次重新计算后加1。
+    private int version;
+
+    // 临时变量
+    private Matrix4f tempMatrix = new Matrix4f();
+
+    /**
+     * 创建骨骼。当前的相对变换全部为单位变换，调用setBindPose()之前也作为绑定姿势。
+     * @param names 关节名称
+     * @param parents 父关节编号，根关节为-1，其余关节的父关节编号必须小于它自身。
+     */
+    public Skeleton(String[] names, int[] parents) {
+        if (names.length != parents.length) {
+            throw new IllegalArgumentException("names must have the same length as parents.");
+        }
+        for(int i = 0; i < parents.length; i++) {
+            if (parents[i] >= i || parents[i] < -1) {
+                throw new IllegalArgumentException("Joint " + i + " must be created after its parent.");
+            }
+        }
+
+        int count = names.length;
+        this.names = names;
+        this.parents = parents;
+        this.bindTransforms = new Transform[count];
+        this.localTransforms = new Transform[count];
+        this.modelTransforms = new Transform[count];
+        this.inverseBindMatrices = new Matrix4f[count];
+        this.skinMatrices = new float[count * MATRIX_STRIDE];
+        for(int i = 0; i < count; i++) {
+            bindTransforms[i] = new Transform();
+            localTransforms[i] = new Transform();
+            modelTransforms[i] = new Transform();
+            inverseBindMatrices[i] = new Matrix4f();
+        }
+    }
+
+    /**
+     * 以当前的相对变换作为绑定姿势，即蒙皮网格建模时骨骼的姿势。
+     */
+    public void setBindPose() {
+        for(int i = 0; i < names.length; i++) {
+            bindTransforms[i].set(localTransforms[i]);
+        }
+        updateModelTransforms();
+        for(int i = 0; i < names.length; i++) {
+            modelTransforms[i].toTransformMatrix(tempMatrix);
+            tempMatrix.invert(inverseBindMatrices[i]);
+        }
+        changed = true;
+    }
+
+    /**
+     * 恢复到绑定姿势
+     */
+    public void resetToBindPose() {
+        for(int i = 0; i < names.length; i++) {
+            localTransforms[i].set(bindTransforms[i]);
+        }
+        changed = true;
+    }
+
+    /**
+     * 如果相对变换被修改，重新计算模型空间变换和蒙皮矩阵。
+     * @return 蒙皮矩阵是否被重新计算
+     */
+    public boolean update() {
+        if (!changed) {
+            return false;
+        }
+        updateModelTransforms();
+        for(int i = 0; i < names.length; i++) {
+            modelTransforms[i].toTransformMatrix(tempMatrix);
+            tempMatrix.mult(inverseBindMatrices[i], tempMatrix);
+            tempMatrix.getAffine(skinMatrices, i * MATRIX_STRIDE);
+        }
+        changed = false;
+        version++;
+        return true;
+    }
+
+    /**
+     * 按编号顺序计算模型空间变换，父关节总是先于子关节。
+     */
+    private void updateModelTransforms() {
+        for(int i = 0; i < names.length; i++) {
+            Transform model = modelTransforms[i];
+            model.set(localTransforms[i]);
+            if (parents[i] >= 0) {
+                model.combineWithParent(modelTransforms[parents[i]]);
+            }
+        }
+    }
+
+    /**
+     * 获得关节的相对变换，并标记为已修改。
+     * @param joint
+     * @return
+     */
+    public Transform getLocalTransform(int joint) {
+        changed = true;
+        return localTransforms[joint];
+    }
+
+    public void setLocalTransform(int joint, Transform transform) {
+        localTransforms[joint].set(transform);
+        changed = true;
+    }
+
+    public void setLocalTranslation(int joint, Vector3f translation) {
+        localTransforms[joint].setTranslation(translation);
+        changed = true;
+    }
+
+    public void setLocalRotation(int joint, Quaternion rotation) {
+        localTransforms[joint].setRotation(rotation);
+        changed = true;
+    }
+
+    /**
+     * 获得关节在模型空间中的变换，update()之后有效。
+     * @param joint
+     * @return
+     */
+    public Transform getModelTransform(int joint) {
+        return modelTransforms[joint];
+    }
+
+    /**
+     * 获得蒙皮矩阵，update()之后有效。返回的数组不应被修改。
+     * @return
+     */
+    public float[] getSkinMatrices() {
+        return skinMatrices;
+    }
+
+    /**
+     * 获得蒙皮矩阵的版本号。版本号不同说明蒙皮矩阵已经被重新计算。
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 根据名称查找关节
+     * @param name
+     * @return 关节编号，找不到时返回-1。
+     */
+    public int findJoint(String name) {
+        for(int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getJointName(int joint) {
+        return names[joint];
+    }
+
+    public int getParent(int joint) {
+        return parents[joint];
+    }
+
+    public int getJointCount() {
+        return names.length;
+    }
+}
@@ -0,0 +1,316 @@
+package animation;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import material.Material;
+import scene.Geometry;
+import scene.Mesh;
+import scene.VertexFormat;
+
+/**
+ * 蒙皮物体，网格的顶点随骨骼运动。
+ * <p>
+ * 绑定姿势下的顶点位置、法线以及骨骼编号和权重在创建时被紧凑地保存在数组中，每个顶点最多受4个骨骼影响。
+ * 物体渲染的是另一个网格，它与原网格共享索引，纹理坐标和颜色在创建时复制，位置和法线由蒙皮计算后直接写入它的顶点数据。
+ * 蒙皮在顶点着色之前进行，只处理视锥内的物体，顶点较多时分成多个任务并行计算。
+ * </p>
+ * <p>
+ * 包围盒使用绑定姿势下的包围盒，不随动画更新，以免每帧重新计算包围盒和层次包围体。
+ * 动作幅度较大时，绑定姿势的网格应当留有余量。骨骼的版本号作为物体的数据版本号，姿势改变后阴影贴图和增量渲染会自动更新。
+ * </p>
+ */
+public class SkinnedGeometry extends Geometry {
+
+    /**
+     * 每个顶点最多受影响的骨骼数量
+     */
+    public final static int MAX_WEIGHTS = VertexFormat.MAX_WEIGHTS;
+
+    // 一个并行任务至少处理的顶点数量
+    private final static int PARALLEL_GRAIN = 2048;
+
+    // 骨骼
+    private final Skeleton skeleton;
+
+    // 绑定姿势下的顶点位置和法线，每个顶点3个float。
+    private final float[] bindPositions;
+    private final float[] bindNormals;
+    // 骨骼编号和权重，每个顶点4个。权重之和为1，没有骨骼影响的顶点权重全部为0。
+    private final int[] joints;
+    private final float[] weights;
+
+    // 顶点数量
+    private final int vertexCount;
+    // 渲染网格的顶点数据，蒙皮结果直接写入其中。
+    private final float[] vertexData;
+    private final int stride;
+    private final int normalOffset;
+
+    // 最近一次蒙皮时的骨骼版本号
+    private int skinnedVersion = -1;
+    // 本帧是否需要蒙皮
+    private boolean skinPending;
+
+    public SkinnedGeometry(Mesh bindMesh, Material material, Skeleton skeleton) {
+        super(null, material);
+        this.skeleton = skeleton;
+
+        VertexFormat bindFormat = bindMesh.getVertexFormat();
+        float[] bindData = bindMesh.getVertexData();
+        int bindStride = bindFormat.getStride();
+        int count = bindMesh.getVertexCount();
+        vertexCount = count;
+        bindPositions = new float[count * 3];
+        bindNormals = new float[count * 3];
+        joints = new int[count * MAX_WEIGHTS];
+        weights = new float[count * MAX_WEIGHTS];
+
+        // 创建渲染网格，总是包含法线，不需要骨骼数据。其余属性从原网格复制。
+        VertexFormat format = new VertexFormat((bindFormat.getAttributes() | VertexFormat.NORMAL)
+                & ~(VertexFormat.JOINTS | VertexFormat.WEIGHTS));
+        stride = format.getStride();
+        normalOffset = format.getNormalOffset();
+        vertexData = new float[count * stride];
+        format.convert(bindFormat, bindData, 0, vertexData, 0, count);
+
+        int bindNormalOffset = bindFormat.getNormalOffset();
+        int jointsOffset = bindFormat.getJointsOffset();
+        int weightsOffset = bindFormat.getWeightsOffset();
+        for(int i = 0; i < count; i++) {
+            int p = i * bindStride;
+            System.arraycopy(bindData, p, bindPositions, i * 3, 3);
+            if (bindNormalOffset >= 0) {
+                System.arraycopy(bindData, p + bindNormalOffset, bindNormals, i * 3, 3);
+            }
+
+            // 权重归一化
+            if (jointsOffset >= 0 && weightsOffset >= 0) {
+                float sum = 0f;
+                for(int k = 0; k < MAX_WEIGHTS; k++) {
+                    int joint = (int) bindData[p + jointsOffset + k];
+                    if (joint < 0 || joint >= skeleton.getJointCount()) {
+                        throw new IllegalArgumentException("Vertex " + i + " refers to a missing joint " + joint + ".");
+                    }
+                    sum += bindData[p + weightsOffset + k];
+                }
+                if (sum > 0f) {
+                    for(int k = 0; k < MAX_WEIGHTS; k++) {
+                        joints[i * MAX_WEIGHTS + k] = (int) bindData[p + jointsOffset + k];
+                        weights[i * MAX_WEIGHTS + k] = bindData[p + weightsOffset + k] / sum;
+                    }
+                }
+            }
+        }
+
+        setMesh(new Mesh(format, vertexData, bindMesh.getIndexes()));
+    }
+
+    /**
+     * 更新骨骼，判断是否需要蒙皮。骨骼可能被多个物体共享，所以必须在同一个线程中调用。
+     * @return
+     */
+    private boolean prepare() {
+        skeleton.update();
+        skinPending = skeleton.getVersion() != skinnedVersion;
+        return skinPending;
+    }
+
+    /**
+     * 对一个范围内的顶点进行蒙皮，不同的范围可以并行计算。
+     * @param from
+     * @param to 开区间
+     */
+    private void skinVertexes(int from, int to) {
+        float[] matrices = skeleton.getSkinMatrices();
+
+        float[] data = vertexData;
+
+        for(int i = from; i < to; i++) {
+            float px = bindPositions[i * 3], py = bindPositions[i * 3 + 1], pz = bindPositions[i * 3 + 2];
+            float nx = bindNormals[i * 3], ny = bindNormals[i * 3 + 1], nz = bindNormals[i * 3 + 2];
+
+            // 加权混合各骨骼的变换结果
+            float x = 0f, y = 0f, z = 0f;
+            float tx = 0f, ty = 0f, tz = 0f;
+            float total = 0f;
+            for(int k = 0; k < MAX_WEIGHTS; k++) {
+                float w = weights[i * MAX_WEIGHTS + k];
+                if (w == 0f) {
+                    continue;
+                }
+                int m = joints[i * MAX_WEIGHTS + k] * Skeleton.MATRIX_STRIDE;
+                float m00 = matrices[m],     m01 = matrices[m + 1], m02 = matrices[m + 2];
+                float m10 = matrices[m + 4], m11 = matrices[m + 5], m12 = matrices[m + 6];
+                float m20 = matrices[m + 8], m21 = matrices[m + 9], m22 = matrices[m + 10];
+
+                x += w * (m00 * px + m01 * py + m02 * pz + matrices[m + 3]);
+                y += w * (m10 * px + m11 * py + m12 * pz + matrices[m + 7]);
+                z += w * (m20 * px + m21 * py + m22 * pz + matrices[m + 11]);
+
+                // 法线只使用旋转部分，混合后再单位化。
+                tx += w * (m00 * nx + m01 * ny + m02 * nz);
+                ty += w * (m10 * nx + m11 * ny + m12 * nz);
+                tz += w * (m20 * nx + m21 * ny + m22 * nz);
+                total += w;
+            }
+
+            if (total == 0f) {
+                // 不受骨骼影响的顶点保持绑定姿势
+                x = px; y = py; z = pz;
+                tx = nx; ty = ny; tz = nz;
+            } else {
+                float length = tx * tx + ty * ty + tz * tz;
+                if (length != 1f && length != 0f) {
+                    length = (float) (1.0 / Math.sqrt(length));
+                    tx *= length;
+                    ty *= length;
+                    tz *= length;
+                }
+            }
+
+            int v = i * stride;
+            data[v] = x;
+            data[v + 1] = y;
+            data[v + 2] = z;
+            data[v + normalOffset] = tx;
+            data[v + normalOffset + 1] = ty;
+            data[v + normalOffset + 2] = tz;
+        }
+    }
+
+    /**
+     * 蒙皮完成后，更新网格中依赖顶点位置的数据。
+     */
+    private void finish() {
+        Mesh mesh = getMesh();
+        mesh.updateFacePlanes();
+        skinnedVersion = skeleton.getVersion();
+        skinPending = false;
+    }
+
+    /**
+     * 根据骨骼的当前姿势计算顶点位置和法线。骨骼没有变化时直接返回。
+     */
+    public void skin() {
+        if (!prepare()) {
+            return;
+        }
+        int count = vertexCount;
+        if (count <= PARALLEL_GRAIN) {
+            skinVertexes(0, count);
+        } else {
+            ForkJoinPool.commonPool().invoke(new VertexTask(this, 0, count));
+        }
+        finish();
+    }
+
+    /**
+     * 对多个物体进行蒙皮。骨骼在当前线程中更新，顶点按物体和范围分成多个任务并行计算。
+     * @param list 需要蒙皮的物体，通常为视锥剔除后可见的物体。
+     */
+    public static void skin(List<SkinnedGeometry> list) {
+        int len = list.size();
+        int pending = 0;
+        int vertexCount = 0;
+        for(int i = 0; i < len; i++) {
+            SkinnedGeometry geom = list.get(i);
+            if (geom.prepare()) {
+                pending++;
+                vertexCount += geom.vertexCount;
+            }
+        }
+        if (pending == 0) {
+            return;
+        }
+
+        if (vertexCount <= PARALLEL_GRAIN) {
+            for(int i = 0; i < len; i++) {
+                SkinnedGeometry geom = list.get(i);
+                if (geom.skinPending) {
+                    geom.skinVertexes(0, geom.vertexCount);
+                }
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new GeometryTask(list, 0, len));
+        }
+
+        for(int i = 0; i < len; i++) {
+            SkinnedGeometry geom = list.get(i);
+            if (geom.skinPending) {
+                geom.finish();
+            }
+        }
+    }
+
+    /**
+     * 以骨骼的版本号作为数据版本号。先更新骨骼，使本帧修改的姿势能被增量渲染和阴影贴图检测到。
+     */
+    @Override
+    public int getDataVersion() {
+        skeleton.update();
+        return skeleton.getVersion();
+    }
+
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * 按物体划分的并行任务
+     */
+    private static class GeometryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SkinnedGeometry> list;
+        private final int from;
+        private final int to;
+
+        GeometryTask(List<SkinnedGeometry> list, int from, int to) {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                SkinnedGeometry geom = list.get(from);
+                if (geom.skinPending) {
+                    new VertexTask(geom, 0, geom.vertexCount).compute();
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new GeometryTask(list, from, mid), new GeometryTask(list, mid, to));
+            }
+        }
+    }
+
+    /**
+     * 按顶点范围划分的并行任务
+     */
+    private static class VertexTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SkinnedGeometry geom;
+        private final int from;
+        private final int to;
+
+        VertexTask(SkinnedGeometry geom, int from, int to) {
+            this.geom = geom;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                geom.skinVertexes(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new VertexTask(geom, from, mid), new VertexTask(geom, mid, to));
+            }
+        }
+    }
+}
@@ -1,41 +1,24 @@
 package earth;
 
-import java.awt.*;
-import java.util.ArrayList;
 import java.util.List;
 
-import geom.Drawable;
-import light.Light;
-import math.ColorRGBA;
-import renderer.Camera;
-import renderer.Renderer;
-import scene.Geometry;
+import renderer.Image;
 import scene.Mesh;
-import scene.Node;
 
-public abstract class Application {
+/**
+ * 窗口程序，在BaseApplication的基础上增加显示窗口、输入和帧率控制。
+ */
+public abstract class Application extends BaseApplication {
 
-    protected int width;
-    protected int height;
     protected String title;
 
     // 显示器
     private Screen screen;
-
-    // 渲染器
-    private Renderer renderer;
-
-    // 摄像机
-    private Camera camera;
-    
-    // 渲染队列
-    protected List<Drawable> scene;
     
-    // 3D场景
-    protected Node rootNode;
-    
-    // 光源
-    protected List<Light> lights;
+    // 帧流水线，渲染下一帧的同时显示上一帧。
+    private FramePipeline pipeline;
+    // 帧流水线中的图像数量
+    private final static int FRAME_COUNT = 3;
 
     // 运行状态
     private boolean isRunning;
@@ -57,17 +40,8 @@ public abstract class Application {
      * 构造方法
      */
     public Application() {
-        width = 800;
-        height = 600;
         title = "JSoftwareRenderer";
         
-        // 初始化渲染队列
-        scene = new ArrayList<Drawable>();
-        rootNode = new Node();
-        
-        // 光源
-        lights = new ArrayList<Light>();
-        
         // 改变运行状态
         isRunning = true;
         
@@ -89,16 +63,15 @@ public abstract class Application {
         screen = new Screen(width, height, title);
 //        screen.setBg(new Color(255,255,255));
         
-        // 创建渲染器
-        renderer = new Renderer(width, height);
-        renderer.setBackgroundColor(ColorRGBA.DARKGRAY);
-        renderer.setLights(lights);
+        // 创建渲染器和摄像机
+        createRenderer(false);
         
-        // 创建摄像机
-        camera = new Camera(width, height);
+        // 启动显示线程
+        pipeline = new FramePipeline(screen, width, height, FRAME_COUNT);
+        pipeline.start();
         
         // 创建摄像机控制器
-        CameraController controller = new CameraController(camera, screen.getInput());
+        CameraController controller = new CameraController(getCamera(), screen.getInput());
         
         // 初始化
         initialize();
@@ -131,13 +104,13 @@ public abstract class Application {
 
             controller.update(delta);
             
-            // 更新逻辑
-            update(delta);
-            
-            // 更新画面
+            // 更新逻辑和画面
             render(delta);
             
         }
+        
+        // 停止显示线程
+        pipeline.stop();
 
         // 计算总运行时间
         long totalTime = System.nanoTime() - startTime;
@@ -145,40 +118,30 @@ public abstract class Application {
     }
 
     /**
-     * 绘制画面
+     * 更新逻辑并绘制画面
      */
     protected void render(float delta) {
-        // 清空场景
-        renderer.clear();
-
-        // 获取所有物体，绘制3D场景
-        List<Geometry> geomList = rootNode.getGeometryList(null);
-        renderer.render(geomList, camera);
-        
-        // 绘制2D场景
-        int len = scene.size();
-        if (len > 0) {
-            for (int i = 0; i < len; i++) {
-                scene.get(i).draw(renderer.getImageRaster());
-            }
+        // 获取一个空闲的图像作为渲染目标
+        Image image;
+        try {
+            image = pipeline.acquire();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            stop();
+            return;
         }
         
-        // 交换画布缓冲区，显示画面
-        screen.swapBuffer(renderer.getRenderContext(), framePerSecond);
+        updateAndRender(delta, image);
+        
+        // 提交给显示线程，由它交换画布缓冲区，显示画面。
+        try {
+            pipeline.submit(framePerSecond);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            stop();
+        }
     }
     
-    /**
-     * 初始化
-     */
-    protected abstract void initialize();
-
-
-    /**
-     * 更新逻辑
-     * @param delta
-     */
-    protected abstract void update(float delta);
-    
     /**
      * 停止程序
      */
@@ -200,16 +163,6 @@ public abstract class Application {
         }
     }
 
-    /**
-     * 设置分辨率
-     * @param width
-     * @param height
-     */
-    public void setResolution(int width, int height) {
-        this.width = width;
-        this.height = height;
-    }
-
     /**
      * 设置标题
      * @param title
@@ -218,10 +171,6 @@ public abstract class Application {
         this.title = title;
     }
 
-    public Camera getCamera() {
-        return camera;
-    }
-
     /**
      * 更新FPS
      */
@@ -0,0 +1,174 @@
+package earth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import animation.Animator;
+import geom.Drawable;
+import light.Light;
+import math.ColorRGBA;
+import renderer.Camera;
+import renderer.Image;
+import renderer.Renderer;
+import scene.BoundingVolumeHierarchy;
+import scene.Geometry;
+import scene.Node;
+import scene.RenderList;
+
+/**
+ * 窗口程序和离屏渲染程序的公共部分，不依赖AWT。
+ * <p>
+ * 管理场景、层次包围体、光源、动画、渲染器和摄像机，并实现每一帧的渲染流程：
+ * 更新逻辑、播放动画、更新世界变换、同步层次包围体、更新阴影贴图、视锥剔除、绘制3D场景和2D场景。
+ * 子类只负责提供渲染目标以及显示或保存渲染结果。
+ * </p>
+ */
+public abstract class BaseApplication {
+
+    protected int width;
+    protected int height;
+
+    // 渲染器
+    private Renderer renderer;
+
+    // 摄像机
+    private Camera camera;
+
+    // 渲染队列
+    protected List<Drawable> scene;
+
+    // 3D场景
+    protected Node rootNode;
+
+    // 场景的层次包围体，用于剔除和拾取。
+    protected BoundingVolumeHierarchy bvh;
+
+    // 可见的物体
+    private List<Geometry> visibleList;
+
+    // 光源
+    protected List<Light> lights;
+
+    // 关键帧动画，每帧在update()之后推进。
+    protected Animator animator;
+
+    // 增量渲染，只重绘发生变化的区域。
+    private boolean incrementalRendering = false;
+
+    /**
+     * 构造方法
+     */
+    public BaseApplication() {
+        width = 800;
+        height = 600;
+
+        // 初始化渲染队列
+        scene = new ArrayList<Drawable>();
+        rootNode = new Node();
+        bvh = new BoundingVolumeHierarchy();
+        visibleList = new ArrayList<Geometry>();
+
+        // 光源
+        lights = new ArrayList<Light>();
+
+        // 动画
+        animator = new Animator();
+    }
+
+    /**
+     * 创建渲染器和摄像机
+     * @param offHeap 是否把渲染器默认的图像和深度缓冲保存在堆外内存中
+     */
+    protected void createRenderer(boolean offHeap) {
+        // 创建渲染器
+        renderer = new Renderer(width, height, offHeap);
+        renderer.setBackgroundColor(ColorRGBA.DARKGRAY);
+        renderer.setLights(lights);
+
+        // 创建摄像机
+        camera = new Camera(width, height);
+    }
+
+    /**
+     * 更新逻辑、播放动画，然后把场景渲染到图像中。
+     * @param delta 与上一帧的间隔时间（秒）
+     * @param target 渲染目标，尺寸必须与分辨率相同。
+     */
+    protected void updateAndRender(float delta, Image target) {
+        // 更新逻辑
+        update(delta);
+
+        // 播放动画
+        animator.update(delta);
+
+        renderer.setRenderTarget(target);
+
+        // 自顶向下更新世界变换
+        rootNode.updateGeometricState();
+
+        // 根据渲染列表的变化更新层次包围体
+        RenderList renderList = rootNode.getRenderList();
+        bvh.sync(renderList);
+
+        // 更新阴影贴图
+        renderer.updateShadowMaps(renderList.getGeometries());
+
+        // 视锥剔除，绘制3D场景
+        visibleList.clear();
+        bvh.cull(camera, visibleList);
+        if (incrementalRendering) {
+            // 2D场景无法计算变化的区域，每帧全部重绘。
+            if (!scene.isEmpty()) {
+                renderer.invalidate();
+            }
+            renderer.renderIncremental(visibleList, camera);
+        } else {
+            // 清空场景
+            renderer.clear();
+            renderer.render(visibleList, camera);
+        }
+
+        // 绘制2D场景
+        int len = scene.size();
+        for (int i = 0; i < len; i++) {
+            scene.get(i).draw(renderer.getImageRaster());
+        }
+    }
+
+    /**
+     * 初始化
+     */
+    protected abstract void initialize();
+
+    /**
+     * 更新逻辑
+     * @param delta
+     */
+    protected abstract void update(float delta);
+
+    /**
+     * 开启或关闭增量渲染。开启后每帧只重绘发生变化的物体所在的区域，适合大部分内容静止的场景。
+     * @param enabled
+     */
+    public void setIncrementalRendering(boolean enabled) {
+        this.incrementalRendering = enabled;
+    }
+
+    /**
+     * 设置分辨率，必须在渲染第一帧之前调用。
+     * @param width
+     * @param height
+     */
+    public void setResolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+}
@@ -0,0 +1,158 @@
+package earth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import renderer.Image;
+
+/**
+ * 帧流水线，让渲染和显示并行执行。
+ * <p>
+ * 流水线持有若干个图像：渲染线程从空闲队列中取出一个图像进行渲染，渲染完成后放入待显示队列；
+ * 显示线程从待显示队列中取出图像，转换格式并绘制到窗口上，然后把图像归还给空闲队列。
+ * 这样渲染第N帧的同时，显示线程可以显示第N-1帧，每帧的时间由两者之和变为两者中的较大值。
+ * </p>
+ * 显示时发生异常，显示线程会归还图像并停止，异常在渲染线程下一次调用acquire()时抛出，
+ * 避免渲染线程永远等待空闲的图像。
+ */
+public class FramePipeline {
+
+    /**
+     * 等待显示的帧
+     */
+    private static class Frame {
+        Image image;
+        int fps;
+    }
+
+    // 显示器
+    private final Screen screen;
+
+    // 空闲的帧
+    private final BlockingQueue<Frame> freeFrames;
+    // 等待显示的帧
+    private final BlockingQueue<Frame> readyFrames;
+
+    // 正在渲染的帧
+    private Frame current;
+
+    // 显示线程
+    private final Thread presenter;
+
+    // 运行状态
+    private volatile boolean isRunning;
+
+    // 显示线程发生的异常
+    private volatile RuntimeException failure;
+
+    /**
+     * @param screen 显示器
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @param count 图像数量，至少为2。
+     */
+    public FramePipeline(Screen screen, int width, int height, int count) {
+        if (count < 2) {
+            throw new IllegalArgumentException("Frame count must be at least 2.");
+        }
+        this.screen = screen;
+        this.freeFrames = new ArrayBlockingQueue<Frame>(count);
+        this.readyFrames = new ArrayBlockingQueue<Frame>(count);
+
+        for(int i = 0; i < count; i++) {
+            Frame frame = new Frame();
+            frame.image = new Image(width, height);
+            freeFrames.add(frame);
+        }
+
+        presenter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                present();
+            }
+        }, "FramePresenter");
+        presenter.setDaemon(true);
+    }
+
+    /**
+     * 启动显示线程
+     */
+    public void start() {
+        isRunning = true;
+        presenter.start();
+    }
+
+    /**
+     * 停止显示线程
+     */
+    public void stop() {
+        isRunning = false;
+        presenter.interrupt();
+    }
+
+    /**
+     * 获得一个空闲的图像用于渲染。如果所有图像都在等待显示，则阻塞到显示线程归还图像为止。
+     * @return
+     * @throws InterruptedException
+     * @throws IllegalStateException 显示线程因为异常而停止
+     */
+    public Image acquire() throws InterruptedException {
+        checkFailure();
+        Frame frame = freeFrames.take();
+        if (failure != null) {
+            freeFrames.add(frame);
+            checkFailure();
+        }
+        current = frame;
+        return frame.image;
+    }
+
+    /**
+     * 如果显示线程发生了异常，在渲染线程中抛出。
+     */
+    private void checkFailure() {
+        RuntimeException e = failure;
+        if (e != null) {
+            throw new IllegalStateException("Frame presenter failed.", e);
+        }
+    }
+
+    /**
+     * 提交渲染好的图像，交给显示线程显示。
+     * @param fps
+     * @throws InterruptedException
+     */
+    public void submit(int fps) throws InterruptedException {
+        Frame frame = current;
+        if (frame == null) {
+            throw new IllegalStateException("No frame acquired.");
+        }
+        current = null;
+        frame.fps = fps;
+        readyFrames.put(frame);
+    }
+
+    /**
+     * 显示线程的主循环
+     */
+    private void present() {
+        while (isRunning) {
+            Frame frame;
+            try {
+                frame = readyFrames.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                screen.swapBuffer(frame.image, frame.fps);
+            } catch (RuntimeException e) {
+                // 先记录异常再归还图像，等待中的渲染线程被唤醒后就能看到异常。
+                failure = e;
+                isRunning = false;
+            } finally {
+                freeFrames.add(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package earth;
+
+import java.io.IOException;
+
+import renderer.Image;
+import renderer.ImageWriter;
+import renderer.Renderer;
+
+/**
+ * 离屏渲染程序，把场景渲染到图像中，不创建窗口。
+ * <p>
+ * 与Application的用法相同：在initialize()中搭建场景，在update()中更新逻辑。
+ * 区别在于没有主循环和显示器，每调用一次renderFrame()渲染一帧，结果保存在Image中，
+ * 也可以用renderFrames()直接保存为PNG文件。整个过程不会加载AWT，可以在无界面的服务器上运行。
+ * </p>
+ */
+public abstract class OffscreenApplication extends BaseApplication {
+    
+    // 是否把渲染结果和深度缓冲保存在堆外内存中，适合渲染超大分辨率的图像。需要在渲染第一帧之前设置。
+    protected boolean offHeap;
+
+    // 是否已经初始化
+    private boolean created;
+
+    /**
+     * 更新逻辑并渲染一帧
+     * @param delta 与上一帧的间隔时间（秒）
+     * @param store 保存渲染结果的图像，尺寸必须与分辨率相同。为null时创建新的图像。
+     * @return
+     */
+    public Image renderFrame(float delta, Image store) {
+        if (!created) {
+            // 创建渲染器和摄像机，然后初始化场景。
+            createRenderer(offHeap);
+            initialize();
+            created = true;
+        }
+        if (store == null) {
+            store = new Image(width, height, offHeap);
+        }
+
+        updateAndRender(delta, store);
+
+        return store;
+    }
+
+    /**
+     * 以固定的间隔时间连续渲染多帧，并保存为PNG文件。
+     * @param count 帧数
+     * @param delta 每帧的间隔时间（秒）
+     * @param fileNameFormat 文件名格式，以帧序号作为参数，如 "frame_%04d.png"。
+     * @throws IOException
+     */
+    public void renderFrames(int count, float delta, String fileNameFormat) throws IOException {
+        Image image = new Image(width, height, offHeap);
+        try {
+            for (int i = 0; i < count; i++) {
+                renderFrame(delta, image);
+                ImageWriter.writePNG(image, String.format(fileNameFormat, i));
+            }
+        } finally {
+            image.release();
+        }
+    }
+    
+    /**
+     * 释放渲染器占用的堆外内存。之后不能再渲染。
+     */
+    public void release() {
+        Renderer renderer = getRenderer();
+        if (renderer != null) {
+            renderer.release();
+        }
+    }
+}
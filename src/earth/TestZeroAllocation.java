@@ -0,0 +1,131 @@
+package earth;
+
+import java.lang.management.ManagementFactory;
+
+import light.AmbientLight;
+import light.DirectionalLight;
+import material.Material;
+import math.Quaternion;
+import math.Vector3f;
+import math.Vector4f;
+import renderer.Image;
+import renderer.ShadowMap;
+import scene.Geometry;
+import scene.Node;
+import scene.shape.Box;
+import scene.shape.Sphere;
+import shader.BlinnPhongShader;
+
+/**
+ * 测试渲染循环在稳定状态下不分配内存
+ * <p>
+ * 离屏渲染一个带光照和阴影的运动场景，预热若干帧之后，连续渲染多帧，
+ * 比较渲染线程在这期间分配的字节数。有任何分配时以非0状态退出。
+ * </p>
+ */
+public class TestZeroAllocation extends OffscreenApplication {
+
+    private final static float PI = 3.1415926f;
+    private final static float _2PI = PI * 2;
+
+    // 预热帧数和检测帧数。分层编译切换时，被逃逸分析消除的对象在去优化时会重新分配，
+    // 所以预热帧数要足够多，等JIT稳定下来。检测帧数覆盖物体旋转一整圈。
+    private final static int WARMUP_FRAMES = 1000;
+    private final static int MEASURE_FRAMES = 120;
+
+    private float angle = 0;// 旋转角度
+
+    private Node pivot;
+    private Geometry box;
+
+    // 临时变量
+    private Quaternion rotation = new Quaternion();
+
+    public static void main(String[] args) {
+        TestZeroAllocation app = new TestZeroAllocation();
+        app.setResolution(320, 240);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocated memory is not supported by this JVM.");
+            return;
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        Image image = new Image(320, 240);
+        try {
+            // 预热：创建渲染器，扩充各种缓冲区，并让JIT完成编译。
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                app.renderFrame(1f / 60, image);
+            }
+
+            // 查询本身可能分配内存，先测出这部分开销。
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            long overhead = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+            start = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURE_FRAMES; i++) {
+                app.renderFrame(1f / 60, image);
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+            if (allocated != 0) {
+                System.out.println("FAILED: " + allocated + " bytes allocated in " + MEASURE_FRAMES + " frames.");
+                System.exit(1);
+            }
+            System.out.println("OK: no allocation in " + MEASURE_FRAMES + " frames.");
+        } finally {
+            image.release();
+            app.release();
+        }
+    }
+
+    @Override
+    protected void initialize() {
+        // 初始化摄像机
+        getCamera().lookAt(new Vector3f(4, 5, 8), Vector3f.ZERO, Vector3f.UNIT_Y);
+
+        // 光源，定向光源投射阴影。
+        lights.add(new AmbientLight(new Vector4f(0.2f, 0.2f, 0.2f, 1f)));
+        DirectionalLight sun = new DirectionalLight(new Vector3f(-1, -2, -1).normalizeLocal());
+        sun.setShadowMap(new ShadowMap());
+        lights.add(sun);
+
+        Material material = new Material();
+        material.setDiffuse(new Vector4f(1, 1, 1, 1));
+        material.setShader(new BlinnPhongShader());
+
+        // 地面
+        Geometry ground = new Geometry(new Box(), material);
+        ground.getLocalTransform().setTranslation(0, -1.5f, 0);
+        ground.getLocalTransform().setScale(4, 0.1f, 4);
+        rootNode.attachChild(ground);
+
+        // 绕中心旋转的物体
+        pivot = new Node();
+        rootNode.attachChild(pivot);
+
+        Geometry sphere = new Geometry(new Sphere(1f, 24, 16), material);
+        sphere.getLocalTransform().setTranslation(2, 0, 0);
+        pivot.attachChild(sphere);
+
+        box = new Geometry(new Box(), material);
+        box.getLocalTransform().setTranslation(-2, 0, 0);
+        pivot.attachChild(box);
+    }
+
+    @Override
+    protected void update(float delta) {
+        angle += delta * PI;
+
+        // 若已经旋转360°，则减去360°。
+        if (angle > _2PI) {
+            angle -= _2PI;
+        }
+
+        pivot.getLocalTransform().getRotation().fromAxisAngle(Vector3f.UNIT_Y, angle);
+        rotation.fromAxisAngle(Vector3f.UNIT_X, angle * 2);
+        box.getLocalTransform().setRotation(rotation);
+    }
+}
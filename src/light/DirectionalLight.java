@@ -2,6 +2,7 @@ package light;
 
 import math.Vector3f;
 import math.Vector4f;
+import renderer.ShadowMap;
 
 /**
  * 定向光源（平行光）
@@ -10,6 +11,9 @@ public class DirectionalLight extends Light{
 
     // 光照方向
     protected Vector3f direction;
+    
+    // 阴影贴图，为null时不产生阴影。
+    protected ShadowMap shadowMap;
 
     public DirectionalLight() {
         super();
@@ -39,4 +43,28 @@ public class DirectionalLight extends Light{
         this.direction = direction;
     }
     
+    public ShadowMap getShadowMap() {
+        return shadowMap;
+    }
+    
+    /**
+     * 设置阴影贴图，为null时不产生阴影。
+     * @param shadowMap
+     */
+    public void setShadowMap(ShadowMap shadowMap) {
+        this.shadowMap = shadowMap;
+    }
+    
+    /**
+     * 开启或关闭阴影，使用默认尺寸的阴影贴图。
+     * @param castShadow
+     */
+    public void setCastShadow(boolean castShadow) {
+        if (castShadow && shadowMap == null) {
+            shadowMap = new ShadowMap();
+        } else if (!castShadow) {
+            shadowMap = null;
+        }
+    }
+    
 }
@@ -1,5 +1,6 @@
 package material;
 
+import math.PowTable;
 import math.Vector4f;
 import shader.DefaultShader;
 import shader.Shader;
@@ -22,6 +23,7 @@ public class Material {
     private Vector4f ambient;           // 环境光色
     private Vector4f specular;          // 高光颜色
     private float shininess;            // 光泽度
+    private PowTable specularTable;     // 高光指数查找表，快速计算模式下使用。
     
     private Texture emssiveMap;         // 发光贴图
     private Texture diffuseMap;         // 漫反射贴图
@@ -118,6 +120,17 @@ public class Material {
         this.shininess = shininess;
     }
 
+    /**
+     * 获得以光泽度为指数的幂函数查找表，首次调用或光泽度改变后重新生成。
+     * @return
+     */
+    public PowTable getSpecularTable() {
+        if (specularTable == null || specularTable.getExponent() != shininess) {
+            specularTable = new PowTable(shininess);
+        }
+        return specularTable;
+    }
+
     public Texture getDiffuseMap() {
         return diffuseMap;
     }
@@ -14,6 +14,8 @@ public class Texture {
     private int width;
     private int height;
     private byte[] components;
+    // 纹理使用的图像，与纹理共享颜色数据。
+    private Image image;
 
     /**
      * 纹理放大时，如何滤波
@@ -78,15 +80,31 @@ public class Texture {
     }
 
     /**
-     * 设置图像
+     * 设置图像。采样直接读取颜色数组，堆外的图像不能作为纹理使用。
      * @param image
      */
     public void setImage(Image image) {
+        if (image.isOffHeap()) {
+            throw new IllegalArgumentException("Off-heap image cannot be used as a texture.");
+        }
+        this.image = image;
         this.width = image.getWidth();
         this.height = image.getHeight();
         this.components = image.getComponents();
     }
 
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * 获得图像的版本号。图像作为渲染目标时，每次渲染完成后版本号都会增加。
+     * @return
+     */
+    public int getVersion() {
+        return image.getVersion();
+    }
+
     /**
      * 设置放大滤波方式
      * @param magFilter
@@ -126,12 +144,27 @@ public class Texture {
      * @return
      */
     public Vector4f sample2d(Vector2f uv) {
+        return sample2d(uv, null);
+    }
+    
+    /**
+     * 根据UV进行采样，结果保存在store中。
+     * 
+     * @param uv
+     * @param store
+     * @return
+     */
+    public Vector4f sample2d(Vector2f uv, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        
         float s = uv.x;
         float t = uv.y;
         
         if (s < 0 || s > 1 || t < 0 || t > 1) {
             if (warpS == WarpMode.CLAMP_TO_BORDER || warpT == WarpMode.CLAMP_TO_BORDER) {
-                return borderColor;
+                return store.set(borderColor);
             }
             
             s = warp(s, warpS);
@@ -140,12 +173,12 @@ public class Texture {
         
         switch (magFilter) {
         case NEAREST:
-            return nearest(s, t);
+            return nearest(s, t, store);
         case BILINEAR:
-            return bilinear(s, t);
+            return bilinear(s, t, store);
         }
         
-        return new Vector4f(0);
+        return store.set(0, 0, 0, 0);
     }
     
     /**
@@ -215,6 +248,22 @@ public class Texture {
      * @return
      */
     protected Vector4f bilinear(float s, float t) {
+        return bilinear(s, t, null);
+    }
+    
+    /**
+     * 二次线性(Bilinear)采样，结果保存在store中。
+     * 
+     * @param s
+     * @param t
+     * @param store
+     * @return
+     */
+    protected Vector4f bilinear(float s, float t, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        
         // 计算坐标
         float u = (float) (width - 1) * s;
         float v = (float) (height - 1) * (1 - t);
@@ -232,25 +281,31 @@ public class Texture {
         if (iv1 > height - 1)
             iv1 = iv0;
 
-        // 四个采样点
-        Vector4f c0 = getColor(iu0, iv0);
-        Vector4f c1 = getColor(iu1, iv0);
-        Vector4f c2 = getColor(iu0, iv1);
-        Vector4f c3 = getColor(iu1, iv1);
-        
         // 计算四个采样点的贡献值
         float du0 = u - iu0;
         float dv0 = v - iv0;
         float du1 = 1f - du0;
         float dv1 = 1f - dv0;
+        float f0 = du1 * dv1;
+        float f1 = du0 * dv1;
+        float f2 = du1 * dv0;
+        float f3 = du0 * dv0;
         
-        // 计算最终的颜色
-        c0.x = c0.x * du1 * dv1 + c1.x * du0 * dv1 + c2.x * du1 * dv0 + c3.x * du0 * dv0;
-        c0.y = c0.y * du1 * dv1 + c1.y * du0 * dv1 + c2.y * du1 * dv0 + c3.y * du0 * dv0;
-        c0.z = c0.z * du1 * dv1 + c1.z * du0 * dv1 + c2.z * du1 * dv0 + c3.z * du0 * dv0;
-        c0.w = c0.w * du1 * dv1 + c1.w * du0 * dv1 + c2.w * du1 * dv0 + c3.w * du0 * dv0;
+        // 直接读取四个采样点的颜色分量，计算最终的颜色。
+        int i0 = (iu0 + iv0 * width) * 4;
+        int i1 = (iu1 + iv0 * width) * 4;
+        int i2 = (iu0 + iv1 * width) * 4;
+        int i3 = (iu1 + iv1 * width) * 4;
+        store.x = (f0 * (0xFF & components[i0]) + f1 * (0xFF & components[i1])
+                + f2 * (0xFF & components[i2]) + f3 * (0xFF & components[i3])) * INV_SCALE;
+        store.y = (f0 * (0xFF & components[i0 + 1]) + f1 * (0xFF & components[i1 + 1])
+                + f2 * (0xFF & components[i2 + 1]) + f3 * (0xFF & components[i3 + 1])) * INV_SCALE;
+        store.z = (f0 * (0xFF & components[i0 + 2]) + f1 * (0xFF & components[i1 + 2])
+                + f2 * (0xFF & components[i2 + 2]) + f3 * (0xFF & components[i3 + 2])) * INV_SCALE;
+        store.w = (f0 * (0xFF & components[i0 + 3]) + f1 * (0xFF & components[i1 + 3])
+                + f2 * (0xFF & components[i2 + 3]) + f3 * (0xFF & components[i3 + 3])) * INV_SCALE;
         
-        return c0;
+        return store;
     }
 
     /**
@@ -261,6 +316,18 @@ public class Texture {
      * @return
      */
     protected Vector4f nearest(float s, float t) {
+        return nearest(s, t, null);
+    }
+    
+    /**
+     * 最邻近点(NEAREST)采样，结果保存在store中。
+     * 
+     * @param s
+     * @param t
+     * @param store
+     * @return
+     */
+    protected Vector4f nearest(float s, float t, Vector4f store) {
 
         // 计算坐标
         float u = (float) (width - 1) * s;
@@ -270,8 +337,7 @@ public class Texture {
         int iu = (int) u;
         int iv = (int) v;
 
-        Vector4f color = getColor(iu, iv);
-        return color;
+        return getColor(iu, iv, store);
     }
     
     private final static float INV_SCALE = 1f / 255f;
@@ -283,7 +349,18 @@ public class Texture {
      * @return
      */
     public Vector4f getColor(int x, int y) {
-        Vector4f color = new Vector4f();
+        return getColor(x, y, null);
+    }
+    
+    /**
+     * 提取颜色，结果保存在store中。
+     * @param x
+     * @param y
+     * @param store
+     * @return
+     */
+    public Vector4f getColor(int x, int y, Vector4f store) {
+        Vector4f color = store != null ? store : new Vector4f();
         
         int index = (x + y * width) * 4;
         float r = (float)(0xFF & components[index]) * INV_SCALE;
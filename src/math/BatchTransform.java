@@ -0,0 +1,169 @@
+package math;
+
+/**
+ * 批量变换，对保存在float数组中的一组顶点做相同的变换。
+ * <p>
+ * 逐个顶点调用 Matrix4f.mult(Vector3f, Vector3f) 需要每次读取矩阵的16个字段，并且顶点分散在不同的对象中。
+ * 这里先把矩阵元素读到局部变量里，然后在一个简单的循环中顺序读写数组，循环体内没有方法调用和分支。
+ * </p>
+ * <p>
+ * 数组中的数据可以是紧凑的，也可以与其他顶点属性交错存放：offset是第一个元素的下标，stride是相邻两个顶点之间的间隔（以float计）。
+ * 分量分开存放(x[], y[], z[])的版本，循环的每次迭代只访问连续的数组元素，可以被C2编译器自动向量化。
+ * </p>
+ */
+public final class BatchTransform {
+
+    private BatchTransform() {
+    }
+
+    /**
+     * 用仿射变换矩阵变换一组点（w = 1），只计算x、y、z。
+     *
+     * @param mat 变换矩阵，第四行视为(0, 0, 0, 1)。
+     * @param src 输入数组
+     * @param srcOffset 第一个点在输入数组中的下标
+     * @param srcStride 输入数组中相邻两个点的间隔
+     * @param dst 输出数组，可以与输入数组相同。
+     * @param dstOffset 第一个点在输出数组中的下标
+     * @param dstStride 输出数组中相邻两个点的间隔
+     * @param count 点的数量
+     */
+    public static void transformPoints(Matrix4f mat, float[] src, int srcOffset, int srcStride,
+            float[] dst, int dstOffset, int dstStride, int count) {
+        float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02, m03 = mat.m03;
+        float m10 = mat.m10, m11 = mat.m11, m12 = mat.m12, m13 = mat.m13;
+        float m20 = mat.m20, m21 = mat.m21, m22 = mat.m22, m23 = mat.m23;
+
+        for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStride) {
+            float x = src[s], y = src[s + 1], z = src[s + 2];
+            dst[d]     = m00 * x + m01 * y + m02 * z + m03;
+            dst[d + 1] = m10 * x + m11 * y + m12 * z + m13;
+            dst[d + 2] = m20 * x + m21 * y + m22 * z + m23;
+        }
+    }
+
+    /**
+     * 用紧凑存放的3x4仿射变换矩阵变换一组点（w = 1）。
+     * 矩阵按行优先保存前三行，与 {@link Matrix4f#setAffine(float[], int)} 的格式相同。
+     *
+     * @param matrices 保存矩阵的数组
+     * @param matrixOffset 矩阵在数组中的下标
+     * @param src
+     * @param srcOffset
+     * @param srcStride
+     * @param dst
+     * @param dstOffset
+     * @param dstStride
+     * @param count
+     */
+    public static void transformPoints(float[] matrices, int matrixOffset, float[] src, int srcOffset, int srcStride,
+            float[] dst, int dstOffset, int dstStride, int count) {
+        int m = matrixOffset;
+        float m00 = matrices[m],     m01 = matrices[m + 1], m02 = matrices[m + 2],  m03 = matrices[m + 3];
+        float m10 = matrices[m + 4], m11 = matrices[m + 5], m12 = matrices[m + 6],  m13 = matrices[m + 7];
+        float m20 = matrices[m + 8], m21 = matrices[m + 9], m22 = matrices[m + 10], m23 = matrices[m + 11];
+
+        for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStride) {
+            float x = src[s], y = src[s + 1], z = src[s + 2];
+            dst[d]     = m00 * x + m01 * y + m02 * z + m03;
+            dst[d + 1] = m10 * x + m11 * y + m12 * z + m13;
+            dst[d + 2] = m20 * x + m21 * y + m22 * z + m23;
+        }
+    }
+
+    /**
+     * 用仿射变换矩阵变换一组点，x、y、z分量分别保存在三个数组中。
+     * 每次迭代只访问各数组的第i个元素，可以被自动向量化。
+     *
+     * @param mat
+     * @param x 输入x分量
+     * @param y 输入y分量
+     * @param z 输入z分量
+     * @param outX 输出x分量，可以与输入数组相同。
+     * @param outY 输出y分量
+     * @param outZ 输出z分量
+     * @param offset 第一个点的下标
+     * @param count 点的数量
+     */
+    public static void transformPoints(Matrix4f mat, float[] x, float[] y, float[] z,
+            float[] outX, float[] outY, float[] outZ, int offset, int count) {
+        float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02, m03 = mat.m03;
+        float m10 = mat.m10, m11 = mat.m11, m12 = mat.m12, m13 = mat.m13;
+        float m20 = mat.m20, m21 = mat.m21, m22 = mat.m22, m23 = mat.m23;
+
+        int end = offset + count;
+        for(int i = offset; i < end; i++) {
+            float px = x[i], py = y[i], pz = z[i];
+            outX[i] = m00 * px + m01 * py + m02 * pz + m03;
+            outY[i] = m10 * px + m11 * py + m12 * pz + m13;
+            outZ[i] = m20 * px + m21 * py + m22 * pz + m23;
+        }
+    }
+
+    /**
+     * 用3x3矩阵变换一组方向向量，通常用于以法向量矩阵变换法线。
+     *
+     * @param mat
+     * @param src
+     * @param srcOffset
+     * @param srcStride
+     * @param dst 输出数组，可以与输入数组相同。
+     * @param dstOffset
+     * @param dstStride
+     * @param count
+     * @param normalize 是否把结果单位化
+     */
+    public static void transformVectors(Matrix3f mat, float[] src, int srcOffset, int srcStride,
+            float[] dst, int dstOffset, int dstStride, int count, boolean normalize) {
+        float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02;
+        float m10 = mat.m10, m11 = mat.m11, m12 = mat.m12;
+        float m20 = mat.m20, m21 = mat.m21, m22 = mat.m22;
+
+        for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStride) {
+            float x = src[s], y = src[s + 1], z = src[s + 2];
+            float rx = m00 * x + m01 * y + m02 * z;
+            float ry = m10 * x + m11 * y + m12 * z;
+            float rz = m20 * x + m21 * y + m22 * z;
+            if (normalize) {
+                float length = rx * rx + ry * ry + rz * rz;
+                if (length != 0f) {
+                    length = (float) (1.0 / Math.sqrt(length));
+                    rx *= length;
+                    ry *= length;
+                    rz *= length;
+                }
+            }
+            dst[d]     = rx;
+            dst[d + 1] = ry;
+            dst[d + 2] = rz;
+        }
+    }
+
+    /**
+     * 把一组点（w = 1）变换到齐次裁剪空间，输出x、y、z、w四个分量。
+     *
+     * @param mat 通常为模型-观察-投影变换矩阵
+     * @param src 输入数组，每个点读取3个分量。
+     * @param srcOffset
+     * @param srcStride
+     * @param dst 输出数组，每个点写入4个分量。不能与输入数组重叠。
+     * @param dstOffset
+     * @param dstStride
+     * @param count
+     */
+    public static void projectPoints(Matrix4f mat, float[] src, int srcOffset, int srcStride,
+            float[] dst, int dstOffset, int dstStride, int count) {
+        float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02, m03 = mat.m03;
+        float m10 = mat.m10, m11 = mat.m11, m12 = mat.m12, m13 = mat.m13;
+        float m20 = mat.m20, m21 = mat.m21, m22 = mat.m22, m23 = mat.m23;
+        float m30 = mat.m30, m31 = mat.m31, m32 = mat.m32, m33 = mat.m33;
+
+        for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStride) {
+            float x = src[s], y = src[s + 1], z = src[s + 2];
+            dst[d]     = m00 * x + m01 * y + m02 * z + m03;
+            dst[d + 1] = m10 * x + m11 * y + m12 * z + m13;
+            dst[d + 2] = m20 * x + m21 * y + m22 * z + m23;
+            dst[d + 3] = m30 * x + m31 * y + m32 * z + m33;
+        }
+    }
+}
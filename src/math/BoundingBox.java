@@ -0,0 +1,296 @@
+package math;
+
+/**
+ * 轴对齐包围盒（AABB），使用中心点和三个半轴长度来表示。
+ */
+public class BoundingBox {
+
+    /**
+     * 包围盒完全位于平面的正面
+     */
+    public final static int INSIDE = 1;
+    /**
+     * 包围盒与平面相交
+     */
+    public final static int INTERSECTS = 0;
+    /**
+     * 包围盒完全位于平面的背面
+     */
+    public final static int OUTSIDE = -1;
+
+    // 中心点
+    private Vector3f center = new Vector3f();
+
+    // 半轴长度
+    private float xExtent;
+    private float yExtent;
+    private float zExtent;
+
+    public BoundingBox() {
+    }
+
+    public BoundingBox(Vector3f center, float xExtent, float yExtent, float zExtent) {
+        this.center.set(center);
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        this.zExtent = zExtent;
+    }
+
+    public BoundingBox(BoundingBox box) {
+        set(box);
+    }
+
+    /**
+     * 复制另一个包围盒的值
+     * @param box
+     * @return
+     */
+    public BoundingBox set(BoundingBox box) {
+        center.set(box.center);
+        xExtent = box.xExtent;
+        yExtent = box.yExtent;
+        zExtent = box.zExtent;
+        return this;
+    }
+
+    /**
+     * 根据最小点和最大点设置包围盒
+     * @param min
+     * @param max
+     * @return
+     */
+    public BoundingBox setMinMax(Vector3f min, Vector3f max) {
+        return setMinMax(min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+
+    /**
+     * 根据最小点和最大点设置包围盒
+     * @return
+     */
+    public BoundingBox setMinMax(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        center.set((minX + maxX) * 0.5f, (minY + maxY) * 0.5f, (minZ + maxZ) * 0.5f);
+        xExtent = (maxX - minX) * 0.5f;
+        yExtent = (maxY - minY) * 0.5f;
+        zExtent = (maxZ - minZ) * 0.5f;
+        return this;
+    }
+
+    /**
+     * 计算包含一组顶点的最小包围盒
+     * @param points
+     * @return
+     */
+    public BoundingBox computeFromPoints(Vector3f[] points) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < points.length; i++) {
+            Vector3f p = points[i];
+            if (p == null) {
+                continue;
+            }
+            if (p.x < minX) minX = p.x;
+            if (p.y < minY) minY = p.y;
+            if (p.z < minZ) minZ = p.z;
+            if (p.x > maxX) maxX = p.x;
+            if (p.y > maxY) maxY = p.y;
+            if (p.z > maxZ) maxZ = p.z;
+        }
+
+        if (minX > maxX) {
+            // 没有有效的顶点
+            center.set(0, 0, 0);
+            xExtent = yExtent = zExtent = 0;
+            return this;
+        }
+        return setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * 使用4x4矩阵变换包围盒，结果仍为轴对齐包围盒。
+     * @param mat
+     * @param store
+     * @return
+     */
+    public BoundingBox transform(Matrix4f mat, BoundingBox store) {
+        if (store == null) {
+            store = new BoundingBox();
+        }
+
+        float cx = center.x, cy = center.y, cz = center.z;
+        float ex = xExtent, ey = yExtent, ez = zExtent;
+
+        // 新的中心点
+        store.center.x = mat.m00 * cx + mat.m01 * cy + mat.m02 * cz + mat.m03;
+        store.center.y = mat.m10 * cx + mat.m11 * cy + mat.m12 * cz + mat.m13;
+        store.center.z = mat.m20 * cx + mat.m21 * cy + mat.m22 * cz + mat.m23;
+
+        // 新的半轴长度 = |M| * extent
+        store.xExtent = Math.abs(mat.m00) * ex + Math.abs(mat.m01) * ey + Math.abs(mat.m02) * ez;
+        store.yExtent = Math.abs(mat.m10) * ex + Math.abs(mat.m11) * ey + Math.abs(mat.m12) * ez;
+        store.zExtent = Math.abs(mat.m20) * ex + Math.abs(mat.m21) * ey + Math.abs(mat.m22) * ez;
+
+        return store;
+    }
+
+    /**
+     * 合并两个包围盒，结果保存在store中。
+     * @param box
+     * @param store
+     * @return
+     */
+    public BoundingBox merge(BoundingBox box, BoundingBox store) {
+        if (store == null) {
+            store = new BoundingBox();
+        }
+        float minX = Math.min(center.x - xExtent, box.center.x - box.xExtent);
+        float minY = Math.min(center.y - yExtent, box.center.y - box.yExtent);
+        float minZ = Math.min(center.z - zExtent, box.center.z - box.zExtent);
+        float maxX = Math.max(center.x + xExtent, box.center.x + box.xExtent);
+        float maxY = Math.max(center.y + yExtent, box.center.y + box.yExtent);
+        float maxZ = Math.max(center.z + zExtent, box.center.z + box.zExtent);
+        return store.setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * 合并另一个包围盒
+     * @param box
+     * @return
+     */
+    public BoundingBox mergeLocal(BoundingBox box) {
+        return merge(box, this);
+    }
+
+    /**
+     * 向各个方向扩大包围盒
+     * @param margin
+     * @return
+     */
+    public BoundingBox enlargeLocal(float margin) {
+        xExtent += margin;
+        yExtent += margin;
+        zExtent += margin;
+        return this;
+    }
+
+    /**
+     * 判断另一个包围盒是否完全位于这个包围盒内
+     * @param box
+     * @return
+     */
+    public boolean contains(BoundingBox box) {
+        return Math.abs(center.x - box.center.x) + box.xExtent <= xExtent
+                && Math.abs(center.y - box.center.y) + box.yExtent <= yExtent
+                && Math.abs(center.z - box.center.z) + box.zExtent <= zExtent;
+    }
+
+    /**
+     * 判断两个包围盒是否相交
+     * @param box
+     * @return
+     */
+    public boolean intersects(BoundingBox box) {
+        return Math.abs(center.x - box.center.x) <= xExtent + box.xExtent
+                && Math.abs(center.y - box.center.y) <= yExtent + box.yExtent
+                && Math.abs(center.z - box.center.z) <= zExtent + box.zExtent;
+    }
+
+    /**
+     * 判断包围盒位于平面的哪一侧
+     * @param plane
+     * @return INSIDE、OUTSIDE 或 INTERSECTS
+     */
+    public int whichSide(Plane plane) {
+        Vector3f n = plane.getNormal();
+        // 包围盒在平面法线方向上的投影半径
+        float radius = Math.abs(n.x) * xExtent + Math.abs(n.y) * yExtent + Math.abs(n.z) * zExtent;
+        float distance = n.dot(center) + plane.getConstant();
+
+        if (distance < -radius) {
+            return OUTSIDE;
+        } else if (distance > radius) {
+            return INSIDE;
+        }
+        return INTERSECTS;
+    }
+
+    /**
+     * 使用Slab算法计算射线与包围盒的相交距离。
+     * @param ray
+     * @return 相交距离，若不相交则返回 Float.POSITIVE_INFINITY
+     */
+    public float intersects(Ray ray) {
+        Vector3f o = ray.getOrigin();
+        Vector3f d = ray.getDirection();
+
+        float tMin = 0f;
+        float tMax = Float.POSITIVE_INFINITY;
+
+        // X
+        float invD = 1f / d.x;
+        float t0 = (center.x - xExtent - o.x) * invD;
+        float t1 = (center.x + xExtent - o.x) * invD;
+        if (invD < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tMin) tMin = t0;
+        if (t1 < tMax) tMax = t1;
+        if (tMin > tMax) return Float.POSITIVE_INFINITY;
+
+        // Y
+        invD = 1f / d.y;
+        t0 = (center.y - yExtent - o.y) * invD;
+        t1 = (center.y + yExtent - o.y) * invD;
+        if (invD < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tMin) tMin = t0;
+        if (t1 < tMax) tMax = t1;
+        if (tMin > tMax) return Float.POSITIVE_INFINITY;
+
+        // Z
+        invD = 1f / d.z;
+        t0 = (center.z - zExtent - o.z) * invD;
+        t1 = (center.z + zExtent - o.z) * invD;
+        if (invD < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tMin) tMin = t0;
+        if (t1 < tMax) tMax = t1;
+        if (tMin > tMax) return Float.POSITIVE_INFINITY;
+
+        return tMin;
+    }
+
+    /**
+     * 计算表面积，用于评估BVH的插入代价。
+     * @return
+     */
+    public float getSurfaceArea() {
+        return 8f * (xExtent * yExtent + yExtent * zExtent + zExtent * xExtent);
+    }
+
+    public Vector3f getMin(Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(center.x - xExtent, center.y - yExtent, center.z - zExtent);
+    }
+
+    public Vector3f getMax(Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(center.x + xExtent, center.y + yExtent, center.z + zExtent);
+    }
+
+    public Vector3f getCenter() {
+        return center;
+    }
+
+    public float getXExtent() {
+        return xExtent;
+    }
+
+    public float getYExtent() {
+        return yExtent;
+    }
+
+    public float getZExtent() {
+        return zExtent;
+    }
+}
@@ -0,0 +1,41 @@
+package math;
+
+/**
+ * 快速近似计算，用于对精度要求不高的着色计算。
+ */
+public final class FastMath {
+
+    private FastMath() {
+    }
+
+    /**
+     * 快速求平方根的倒数。用整数运算得到初始近似值，再进行一次牛顿迭代。
+     * 对于所有正的规格化浮点数，相对误差小于0.18%，对8位颜色几乎不可见。
+     * 
+     * @param x 必须大于0
+     * @return 1 / sqrt(x) 的近似值
+     */
+    public static float invSqrt(float x) {
+        float half = 0.5f * x;
+        int i = Float.floatToRawIntBits(x);
+        i = 0x5f3759df - (i >> 1);
+        float y = Float.intBitsToFloat(i);
+        return y * (1.5f - half * y * y);
+    }
+
+    /**
+     * 用近似的平方根倒数把向量单位化，结果的长度与1的误差小于0.18%。
+     * @param v
+     * @return v
+     */
+    public static Vector3f normalizeLocal(Vector3f v) {
+        float length = v.x * v.x + v.y * v.y + v.z * v.z;
+        if (length != 0f) {
+            length = invSqrt(length);
+            v.x *= length;
+            v.y *= length;
+            v.z *= length;
+        }
+        return v;
+    }
+}
@@ -105,6 +105,24 @@ public class Matrix3f {
     public Matrix3f transpose() {
         return new Matrix3f(m00, m10, m20, m01, m11, m21, m02, m12, m22);
     }
+
+    /**
+     * 求转置矩阵，结果保存在store中。
+     * @param store
+     * @return
+     */
+    public Matrix3f transpose(Matrix3f store) {
+        if (store == null) {
+            store = new Matrix3f();
+        }
+        if (store == this) {
+            return transposeLocal();
+        }
+        store.m00 = m00; store.m01 = m10; store.m02 = m20;
+        store.m10 = m01; store.m11 = m11; store.m12 = m21;
+        store.m20 = m02; store.m21 = m12; store.m22 = m22;
+        return store;
+    }
     
     /**
      * 求转置矩阵
@@ -450,13 +468,35 @@ public class Matrix3f {
      * @return
      */
     public Matrix3f fromRotate(float xAngle, float yAngle, float zAngle) {
-        // FIXME 这个计算方法的性能很差，可以直接根据矩阵乘法规则算出结果矩阵，然后化简。
-        Matrix3f rotateX = new Matrix3f().fromRotateX(xAngle);
-        Matrix3f rotateY = new Matrix3f().fromRotateY(yAngle);
-        Matrix3f rotateZ = new Matrix3f().fromRotateZ(zAngle);
+        return fromRotate(xAngle, yAngle, zAngle, null);
+    }
+    
+    /**
+     * 欧拉角旋转，结果为 Rz * Ry * Rx，保存在store中。
+     * @param xAngle
+     * @param yAngle
+     * @param zAngle
+     * @param store
+     * @return
+     */
+    public Matrix3f fromRotate(float xAngle, float yAngle, float zAngle, Matrix3f store) {
+        if (store == null) {
+            store = new Matrix3f();
+        }
+        float cx = (float) Math.cos(xAngle), sx = (float) Math.sin(xAngle);
+        float cy = (float) Math.cos(yAngle), sy = (float) Math.sin(yAngle);
+        float cz = (float) Math.cos(zAngle), sz = (float) Math.sin(zAngle);
         
-        Matrix3f result = rotateZ.mult(rotateY).mult(rotateX);
-        return result;
+        store.m00 = cz * cy;
+        store.m01 = cz * sy * sx - sz * cx;
+        store.m02 = cz * sy * cx + sz * sx;
+        store.m10 = sz * cy;
+        store.m11 = sz * sy * sx + cz * cx;
+        store.m12 = sz * sy * cx - cz * sx;
+        store.m20 = -sy;
+        store.m21 = cy * sx;
+        store.m22 = cy * cx;
+        return store;
     }
     
     /**
@@ -98,10 +98,26 @@ public class Matrix4f {
      * @return
      */
     public Matrix4f transpose() {
-        float[] tmp = new float[16];
-        get(tmp, true);
-        Matrix4f mat = new Matrix4f(tmp);
-        return mat;
+        return transpose(null);
+    }
+
+    /**
+     * 求转置矩阵，结果保存在store中。
+     * @param store
+     * @return
+     */
+    public Matrix4f transpose(Matrix4f store) {
+        if (store == null) {
+            store = new Matrix4f();
+        }
+        if (store == this) {
+            return transposeLocal();
+        }
+        store.m00 = m00; store.m01 = m10; store.m02 = m20; store.m03 = m30;
+        store.m10 = m01; store.m11 = m11; store.m12 = m21; store.m13 = m31;
+        store.m20 = m02; store.m21 = m12; store.m22 = m22; store.m23 = m32;
+        store.m30 = m03; store.m31 = m13; store.m32 = m23; store.m33 = m33;
+        return store;
     }
 
     /**
@@ -204,6 +220,11 @@ public class Matrix4f {
         if (store == null) {
             store = new Matrix4f();
         }
+        
+        // 右乘仿射矩阵（如世界变换、观察变换）时，可以省略它的第四行。
+        if (mat4.isAffine()) {
+            return multAffine(mat4, store);
+        }
 
         float temp00, temp01, temp02, temp03;
         float temp10, temp11, temp12, temp13;
@@ -464,6 +485,13 @@ public class Matrix4f {
         if (store == null) {
             store = new Matrix4f();
         }
+        
+        if (isAffine()) {
+            if (!invertAffine(store)) {
+                throw new ArithmeticException("This matrix cannot be inverted");
+            }
+            return store;
+        }
 
         float fA0 = m00 * m11 - m01 * m10;
         float fA1 = m00 * m12 - m02 * m10;
@@ -512,6 +540,12 @@ public class Matrix4f {
      * @return
      */
     public Matrix4f invertLocal() {
+        if (isAffine()) {
+            if (!invertAffine(this)) {
+                return zero();
+            }
+            return this;
+        }
 
         float fA0 = m00 * m11 - m01 * m10;
         float fA1 = m00 * m12 - m02 * m10;
@@ -570,6 +604,128 @@ public class Matrix4f {
 
         return this;
     }
+
+    /**
+     * 判断是否为仿射变换矩阵，即第四行为(0, 0, 0, 1)。
+     * 由Transform生成的世界变换矩阵、观察变换矩阵和正交投影矩阵都是仿射矩阵。
+     * @return
+     */
+    public boolean isAffine() {
+        return m30 == 0f && m31 == 0f && m32 == 0f && m33 == 1f;
+    }
+    
+    /**
+     * 右乘一个仿射矩阵，省略它的第四行。如果自身也是仿射矩阵，乘积的第四行直接为(0, 0, 0, 1)。
+     * @param mat4 仿射矩阵
+     * @param store 可以是this或mat4
+     * @return
+     */
+    private Matrix4f multAffine(Matrix4f mat4, Matrix4f store) {
+        float b00 = mat4.m00, b01 = mat4.m01, b02 = mat4.m02, b03 = mat4.m03;
+        float b10 = mat4.m10, b11 = mat4.m11, b12 = mat4.m12, b13 = mat4.m13;
+        float b20 = mat4.m20, b21 = mat4.m21, b22 = mat4.m22, b23 = mat4.m23;
+
+        float temp00 = m00 * b00 + m01 * b10 + m02 * b20;
+        float temp01 = m00 * b01 + m01 * b11 + m02 * b21;
+        float temp02 = m00 * b02 + m01 * b12 + m02 * b22;
+        float temp03 = m00 * b03 + m01 * b13 + m02 * b23 + m03;
+
+        float temp10 = m10 * b00 + m11 * b10 + m12 * b20;
+        float temp11 = m10 * b01 + m11 * b11 + m12 * b21;
+        float temp12 = m10 * b02 + m11 * b12 + m12 * b22;
+        float temp13 = m10 * b03 + m11 * b13 + m12 * b23 + m13;
+
+        float temp20 = m20 * b00 + m21 * b10 + m22 * b20;
+        float temp21 = m20 * b01 + m21 * b11 + m22 * b21;
+        float temp22 = m20 * b02 + m21 * b12 + m22 * b22;
+        float temp23 = m20 * b03 + m21 * b13 + m22 * b23 + m23;
+
+        float temp30, temp31, temp32, temp33;
+        if (isAffine()) {
+            temp30 = 0f;
+            temp31 = 0f;
+            temp32 = 0f;
+            temp33 = 1f;
+        } else {
+            temp30 = m30 * b00 + m31 * b10 + m32 * b20;
+            temp31 = m30 * b01 + m31 * b11 + m32 * b21;
+            temp32 = m30 * b02 + m31 * b12 + m32 * b22;
+            temp33 = m30 * b03 + m31 * b13 + m32 * b23 + m33;
+        }
+
+        store.m00 = temp00; store.m01 = temp01; store.m02 = temp02; store.m03 = temp03;
+        store.m10 = temp10; store.m11 = temp11; store.m12 = temp12; store.m13 = temp13;
+        store.m20 = temp20; store.m21 = temp21; store.m22 = temp22; store.m23 = temp23;
+        store.m30 = temp30; store.m31 = temp31; store.m32 = temp32; store.m33 = temp33;
+
+        return store;
+    }
+    
+    /**
+     * 求仿射矩阵的逆。只需要求左上角3x3矩阵的逆R'，平移部分为 -R' * t。
+     * @param store 可以是this
+     * @return 矩阵不可逆时返回false，store不会被修改。
+     */
+    private boolean invertAffine(Matrix4f store) {
+        float c00 = m11 * m22 - m12 * m21;
+        float c01 = m02 * m21 - m01 * m22;
+        float c02 = m01 * m12 - m02 * m11;
+        float c10 = m12 * m20 - m10 * m22;
+        float c11 = m00 * m22 - m02 * m20;
+        float c12 = m02 * m10 - m00 * m12;
+        float c20 = m10 * m21 - m11 * m20;
+        float c21 = m01 * m20 - m00 * m21;
+        float c22 = m00 * m11 - m01 * m10;
+
+        float fDet = m00 * c00 + m01 * c10 + m02 * c20;
+        if (Math.abs(fDet) <= 0f) {
+            return false;
+        }
+
+        float fInvDet = 1.0f / fDet;
+        float i00 = c00 * fInvDet, i01 = c01 * fInvDet, i02 = c02 * fInvDet;
+        float i10 = c10 * fInvDet, i11 = c11 * fInvDet, i12 = c12 * fInvDet;
+        float i20 = c20 * fInvDet, i21 = c21 * fInvDet, i22 = c22 * fInvDet;
+        float tx = m03, ty = m13, tz = m23;
+
+        store.m00 = i00; store.m01 = i01; store.m02 = i02;
+        store.m10 = i10; store.m11 = i11; store.m12 = i12;
+        store.m20 = i20; store.m21 = i21; store.m22 = i22;
+        store.m03 = -(i00 * tx + i01 * ty + i02 * tz);
+        store.m13 = -(i10 * tx + i11 * ty + i12 * tz);
+        store.m23 = -(i20 * tx + i21 * ty + i22 * tz);
+        store.m30 = 0f; store.m31 = 0f; store.m32 = 0f; store.m33 = 1f;
+
+        return true;
+    }
+    
+    /**
+     * 求刚体变换矩阵（只包含旋转和平移）的逆。旋转矩阵的逆就是它的转置，平移部分为 -R^T * t。
+     * 调用者需要保证矩阵不包含缩放，否则结果是错误的。
+     * 
+     * @param store 可以是this
+     * @return
+     */
+    public Matrix4f invertRigid(Matrix4f store) {
+        if (store == null) {
+            store = new Matrix4f();
+        }
+
+        float r00 = m00, r01 = m10, r02 = m20;
+        float r10 = m01, r11 = m11, r12 = m21;
+        float r20 = m02, r21 = m12, r22 = m22;
+        float tx = m03, ty = m13, tz = m23;
+
+        store.m00 = r00; store.m01 = r01; store.m02 = r02;
+        store.m10 = r10; store.m11 = r11; store.m12 = r12;
+        store.m20 = r20; store.m21 = r21; store.m22 = r22;
+        store.m03 = -(r00 * tx + r01 * ty + r02 * tz);
+        store.m13 = -(r10 * tx + r11 * ty + r12 * tz);
+        store.m23 = -(r20 * tx + r21 * ty + r22 * tz);
+        store.m30 = 0f; store.m31 = 0f; store.m32 = 0f; store.m33 = 1f;
+
+        return store;
+    }
     
     /**
      * 4*4矩阵的第四列表示位移
@@ -758,7 +914,7 @@ public class Matrix4f {
      * @param q
      */
     public void toRotationQuat(Quaternion q) {
-        q.fromRotationMatrix(toRotationMatrix());
+        q.fromRotationMatrix(m00, m01, m02, m10, m11, m12, m20, m21, m22);
     }
 
     /**
@@ -816,25 +972,24 @@ public class Matrix4f {
      * @param z
      */
     public void setScale(float x, float y, float z) {
-        Vector3f tmp = new Vector3f();
-        
-        tmp.set(m00, m10, m20);
-        tmp.normalizeLocal().multLocal(x);
-        m00 = tmp.x;
-        m10 = tmp.y;
-        m20 = tmp.z;
-
-        tmp.set(m01, m11, m21);
-        tmp.normalizeLocal().multLocal(y);
-        m01 = tmp.x;
-        m11 = tmp.y;
-        m21 = tmp.z;
-
-        tmp.set(m02, m12, m22);
-        tmp.normalizeLocal().multLocal(z);
-        m02 = tmp.x;
-        m12 = tmp.y;
-        m22 = tmp.z;
+        // 把每一列单位化后再乘以比例系数，长度为0的列只乘以比例系数。
+        float length = m00 * m00 + m10 * m10 + m20 * m20;
+        float s = (length != 1f && length != 0f) ? x / (float) Math.sqrt(length) : x;
+        m00 *= s;
+        m10 *= s;
+        m20 *= s;
+
+        length = m01 * m01 + m11 * m11 + m21 * m21;
+        s = (length != 1f && length != 0f) ? y / (float) Math.sqrt(length) : y;
+        m01 *= s;
+        m11 *= s;
+        m21 *= s;
+
+        length = m02 * m02 + m12 * m12 + m22 * m22;
+        s = (length != 1f && length != 0f) ? z / (float) Math.sqrt(length) : z;
+        m02 *= s;
+        m12 *= s;
+        m22 *= s;
     }
 
     /**
@@ -1261,6 +1416,53 @@ public class Matrix4f {
         set(matrix, true);
     }
 
+    /**
+     * 把数组中从offset开始的12个值按行优先规则赋给矩阵的前三行，第四行为(0, 0, 0, 1)。
+     * 用于从紧凑存储的仿射变换矩阵中读取。
+     * 
+     * @param array
+     * @param offset
+     */
+    public void setAffine(float[] array, int offset) {
+        m00 = array[offset];
+        m01 = array[offset + 1];
+        m02 = array[offset + 2];
+        m03 = array[offset + 3];
+        m10 = array[offset + 4];
+        m11 = array[offset + 5];
+        m12 = array[offset + 6];
+        m13 = array[offset + 7];
+        m20 = array[offset + 8];
+        m21 = array[offset + 9];
+        m22 = array[offset + 10];
+        m23 = array[offset + 11];
+        m30 = 0;
+        m31 = 0;
+        m32 = 0;
+        m33 = 1;
+    }
+
+    /**
+     * 把矩阵的前三行按行优先规则写入数组中从offset开始的12个位置，与setAffine()相对应。
+     * 
+     * @param array
+     * @param offset
+     */
+    public void getAffine(float[] array, int offset) {
+        array[offset] = m00;
+        array[offset + 1] = m01;
+        array[offset + 2] = m02;
+        array[offset + 3] = m03;
+        array[offset + 4] = m10;
+        array[offset + 5] = m11;
+        array[offset + 6] = m12;
+        array[offset + 7] = m13;
+        array[offset + 8] = m20;
+        array[offset + 9] = m21;
+        array[offset + 10] = m22;
+        array[offset + 11] = m23;
+    }
+
     /**
      * 使用给定数组来为矩阵赋值
      * 
@@ -15,6 +15,9 @@ public class Plane {
      */
     private float constant = 0;
     
+    public Plane() {
+    }
+    
     public Plane(float x, float y, float z, float constant) {
         this.normal.set(x, y, z).normalizeLocal();
         this.constant = constant;
@@ -25,6 +28,21 @@ public class Plane {
         this.constant = d;
     }
     
+    /**
+     * 使用平面方程 ax + by + cz + d = 0 设置平面，方程的四个系数会一起被单位化。
+     * @param a
+     * @param b
+     * @param c
+     * @param d
+     * @return
+     */
+    public Plane set(float a, float b, float c, float d) {
+        float invLength = 1f / (float) Math.sqrt(a * a + b * b + c * c);
+        normal.set(a * invLength, b * invLength, c * invLength);
+        constant = d * invLength;
+        return this;
+    }
+    
     /**
      * 判断顶点是否在平面上。
      * @param v
@@ -33,4 +51,12 @@ public class Plane {
     public float determine(Vector3f v) {
         return normal.dot(v) + constant;
     }
+
+    public Vector3f getNormal() {
+        return normal;
+    }
+
+    public float getConstant() {
+        return constant;
+    }
 }
@@ -0,0 +1,63 @@
+package math;
+
+/**
+ * 幂函数查找表，用于计算 x^n，x的取值范围为[0, 1]，n固定。
+ * <p>
+ * 高光强度需要对每个像素计算 pow(ks, shininess)，而同一个材质的指数不变。
+ * 预先在[0, 1]上均匀采样，计算时线性插值。
+ * 当n >= 2时，插值的绝对误差不超过 n(n-1)/(8*N*N)，N为采样区间数。
+ * 默认N=1024，n=32时误差约为1.2e-4，n=128时约为1.9e-3，都小于8位颜色的精度(1/255)。
+ * 当1 < n < 2时，x^n的二阶导数在0附近无界，上式不成立，误差不超过 1/(4*N^n)，
+ * 最大误差出现在第一个区间内，例如n=1.5时约为7.6e-6；n = 1时插值是精确的。
+ * </p>
+ */
+public class PowTable {
+
+    // 默认的采样区间数
+    public final static int DEFAULT_SIZE = 1024;
+    
+    private final float exponent;
+    private final int size;
+    private final float[] table;
+
+    public PowTable(float exponent) {
+        this(exponent, DEFAULT_SIZE);
+    }
+
+    public PowTable(float exponent, int size) {
+        this.exponent = exponent;
+        this.size = size;
+        this.table = new float[size + 2];
+        for(int i = 0; i <= size; i++) {
+            table[i] = (float) Math.pow((double) i / size, exponent);
+        }
+        // 便于在x=1时插值，不需要额外的判断。
+        table[size + 1] = table[size];
+    }
+
+    /**
+     * 计算 x^n 的近似值
+     * @param x 小于0时按0处理，大于1时按1处理。
+     * @return
+     */
+    public float pow(float x) {
+        if (x <= 0f) {
+            return table[0];
+        }
+        if (x >= 1f) {
+            return table[size];
+        }
+        float f = x * size;
+        int i = (int) f;
+        float t = f - i;
+        return table[i] + (table[i + 1] - table[i]) * t;
+    }
+
+    public float getExponent() {
+        return exponent;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
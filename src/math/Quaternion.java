@@ -410,6 +410,43 @@ public class Quaternion {
         return store;
     }
     
+    /**
+     * 使用这个四元数的逆来旋转一个三维向量，结果保存在store中。
+     * 与 inverse().mult(v, store) 的结果相同，但不创建新的四元数。
+     * @param v
+     * @param store
+     * @return
+     */
+    public Vector3f multInverse(Vector3f v, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        
+        // 与inverse()相同的逆四元数
+        float length = x * x + y * y + z * z + w * w;
+        float s = 1f;
+        if (length != 1f && length != 0f) {
+            s = (float) (1.0 / Math.sqrt(length));
+        }
+        float x = -this.x * s, y = -this.y * s, z = -this.z * s, w = this.w * s;
+        
+        if (v.x == 0 && v.y == 0 && v.z == 0) {
+            store.set(0, 0, 0);
+        } else {
+            float vx = v.x, vy = v.y, vz = v.z;
+            store.x = w * w * vx + 2 * y * w * vz - 2 * z * w * vy + x * x
+                    * vx + 2 * y * x * vy + 2 * z * x * vz - z * z * vx - y
+                    * y * vx;
+            store.y = 2 * x * y * vx + y * y * vy + 2 * z * y * vz + 2 * w
+                    * z * vx - z * z * vy + w * w * vy - 2 * x * w * vz - x
+                    * x * vy;
+            store.z = 2 * x * z * vx + 2 * y * z * vy + z * z * vz - 2 * w
+                    * y * vx - y * y * vz + 2 * w * x * vy - x * x * vz + w
+                    * w * vz;
+        }
+        return store;
+    }
+    
     /**
      * 旋转一个三维向量
      * @param v
@@ -442,6 +479,31 @@ public class Quaternion {
     public Quaternion delta(Quaternion q) {
         return this.inverse().mult(q);
     }
+    
+    /**
+     * 计算从这个四元数到另一个四元数的旋转，即 inverse() * q，结果保存在store中。
+     * @param q
+     * @param store
+     * @return
+     */
+    public Quaternion delta(Quaternion q, Quaternion store) {
+        if (store == null) {
+            store = new Quaternion();
+        }
+        // 与inverse()相同的逆四元数
+        float length = x * x + y * y + z * z + w * w;
+        float s = 1f;
+        if (length != 1f && length != 0f) {
+            s = (float) (1.0 / Math.sqrt(length));
+        }
+        float ix = -x * s, iy = -y * s, iz = -z * s, iw = w * s;
+        float qx = q.x, qy = q.y, qz = q.z, qw = q.w;
+        store.x = ix * qw + iy * qz - iz * qy + iw * qx;
+        store.y = -ix * qz + iy * qw + iz * qx + iw * qy;
+        store.z = ix * qy - iy * qx + iz * qw + iw * qz;
+        store.w = -ix * qx - iy * qy - iz * qz + iw * qw;
+        return store;
+    }
     /**
      * 四元数点乘。这个值越大，说明两个四元数的旋转角度越接近。
      * 当两个四元数都是单位四元数时，返回值是它们之间夹角的余弦值。
@@ -462,6 +524,19 @@ public class Quaternion {
         return new Quaternion(x + q.x, y + q.y, z + q.z, w + q.w);
     }
     
+    /**
+     * 四元数加法，结果保存在这个四元数中。
+     * @param q
+     * @return
+     */
+    public Quaternion addLocal(Quaternion q) {
+        x += q.x;
+        y += q.y;
+        z += q.z;
+        w += q.w;
+        return this;
+    }
+    
     /**
      * 四元数减法
      * @param q
@@ -471,6 +546,19 @@ public class Quaternion {
         return new Quaternion(x - q.x, y - q.y, z - q.z, w - q.w);
     }
     
+    /**
+     * 四元数减法，结果保存在这个四元数中。
+     * @param q
+     * @return
+     */
+    public Quaternion subtractLocal(Quaternion q) {
+        x -= q.x;
+        y -= q.y;
+        z -= q.z;
+        w -= q.w;
+        return this;
+    }
+    
     /**
      * 球面线性插值(Spherical Linear intERPolation)
      *
@@ -479,47 +567,7 @@ public class Quaternion {
      * @param t
      */
     public Quaternion slerp(Quaternion src, Quaternion dest, float t) {
-        if (src.x == dest.x && src.y == dest.y && src.z == dest.z && src.w == dest.w) {
-            return new Quaternion(src);
-        }
-
-        // 用点乘计算两四元数夹角的 cos 值
-        float cos = src.dot(dest);
-
-        // 如果点乘为负，则反转一个四元数以取得短的4D“弧”
-        if (cos < 0.0f) {
-            cos = -cos;
-            dest = dest.negate();
-        }
-
-        // 计算两个四元数的插值系数
-        float srcFactor = 1 - t;
-        float destFactor = t;
-
-        // 检查它们是否过于接近以避免除零
-        if (cos > 0.999f) {
-            // 非常接近 -- 即线性插值
-            srcFactor = 1 - t;
-            destFactor = t;
-        } else {
-            // 计算两个四元数之间的夹角
-            float angle = (float) Math.acos(cos);
-            // 计算分母的倒数，这样就只需要一次除法
-            float invSin = 1f / (float) Math.sin(angle);
-
-            // 计算插值系数
-            srcFactor = (float) Math.sin((1 - t) * angle) * invSin;
-            destFactor = (float) Math.sin((t * angle)) * invSin;
-        }
-        
-        // 插值
-        float rx = (srcFactor * src.x) + (destFactor * dest.x);
-        float ry = (srcFactor * src.y) + (destFactor * dest.y);
-        float rz = (srcFactor * src.z) + (destFactor * dest.z);
-        float rw = (srcFactor * src.w) + (destFactor * dest.w);
-
-        // 返回插值结果
-        return new Quaternion(rx, ry, rz, rw);
+        return new Quaternion().slerpLocal(src, dest, t);
     }
     
     /**
@@ -529,17 +577,40 @@ public class Quaternion {
      * @param t
      */
     public Quaternion slerp(Quaternion dest, float t) {
-        if (x == dest.x && y == dest.y && z == dest.z && w == dest.w) {
-            return new Quaternion(this);
+        return new Quaternion().slerpLocal(this, dest, t);
+    }
+    
+    /**
+     * 球面线性插值(Spherical Linear intERPolation)，结果保存在这个四元数中。
+     *
+     * @param dest
+     * @param t
+     */
+    public Quaternion slerpLocal(Quaternion dest, float t) {
+        return slerpLocal(this, dest, t);
+    }
+    
+    /**
+     * 球面线性插值(Spherical Linear intERPolation)，结果保存在这个四元数中。
+     * src或dest可以是这个四元数本身。
+     *
+     * @param src
+     * @param dest
+     * @param t
+     */
+    public Quaternion slerpLocal(Quaternion src, Quaternion dest, float t) {
+        if (src.x == dest.x && src.y == dest.y && src.z == dest.z && src.w == dest.w) {
+            return set(src);
         }
 
         // 用点乘计算两四元数夹角的 cos 值
-        float cos = dot(dest);
+        float cos = src.dot(dest);
 
         // 如果点乘为负，则反转一个四元数以取得短的4D“弧”
+        float sign = 1f;
         if (cos < 0.0f) {
             cos = -cos;
-            dest = dest.negate();
+            sign = -1f;
         }
 
         // 计算两个四元数的插值系数
@@ -547,11 +618,7 @@ public class Quaternion {
         float destFactor = t;
 
         // 检查它们是否过于接近以避免除零
-        if (cos > 0.999f) {
-            // 非常接近 -- 即线性插值
-            srcFactor = 1 - t;
-            destFactor = t;
-        } else {
+        if (cos <= 0.999f) {
             // 计算两个四元数之间的夹角
             float angle = (float) Math.acos(cos);
             // 计算分母的倒数，这样就只需要一次除法
@@ -561,15 +628,15 @@ public class Quaternion {
             srcFactor = (float) Math.sin((1 - t) * angle) * invSin;
             destFactor = (float) Math.sin((t * angle)) * invSin;
         }
+        destFactor *= sign;
         
         // 插值
-        float rx = (srcFactor * x) + (destFactor * dest.x);
-        float ry = (srcFactor * y) + (destFactor * dest.y);
-        float rz = (srcFactor * z) + (destFactor * dest.z);
-        float rw = (srcFactor * w) + (destFactor * dest.w);
+        float rx = (srcFactor * src.x) + (destFactor * dest.x);
+        float ry = (srcFactor * src.y) + (destFactor * dest.y);
+        float rz = (srcFactor * src.z) + (destFactor * dest.z);
+        float rw = (srcFactor * src.w) + (destFactor * dest.w);
 
-        // 返回插值结果
-        return new Quaternion(rx, ry, rz, rw);
+        return set(rx, ry, rz, rw);
     }
     
     /**
@@ -625,11 +692,10 @@ public class Quaternion {
      */
     public Matrix4f toRotationMatrix(Matrix4f result) {
         
-        Vector3f originalScale = new Vector3f();
-        
         // 保存矩阵原来的比例变换
-        result.toScaleVector(originalScale);
-        result.setScale(1, 1, 1);
+        float scaleX = (float) Math.sqrt(result.m00 * result.m00 + result.m10 * result.m10 + result.m20 * result.m20);
+        float scaleY = (float) Math.sqrt(result.m01 * result.m01 + result.m11 * result.m11 + result.m21 * result.m21);
+        float scaleZ = (float) Math.sqrt(result.m02 * result.m02 + result.m12 * result.m12 + result.m22 * result.m22);
 
         // 先计算2x、2y、2z的值，可以节省多次乘法运算。
         float _2x = x * 2;
@@ -656,7 +722,7 @@ public class Quaternion {
         result.m22 = 1 - (_2xx + _2yy);
 
         // 恢复矩阵的比例变换
-        result.setScale(originalScale);
+        result.setScale(scaleX, scaleY, scaleZ);
         
         return result;
     }
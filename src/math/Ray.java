@@ -0,0 +1,60 @@
+package math;
+
+/**
+ * 射线
+ */
+public class Ray {
+
+    /**
+     * 射线起点
+     */
+    private Vector3f origin = new Vector3f();
+
+    /**
+     * 射线方向（单位向量）
+     */
+    private Vector3f direction = new Vector3f(0, 0, 1);
+
+    public Ray() {
+    }
+
+    public Ray(Vector3f origin, Vector3f direction) {
+        set(origin, direction);
+    }
+
+    /**
+     * 设置射线的起点和方向
+     * @param origin
+     * @param direction
+     * @return
+     */
+    public Ray set(Vector3f origin, Vector3f direction) {
+        this.origin.set(origin);
+        this.direction.set(direction).normalizeLocal();
+        return this;
+    }
+
+    public Vector3f getOrigin() {
+        return origin;
+    }
+
+    public Vector3f getDirection() {
+        return direction;
+    }
+
+    /**
+     * 计算射线上距离起点t处的点
+     * @param t
+     * @param store
+     * @return
+     */
+    public Vector3f getPoint(float t, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        store.x = origin.x + direction.x * t;
+        store.y = origin.y + direction.y * t;
+        store.z = origin.z + direction.z * t;
+        return store;
+    }
+}
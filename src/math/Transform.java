@@ -81,7 +81,7 @@ public class Transform {
         // 先负平移
         in.subtract(translation, store);
         // 然后负旋转
-        rot.inverse().mult(store, store);
+        rot.multInverse(store, store);
         // 然后负缩放
         store.divideLocal(scale);
 
@@ -93,11 +93,72 @@ public class Transform {
      * @return
      */
     public Matrix4f toTransformMatrix() {
-        Matrix4f trans = new Matrix4f();
-        trans.setTranslation(translation);
-        trans.setRotationQuaternion(rot);
-        trans.setScale(scale);
-        return trans;
+        return toTransformMatrix(null);
+    }
+    
+    /**
+     * 三种变换转为4x4矩阵，结果保存在store中。
+     * @param store
+     * @return
+     */
+    public Matrix4f toTransformMatrix(Matrix4f store) {
+        if (store == null) {
+            store = new Matrix4f();
+        } else {
+            store.loadIdentity();
+        }
+        store.setTranslation(translation);
+        store.setRotationQuaternion(rot);
+        store.setScale(scale);
+        return store;
+    }
+    
+    /**
+     * 判断是否为等比缩放
+     * @return
+     */
+    public boolean isUniformScale() {
+        return scale.x == scale.y && scale.y == scale.z;
+    }
+    
+    /**
+     * 判断是否为刚体变换，即没有缩放，只有旋转和平移。假定旋转四元数已经单位化。
+     * @return
+     */
+    public boolean isRigid() {
+        return scale.x == 1f && scale.y == 1f && scale.z == 1f;
+    }
+    
+    /**
+     * 计算法向量变换矩阵，即变换矩阵左上角3x3部分的逆矩阵的转置，结果保存在store中。
+     * <p>
+     * 变换矩阵为 R * S，它的逆转置矩阵为 R * S^-1，所以不需要求逆：
+     * 等比缩放时直接使用旋转矩阵除以缩放系数，非等比缩放时把旋转矩阵的各列分别除以对应的缩放系数。
+     * 假定旋转四元数已经单位化。
+     * </p>
+     * @param store
+     * @return
+     */
+    public Matrix3f toNormalMatrix(Matrix3f store) {
+        if (store == null) {
+            store = new Matrix3f();
+        }
+        rot.toRotationMatrix(store);
+        
+        if (isUniformScale()) {
+            // 刚体变换，法向量矩阵就是旋转矩阵。
+            if (scale.x != 1f && scale.x != 0f) {
+                store.multLocal(1f / scale.x);
+            }
+        } else if (scale.x != 0f && scale.y != 0f && scale.z != 0f) {
+            float sx = 1f / scale.x;
+            float sy = 1f / scale.y;
+            float sz = 1f / scale.z;
+            store.m00 *= sx; store.m01 *= sy; store.m02 *= sz;
+            store.m10 *= sx; store.m11 *= sy; store.m12 *= sz;
+            store.m20 *= sx; store.m21 *= sy; store.m22 *= sz;
+        }
+        return store;
     }
     
     /**
@@ -105,9 +166,9 @@ public class Transform {
      * @param mat
      */
     public void fromTransformMatrix(Matrix4f mat) {
-        translation.set(mat.toTranslationVector());
-        rot.set(mat.toRotationQuat());
-        scale.set(mat.toScaleVector());
+        mat.toTranslationVector(translation);
+        mat.toRotationQuat(rot);
+        mat.toScaleVector(scale);
     }
     
     /**
@@ -115,9 +176,45 @@ public class Transform {
      * @return
      */
     public Transform invert() {
-        Transform t = new Transform();
-        t.fromTransformMatrix(toTransformMatrix().invertLocal());
-        return t;
+        return invert(null);
+    }
+    
+    /**
+     * 求空间变换的逆，结果保存在store中，store可以是自己。
+     * <p>
+     * 等比缩放时逆变换仍然可以表示为缩放、旋转、平移，直接计算而不需要求逆矩阵：
+     * 缩放为1/s，旋转为原旋转的逆，平移为 -(R^-1 * t) / s。
+     * 非等比缩放时通过求逆矩阵计算。
+     * </p>
+     * @param store
+     * @return
+     */
+    public Transform invert(Transform store) {
+        if (store == null) {
+            store = new Transform();
+        }
+        
+        if (!isUniformScale() || scale.x == 0f) {
+            store.fromTransformMatrix(toTransformMatrix(null).invertLocal());
+            return store;
+        }
+        
+        float s = 1f / scale.x;
+        store.scale.set(s, s, s);
+        store.translation.set(translation).negateLocal();
+        // 先用原旋转的逆旋转平移量，再更新旋转。store是自己时rot与store.rot是同一个对象。
+        rot.multInverse(store.translation, store.translation).multLocal(s);
+        
+        // 与Quaternion.inverse()相同
+        Quaternion q = store.rot;
+        q.set(rot);
+        float length = q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w;
+        float n = 1f;
+        if (length != 1f && length != 0f) {
+            n = (float) (1.0 / Math.sqrt(length));
+        }
+        q.set(-q.x * n, -q.y * n, -q.z * n, q.w * n);
+        return store;
     }
     
     /**
@@ -127,7 +224,7 @@ public class Transform {
      * @param delta
      */
     public void interpolateTransforms(Transform t1, Transform t2, float delta) {
-        this.rot.slerp(t1.rot,t2.rot,delta);
+        this.rot.slerpLocal(t1.rot,t2.rot,delta);
         this.translation.interpolateLocal(t1.translation,t2.translation,delta);
         this.scale.interpolateLocal(t1.scale,t2.scale,delta);
     }
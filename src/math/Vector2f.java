@@ -51,6 +51,21 @@ public final class Vector2f {
         return new Vector2f(x + v.x, y + v.y);
     }
 
+    /**
+     * 向量加法，结果保存在result中。
+     * @param v
+     * @param result
+     * @return
+     */
+    public Vector2f add(Vector2f v, Vector2f result) {
+        if (result == null)
+            result = new Vector2f();
+        
+        result.x = x + v.x;
+        result.y = y + v.y;
+        return result;
+    }
+
     /**
      * 向量加法
      * @param v
@@ -115,6 +130,19 @@ public final class Vector2f {
         return new Vector3f(0, 0, determinant(v));
     }
 
+    /**
+     * 向量叉乘，结果保存在store中。
+     * @param v
+     * @param store
+     * @return
+     */
+    public Vector3f cross(Vector2f v, Vector3f store) {
+        if (store == null)
+            store = new Vector3f();
+
+        return store.set(0, 0, determinant(v));
+    }
+
     /**
      * 判别式。
      * 若结果 &gt 0，点v位于该向量左侧；
@@ -200,6 +228,21 @@ public final class Vector2f {
         return new Vector2f(x * scalar, y * scalar);
     }
 
+    /**
+     * 标量乘法，结果保存在store中。
+     * @param scalar
+     * @param store
+     * @return
+     */
+    public Vector2f mult(float scalar, Vector2f store) {
+        if (store == null)
+            store = new Vector2f();
+        
+        store.x = x * scalar;
+        store.y = y * scalar;
+        return store;
+    }
+
     /**
      * 标量乘法
      * @param scalar
@@ -219,6 +262,21 @@ public final class Vector2f {
     public Vector2f mult(Vector2f v) {
         return new Vector2f(x * v.x, y * v.y);
     }
+
+    /**
+     * 向量乘法，结果保存在store中。
+     * @param v
+     * @param store
+     * @return
+     */
+    public Vector2f mult(Vector2f v, Vector2f store) {
+        if (store == null)
+            store = new Vector2f();
+        
+        store.x = x * v.x;
+        store.y = y * v.y;
+        return store;
+    }
     
     /**
      * 向量乘法
@@ -142,6 +142,23 @@ public final class Vector4f {
         return new Vector4f(x + v.x, y + v.y, z + v.z, w + v.w);
     }
 
+    /**
+     * 向量加法，结果保存在store中。
+     * @param v
+     * @param store
+     * @return
+     */
+    public Vector4f add(Vector4f v, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        store.x = x + v.x;
+        store.y = y + v.y;
+        store.z = z + v.z;
+        store.w = w + v.w;
+        return store;
+    }
+
     /**
      * 向量加法
      * 
@@ -165,6 +182,23 @@ public final class Vector4f {
         return new Vector4f(x - v.x, y - v.y, z - v.z, w - v.w);
     }
 
+    /**
+     * 向量减法，结果保存在store中。
+     * @param v
+     * @param store
+     * @return
+     */
+    public Vector4f subtract(Vector4f v, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        store.x = x - v.x;
+        store.y = y - v.y;
+        store.z = z - v.z;
+        store.w = w - v.w;
+        return store;
+    }
+
     /**
      * 向量减法
      * @param v
@@ -199,6 +233,21 @@ public final class Vector4f {
         return new Vector4f(other).multLocal(n/d);
     }
 
+    /**
+     * 求这个向量在另一个向量上的投影，结果保存在store中。
+     * @param other
+     * @param store
+     * @return
+     */
+    public Vector4f project(Vector4f other, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        float n = this.dot(other); // A . B
+        float d = other.lengthSquared(); // |B|^2
+        return store.set(other).multLocal(n/d);
+    }
+
     /**
      * 两点之间距离的平方
      * @param v
@@ -233,6 +282,23 @@ public final class Vector4f {
     public Vector4f mult(float scalar) {
         return new Vector4f(x * scalar, y * scalar, z * scalar, w * scalar);
     }
+
+    /**
+     * 标量乘法，结果保存在store中。
+     * @param scalar
+     * @param store
+     * @return
+     */
+    public Vector4f mult(float scalar, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        store.x = x * scalar;
+        store.y = y * scalar;
+        store.z = z * scalar;
+        store.w = w * scalar;
+        return store;
+    }
     
     /**
      * 标量乘法
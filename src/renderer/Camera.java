@@ -1,6 +1,7 @@
 package renderer;
 
 import math.Matrix4f;
+import math.Plane;
 import math.Quaternion;
 import math.Vector3f;
 
@@ -71,6 +72,16 @@ public class Camera {
 
     // 视口变换矩阵
     private Matrix4f viewportMatrix = new Matrix4f();
+    
+    /**
+     * 世界空间中的视锥平面，法线指向视锥内部。
+     * 依次为：左、右、下、上、近、远。
+     */
+    private Plane[] frustumPlanes = new Plane[6];
+    
+    // 临时变量
+    private Quaternion tempRotation = new Quaternion();
+    private Quaternion tempAxisRotation = new Quaternion();
 
     /**
      * 初始化摄像机
@@ -82,6 +93,10 @@ public class Camera {
         this.height = height;
         this.aspect = (float) width / height;// 屏幕宽高比
 
+        for(int i = 0; i < frustumPlanes.length; i++) {
+            frustumPlanes[i] = new Plane();
+        }
+
         // 计算观察-投影变换矩阵
         updateViewProjectionMatrix();
     }
@@ -184,6 +199,66 @@ public class Camera {
         return viewProjectionMatrix;
     }
 
+    /**
+     * 获取屏幕宽度
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取屏幕高度
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 估算一个球体投影到屏幕上的直径（像素）
+     * @param center 球心（世界空间）
+     * @param radius 半径
+     * @return
+     */
+    public float getProjectedSize(Vector3f center, float radius) {
+        // 投影矩阵在Y方向的缩放比
+        float zoomY = Math.abs(projectionMatrix.get(1, 1));
+        float size = 2f * radius * zoomY * height * 0.5f;
+        if (parallel) {
+            return size;
+        }
+        
+        float distance = location.distance(center);
+        if (distance <= radius) {
+            // 摄像机位于球体内部
+            return Float.POSITIVE_INFINITY;
+        }
+        return size / distance;
+    }
+
+    /**
+     * 获取世界空间中的视锥平面
+     * <p>根据当前的观察-投影变换矩阵提取（Gribb-Hartmann方法），法线指向视锥内部。</p>
+     * @return
+     */
+    public Plane[] getFrustumPlanes() {
+        Matrix4f m = viewProjectionMatrix;
+        float m00 = m.get(0, 0), m01 = m.get(0, 1), m02 = m.get(0, 2), m03 = m.get(0, 3);
+        float m10 = m.get(1, 0), m11 = m.get(1, 1), m12 = m.get(1, 2), m13 = m.get(1, 3);
+        float m20 = m.get(2, 0), m21 = m.get(2, 1), m22 = m.get(2, 2), m23 = m.get(2, 3);
+        float m30 = m.get(3, 0), m31 = m.get(3, 1), m32 = m.get(3, 2), m33 = m.get(3, 3);
+
+        frustumPlanes[0].set(m30 + m00, m31 + m01, m32 + m02, m33 + m03);// 左
+        frustumPlanes[1].set(m30 - m00, m31 - m01, m32 - m02, m33 - m03);// 右
+        frustumPlanes[2].set(m30 + m10, m31 + m11, m32 + m12, m33 + m13);// 下
+        frustumPlanes[3].set(m30 - m10, m31 - m11, m32 - m12, m33 - m13);// 上
+        frustumPlanes[4].set(m30 + m20, m31 + m21, m32 + m22, m33 + m23);// 近
+        frustumPlanes[5].set(m30 - m20, m31 - m21, m32 - m22, m33 - m23);// 远
+
+        return frustumPlanes;
+    }
+
     /**
      * 观察-投影 变换矩阵
      */
@@ -415,9 +490,9 @@ public class Camera {
         // 不能直接绕x、y、z轴旋转，而是应该绕uvn系统的三轴旋转。
         //Quaternion rot = new Quaternion().fromAngles(xAngle, yAngle, zAngle);
         
-        Quaternion rot = new Quaternion(uAxis, xAngle);
-        rot.multLocal(new Quaternion(vAxis, yAngle));
-        rot.multLocal(new Quaternion(nAxis, zAngle));
+        Quaternion rot = tempRotation.fromAxisAngle(uAxis, xAngle);
+        rot.multLocal(tempAxisRotation.fromAxisAngle(vAxis, yAngle));
+        rot.multLocal(tempAxisRotation.fromAxisAngle(nAxis, zAngle));
         // 计算旋转后的视线方向
         rot.multLocal(direction);
         direction.normalizeLocal();
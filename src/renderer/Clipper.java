@@ -0,0 +1,151 @@
+package renderer;
+
+import math.Vector4f;
+import scene.RasterizationVertex;
+
+/**
+ * 齐次裁剪空间中的三角形裁剪器
+ * <p>
+ * 使用Sutherland-Hodgman算法，只对三角形顶点编码(outcode)实际跨越的平面进行裁剪。
+ * 所有顶点都保存在预先分配好的数组中，裁剪过程中不会创建新对象。
+ * </p>
+ */
+public class Clipper {
+
+    /**
+     * 一个三角形被六个平面裁剪后，最多有9个顶点。
+     */
+    public final static int MAX_VERTICES = 9;
+
+    // 顶点编码，每一位表示顶点位于某个裁剪平面的外侧。
+    public final static int INSIDE = 0;
+    public final static int RIGHT = 1;   //  x > w
+    public final static int LEFT = 2;    // -x > w
+    public final static int TOP = 4;     //  y > w
+    public final static int BOTTOM = 8;  // -y > w
+    public final static int FAR = 16;    //  z > w
+    public final static int NEAR = 32;   // -z > w
+
+    // 每个平面裁剪时最多生成2个新顶点
+    private final static int MAX_NEW_VERTICES = 12;
+
+    // 两个交替使用的顶点数组
+    private RasterizationVertex[] polygon = new RasterizationVertex[MAX_VERTICES];
+    private RasterizationVertex[] auxillary = new RasterizationVertex[MAX_VERTICES];
+    private int count;
+
+    // 裁剪时生成的新顶点
+    private RasterizationVertex[] newVertices = new RasterizationVertex[MAX_NEW_VERTICES];
+    private int newVertexCount;
+
+    public Clipper() {
+        for(int i = 0; i < MAX_NEW_VERTICES; i++) {
+            newVertices[i] = new RasterizationVertex();
+        }
+    }
+
+    /**
+     * 计算顶点编码
+     * @param position 齐次裁剪空间中的顶点坐标
+     * @return
+     */
+    public static int outcode(Vector4f position) {
+        float w = position.w;
+        int code = INSIDE;
+        if (position.x > w) code |= RIGHT;
+        if (-position.x > w) code |= LEFT;
+        if (position.y > w) code |= TOP;
+        if (-position.y > w) code |= BOTTOM;
+        if (position.z > w) code |= FAR;
+        if (-position.z > w) code |= NEAR;
+        return code;
+    }
+
+    /**
+     * 裁剪三角形。裁剪结果可以通过 {@link #getVertex(int)} 获取，并按三角扇的方式进行光栅化。
+     *
+     * @param v0
+     * @param v1
+     * @param v2
+     * @param clipMask 需要裁剪的平面，通常为三个顶点编码的并集。
+     * @return 裁剪后多边形的顶点数量，小于3表示三角形被完全裁剪。
+     */
+    public int clip(RasterizationVertex v0, RasterizationVertex v1, RasterizationVertex v2, int clipMask) {
+        polygon[0] = v0;
+        polygon[1] = v1;
+        polygon[2] = v2;
+        count = 3;
+        newVertexCount = 0;
+
+        if ((clipMask & RIGHT) != 0 && !clipPolygonComponent(0, 1f)) return 0;
+        if ((clipMask & LEFT) != 0 && !clipPolygonComponent(0, -1f)) return 0;
+        if ((clipMask & TOP) != 0 && !clipPolygonComponent(1, 1f)) return 0;
+        if ((clipMask & BOTTOM) != 0 && !clipPolygonComponent(1, -1f)) return 0;
+        if ((clipMask & FAR) != 0 && !clipPolygonComponent(2, 1f)) return 0;
+        if ((clipMask & NEAR) != 0 && !clipPolygonComponent(2, -1f)) return 0;
+
+        return count;
+    }
+
+    /**
+     * 获取裁剪后多边形的顶点
+     * @param i
+     * @return
+     */
+    public RasterizationVertex getVertex(int i) {
+        return polygon[i];
+    }
+
+    /**
+     * 使用一个裁剪平面裁剪多边形，结果保存回polygon数组。
+     * @param componentIndex
+     * @param componentFactor
+     * @return 多边形是否还有剩余部分
+     */
+    private boolean clipPolygonComponent(int componentIndex, float componentFactor) {
+        RasterizationVertex[] result = auxillary;
+        int resultCount = 0;
+
+        RasterizationVertex previousVertex = polygon[count - 1];
+        float previousComponent = previousVertex.position.get(componentIndex) * componentFactor;
+        boolean previousInside = previousComponent <= previousVertex.position.w;
+
+        for(int i = 0; i < count; i++) {
+            RasterizationVertex currentVertex = polygon[i];
+            float currentComponent = currentVertex.position.get(componentIndex) * componentFactor;
+            boolean currentInside = currentComponent <= currentVertex.position.w;
+
+            if(currentInside ^ previousInside) {
+                // 数值误差导致多边形不再是凸多边形时，放弃这个三角形。
+                if (resultCount >= MAX_VERTICES || newVertexCount >= MAX_NEW_VERTICES) {
+                    return false;
+                }
+                float lerpAmt = (previousVertex.position.w - previousComponent) /
+                    ((previousVertex.position.w - previousComponent) -
+                     (currentVertex.position.w - currentComponent));
+
+                RasterizationVertex v = newVertices[newVertexCount++];
+                v.interpolateLocal(previousVertex, currentVertex, lerpAmt);
+                result[resultCount++] = v;
+            }
+
+            if(currentInside) {
+                if (resultCount >= MAX_VERTICES) {
+                    return false;
+                }
+                result[resultCount++] = currentVertex;
+            }
+
+            previousVertex = currentVertex;
+            previousComponent = currentComponent;
+            previousInside = currentInside;
+        }
+
+        // 交换数组
+        auxillary = polygon;
+        polygon = result;
+        count = resultCount;
+
+        return count >= 3;
+    }
+}
@@ -0,0 +1,75 @@
+package renderer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 堆外内存的分配和释放。
+ * <p>
+ * 直接缓冲区（Direct ByteBuffer）的内存不在Java堆中，不占用堆空间，也不会被GC复制和扫描。
+ * 但它默认要等到缓冲区对象被回收后才会释放，这里通过缓冲区的Cleaner立即释放。
+ * 如果当前的JVM不支持，则退回到由GC释放。
+ * </p>
+ */
+final class DirectMemory {
+
+    // Java 9以上：Unsafe.invokeCleaner(ByteBuffer)
+    private static Object unsafe;
+    private static Method invokeCleaner;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = method;
+        } catch (Exception e) {
+            // Java 8没有这个方法，释放时使用DirectByteBuffer.cleaner()。
+            unsafe = null;
+            invokeCleaner = null;
+        }
+    }
+
+    private DirectMemory() {
+    }
+
+    /**
+     * 分配堆外内存，字节序与本机相同，内容初始化为0。
+     * @param capacity 字节数
+     * @return
+     */
+    static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 立即释放堆外内存。释放后不能再访问这个缓冲区。
+     * @param buffer 由allocate()创建的缓冲区，不能是它的视图（如asFloatBuffer()的结果）。
+     */
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(unsafe, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method cleanMethod = cleaner.getClass().getMethod("clean");
+                    cleanMethod.setAccessible(true);
+                    cleanMethod.invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // 无法立即释放，交给GC。
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package renderer;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import material.Material;
+import math.BoundingBox;
+import math.Matrix4f;
+import math.Vector3f;
+import math.Vector4f;
+import scene.Geometry;
+import scene.Mesh;
+
+/**
+ * 脏矩形，用于增量渲染。
+ * <p>
+ * 记录每个物体上一帧在屏幕上占据的矩形。物体移动、出现或消失时，它新旧两个矩形的并集需要重新绘制，
+ * 其他区域的颜色缓冲和深度缓冲可以直接复用。摄像机发生变化时整个画面都需要重新绘制。
+ * </p>
+ * 使用多个渲染目标轮流渲染时，每个目标图像分别累积自己上次渲染以来的脏矩形。
+ */
+public class DirtyRegion {
+
+    /**
+     * 物体在上一帧的状态
+     */
+    private static class State {
+        // 屏幕矩形，max为开区间。
+        int minX, minY, maxX, maxY;
+        // 世界变换矩阵和世界包围盒
+        final float[] signature = new float[SIGNATURE_SIZE];
+        Mesh mesh;
+        Material material;
+        // 实例、骨骼姿势等渲染数据的版本号
+        int dataVersion;
+        // 同步标记
+        int stamp;
+    }
+
+    // 世界变换矩阵的前3行（12个float）加上包围盒的中心和半轴长度（6个float）
+    private final static int SIGNATURE_SIZE = 18;
+
+    // 屏幕尺寸
+    private final int width;
+    private final int height;
+
+    // 物体的状态
+    private Map<Geometry, State> states = new IdentityHashMap<Geometry, State>();
+
+    // 每个渲染目标尚未重绘的区域，按 minX, minY, maxX, maxY 保存。
+    private Map<Image, int[]> pending = new IdentityHashMap<Image, int[]>();
+
+    // 上一帧的观察-投影变换矩阵
+    private final float[] cameraSignature = new float[16];
+
+    // 下一帧是否需要全部重绘
+    private boolean invalid = true;
+
+    // 同步计数
+    private int stamp;
+
+    // 本帧需要重绘的区域
+    private int minX, minY, maxX, maxY;
+
+    // 临时变量
+    private float[] tempSignature = new float[SIGNATURE_SIZE];
+    private Vector4f clipPosition = new Vector4f();
+    private int[] tempRect = new int[4];
+
+    public DirtyRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 下一帧全部重绘。背景色、光源等无法自动检测的状态发生变化时调用。
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * 比较物体与上一帧的状态，计算渲染目标需要重绘的区域。
+     * @param geomList 本帧要绘制的物体
+     * @param viewProjectionMatrix 观察-投影变换矩阵
+     * @param target 渲染目标
+     * @return 是否有需要重绘的区域
+     */
+    public boolean update(List<Geometry> geomList, Matrix4f viewProjectionMatrix, Image target) {
+        stamp++;
+
+        // 摄像机变化时全部重绘
+        boolean full = invalid;
+        for(int i = 0; i < 16; i++) {
+            float value = viewProjectionMatrix.get(i / 4, i % 4);
+            if (cameraSignature[i] != value) {
+                cameraSignature[i] = value;
+                full = true;
+            }
+        }
+        invalid = false;
+
+        // 本帧变化的区域
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+
+        int len = geomList.size();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            State state = states.get(geom);
+            computeSignature(geom, tempSignature);
+
+            if (state == null) {
+                state = new State();
+                states.put(geom, state);
+            } else if (!full && isSame(state, geom, tempSignature)) {
+                state.stamp = stamp;
+                continue;
+            } else {
+                // 旧的位置需要重绘
+                union(state.minX, state.minY, state.maxX, state.maxY);
+            }
+
+            System.arraycopy(tempSignature, 0, state.signature, 0, SIGNATURE_SIZE);
+            state.mesh = geom.getMesh();
+            state.material = geom.getMaterial();
+            state.dataVersion = geom.getDataVersion();
+            state.stamp = stamp;
+            computeScreenRect(geom.getWorldBound(), viewProjectionMatrix, tempRect);
+            state.minX = tempRect[0];
+            state.minY = tempRect[1];
+            state.maxX = tempRect[2];
+            state.maxY = tempRect[3];
+
+            // 新的位置需要重绘
+            union(state.minX, state.minY, state.maxX, state.maxY);
+        }
+
+        // 消失的物体，旧的位置需要重绘。
+        Iterator<State> it = states.values().iterator();
+        while (it.hasNext()) {
+            State state = it.next();
+            if (state.stamp != stamp) {
+                union(state.minX, state.minY, state.maxX, state.maxY);
+                it.remove();
+            }
+        }
+
+        if (full) {
+            minX = minY = 0;
+            maxX = width;
+            maxY = height;
+        }
+
+        // 把本帧变化的区域累积到每个渲染目标上
+        for(int[] rect : pending.values()) {
+            if (minX < maxX && minY < maxY) {
+                if (rect[0] >= rect[2]) {
+                    rect[0] = minX; rect[1] = minY; rect[2] = maxX; rect[3] = maxY;
+                } else {
+                    rect[0] = Math.min(rect[0], minX);
+                    rect[1] = Math.min(rect[1], minY);
+                    rect[2] = Math.max(rect[2], maxX);
+                    rect[3] = Math.max(rect[3], maxY);
+                }
+            }
+        }
+
+        // 第一次使用的渲染目标需要全部重绘
+        int[] rect = pending.get(target);
+        if (rect == null) {
+            rect = new int[] {0, 0, width, height};
+            pending.put(target, rect);
+        }
+
+        minX = Math.max(0, rect[0]);
+        minY = Math.max(0, rect[1]);
+        maxX = Math.min(width, rect[2]);
+        maxY = Math.min(height, rect[3]);
+
+        // 渲染目标已经是最新的状态
+        rect[0] = rect[1] = 0;
+        rect[2] = rect[3] = 0;
+
+        return !isEmpty();
+    }
+
+    /**
+     * 判断物体是否与需要重绘的区域相交
+     * @param geom
+     * @return
+     */
+    public boolean intersects(Geometry geom) {
+        State state = states.get(geom);
+        if (state == null) {
+            return true;
+        }
+        return state.minX < maxX && state.maxX > minX && state.minY < maxY && state.maxY > minY;
+    }
+
+    /**
+     * 需要重绘的区域是否为空
+     * @return
+     */
+    public boolean isEmpty() {
+        return minX >= maxX || minY >= maxY;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * @return 开区间
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * @return 开区间
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * 扩大本帧变化的区域
+     */
+    private void union(int x0, int y0, int x1, int y1) {
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        if (x0 < minX) minX = x0;
+        if (y0 < minY) minY = y0;
+        if (x1 > maxX) maxX = x1;
+        if (y1 > maxY) maxY = y1;
+    }
+
+    private boolean isSame(State state, Geometry geom, float[] signature) {
+        if (state.mesh != geom.getMesh() || state.material != geom.getMaterial()
+                || state.dataVersion != geom.getDataVersion()) {
+            return false;
+        }
+        for(int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (state.signature[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录物体的世界变换矩阵和世界包围盒
+     */
+    private void computeSignature(Geometry geom, float[] store) {
+        Matrix4f worldMatrix = geom.getWorldMatrix();
+        for(int i = 0; i < 12; i++) {
+            store[i] = worldMatrix.get(i / 4, i % 4);
+        }
+        BoundingBox bound = geom.getWorldBound();
+        Vector3f center = bound.getCenter();
+        store[12] = center.x;
+        store[13] = center.y;
+        store[14] = center.z;
+        store[15] = bound.getXExtent();
+        store[16] = bound.getYExtent();
+        store[17] = bound.getZExtent();
+    }
+
+    /**
+     * 计算世界包围盒在屏幕上覆盖的矩形，向外多扩展一个像素。
+     */
+    private void computeScreenRect(BoundingBox bound, Matrix4f viewProjectionMatrix, int[] store) {
+        Vector3f center = bound.getCenter();
+        float ex = bound.getXExtent();
+        float ey = bound.getYExtent();
+        float ez = bound.getZExtent();
+
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+
+        for(int i = 0; i < 8; i++) {
+            clipPosition.set(center.x + ((i & 1) == 0 ? -ex : ex),
+                             center.y + ((i & 2) == 0 ? -ey : ey),
+                             center.z + ((i & 4) == 0 ? -ez : ez), 1f);
+            viewProjectionMatrix.mult(clipPosition, clipPosition);
+
+            float w = clipPosition.w;
+            if (w <= 1e-5f) {
+                // 包围盒跨越摄像机平面，按整个屏幕处理。
+                store[0] = 0;
+                store[1] = 0;
+                store[2] = width;
+                store[3] = height;
+                return;
+            }
+
+            float sx = (clipPosition.x / w + 1f) * 0.5f * width;
+            float sy = (1f - clipPosition.y / w) * 0.5f * height;
+            if (sx < x0) x0 = sx;
+            if (sx > x1) x1 = sx;
+            if (sy < y0) y0 = sy;
+            if (sy > y1) y1 = sy;
+        }
+
+        store[0] = Math.max(0, (int) Math.floor(x0) - 1);
+        store[1] = Math.max(0, (int) Math.floor(y0) - 1);
+        store[2] = Math.min(width, (int) Math.ceil(x1) + 2);
+        store[3] = Math.min(height, (int) Math.ceil(y1) + 2);
+    }
+}
@@ -1,13 +1,14 @@
 package renderer;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.nio.ByteBuffer;
 
 /**
  * 用于保存图像数据。 图像格式采用4BYTE_RGBA。
+ * <p>
+ * 颜色数据默认保存在Java堆中的byte数组里。离线渲染超大分辨率的图像时，可以把它保存在堆外内存中，
+ * 这样堆的大小与分辨率无关，使用完毕后调用release()立即释放。堆外的图像不能作为纹理使用。
+ * </p>
  */
 public class Image {
 
@@ -15,41 +16,46 @@ public class Image {
     protected final int width;
     // 图片的高度
     protected final int height;
-    // 颜色数据
+    // 颜色数据，保存在堆外内存中时为null。
     protected final byte[] components;
+    // 堆外的颜色数据，保存在堆中时为null。
+    protected ByteBuffer buffer;
+    // 版本号，图像内容被修改后增加。
+    protected volatile int version;
 
     public Image(int width, int height) {
+        this(width, height, false);
+    }
+
+    /**
+     * 创建图像
+     * @param width
+     * @param height
+     * @param offHeap 是否把颜色数据保存在堆外内存中
+     */
+    public Image(int width, int height, boolean offHeap) {
         this.width = width;
         this.height = height;
-        this.components = new byte[width * height * 4];
+        if (offHeap) {
+            this.components = null;
+            this.buffer = DirectMemory.allocate(width * height * 4);
+        } else {
+            this.components = new byte[width * height * 4];
+            this.buffer = null;
+        }
     }
 
+    /**
+     * 读取图片文件。文件解码使用ImageIO，只有调用这个构造方法时才会加载AWT。
+     * @param fileName
+     * @throws IOException
+     */
     public Image(String fileName) throws IOException {
-        int width = 0;
-        int height = 0;
-        byte[] components = null;
-
-        BufferedImage image = ImageIO.read(new File(fileName));
-
-        width = image.getWidth();
-        height = image.getHeight();
-
-        int imgPixels[] = new int[width * height];
-        image.getRGB(0, 0, width, height, imgPixels, 0, width);
-        components = new byte[width * height * 4];
+        Image image = ImageReader.read(fileName);
 
-        for(int i = 0; i < width * height; i++) {
-            int pixel = imgPixels[i];
-
-            components[i * 4]     = (byte)((pixel >> 16) & 0xFF); // R
-            components[i * 4 + 1] = (byte)((pixel >> 8 ) & 0xFF); // G
-            components[i * 4 + 2] = (byte)((pixel      ) & 0xFF); // B
-            components[i * 4 + 3] = (byte)((pixel >> 24) & 0xFF); // A
-        }
-
-        this.width = width;
-        this.height = height;
-        this.components = components;
+        this.width = image.width;
+        this.height = image.height;
+        this.components = image.components;
     }
     
     public int getWidth() {
@@ -60,8 +66,61 @@ public class Image {
         return height;
     }
 
+    /**
+     * 获得颜色数据
+     * @return 保存在堆外内存中时返回null，此时应使用getBuffer()。
+     */
     public byte[] getComponents() {
         return components;
     }
 
+    /**
+     * 获得堆外的颜色数据
+     * @return 保存在堆中时返回null
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * 颜色数据是否保存在堆外内存中
+     * @return
+     */
+    public boolean isOffHeap() {
+        return components == null;
+    }
+
+    /**
+     * 判断堆外内存是否已经被释放
+     * @return
+     */
+    public boolean isReleased() {
+        return components == null && buffer == null;
+    }
+
+    /**
+     * 立即释放堆外内存，之后不能再使用这个图像。颜色数据保存在堆中时不需要调用。
+     */
+    public void release() {
+        if (buffer != null) {
+            DirectMemory.free(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * 获得版本号。版本号不同说明图像内容已经被修改。
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 标记图像内容已被修改，版本号加1。
+     */
+    public void updateVersion() {
+        version++;
+    }
+
 }
\ No newline at end of file
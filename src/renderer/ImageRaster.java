@@ -1,5 +1,7 @@
 package renderer;
 
+import java.nio.ByteBuffer;
+
 import math.ColorRGBA;
 
 /**
@@ -10,6 +12,8 @@ public class ImageRaster {
     protected int width;
     protected int height;
     protected byte[] components;
+    // 堆外的颜色数据，图像保存在堆中时为null，此时components不为null。
+    protected ByteBuffer buffer;
 
     // Cohen-Sutherland算法的空间编码
     private final static int INSIDE = 0; // 0000
@@ -28,9 +32,11 @@ public class ImageRaster {
      * @param image
      */
     public ImageRaster(Image image) {
+        checkImage(image);
         this.width = image.getWidth();
         this.height = image.getHeight();
         this.components = image.getComponents();
+        this.buffer = image.getBuffer();
 
         // 初始化剪切矩形
         xmin = ymin = 0;
@@ -38,6 +44,39 @@ public class ImageRaster {
         ymax = height - 1;
     }
 
+    /**
+     * 切换绘制的目标图像，新图像的尺寸必须与原图像相同。
+     *
+     * @param image
+     */
+    public void setImage(Image image) {
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IllegalArgumentException("Image size must be " + width + "x" + height + ".");
+        }
+        checkImage(image);
+        this.components = image.getComponents();
+        this.buffer = image.getBuffer();
+    }
+
+    /**
+     * 检查图像的堆外内存是否已经被释放
+     * @param image
+     */
+    private static void checkImage(Image image) {
+        if (image.isReleased()) {
+            throw new IllegalStateException("Image has been released.");
+        }
+    }
+
+    /**
+     * 释放后不再引用图像的颜色数据，之后访问像素会立即抛出异常，而不是读写已经释放的堆外内存。
+     * 图像本身由它的所有者负责释放。
+     */
+    public void release() {
+        this.components = null;
+        this.buffer = null;
+    }
+
     /**
      * 纯色填充
      * 
@@ -45,6 +84,12 @@ public class ImageRaster {
      */
     public void fill(ColorRGBA color) {
         int length = width * height;
+        if (components == null) {
+            for (int i = 0; i < length; i++) {
+                putColor(i * 4, color);
+            }
+            return;
+        }
         for (int i = 0; i < length; i++) {
             int index = i * 4;
 
@@ -59,6 +104,39 @@ public class ImageRaster {
         }
     }
 
+    /**
+     * 纯色填充矩形范围
+     *
+     * @param color
+     * @param minX
+     * @param minY
+     * @param maxX 开区间
+     * @param maxY 开区间
+     */
+    public void fill(ColorRGBA color, int minX, int minY, int maxX, int maxY) {
+        minX = Math.max(0, minX);
+        minY = Math.max(0, minY);
+        maxX = Math.min(width, maxX);
+        maxY = Math.min(height, maxY);
+        for (int y = minY; y < maxY; y++) {
+            int index = (minX + y * width) * 4;
+            if (components == null) {
+                for (int x = minX; x < maxX; x++) {
+                    putColor(index, color);
+                    index += 4;
+                }
+                continue;
+            }
+            for (int x = minX; x < maxX; x++) {
+                components[index] = color.r;
+                components[index + 1] = color.g;
+                components[index + 2] = color.b;
+                components[index + 3] = color.a;
+                index += 4;
+            }
+        }
+    }
+
     /**
      * 画点
      * 
@@ -72,6 +150,10 @@ public class ImageRaster {
         }
 
         int index = (x + y * width) * 4;
+        if (components == null) {
+            putColor(index, color);
+            return;
+        }
 
         components[index] = color.r;
         components[index + 1] = color.g;
@@ -79,6 +161,18 @@ public class ImageRaster {
         components[index + 3] = color.a;
     }
 
+    /**
+     * 向堆外的颜色数据写入一个像素
+     * @param index 像素第一个字节的下标
+     * @param color
+     */
+    protected void putColor(int index, ColorRGBA color) {
+        buffer.put(index, color.r);
+        buffer.put(index + 1, color.g);
+        buffer.put(index + 2, color.b);
+        buffer.put(index + 3, color.a);
+    }
+
     /**
      * 画线
      * 
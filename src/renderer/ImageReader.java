@@ -0,0 +1,52 @@
+package renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 使用ImageIO读取图片文件。
+ * <p>
+ * 依赖AWT的代码都集中在这个类中，不读取图片文件的程序（例如无界面的离屏渲染）不会加载AWT。
+ * </p>
+ */
+public class ImageReader {
+
+    private ImageReader() {
+    }
+
+    /**
+     * 读取图片文件，转换为4BYTE_RGBA格式。
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static Image read(String fileName) throws IOException {
+        BufferedImage bufferedImage = ImageIO.read(new File(fileName));
+        if (bufferedImage == null) {
+            throw new IOException("Unsupported image format: " + fileName);
+        }
+
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+
+        int imgPixels[] = new int[width * height];
+        bufferedImage.getRGB(0, 0, width, height, imgPixels, 0, width);
+
+        Image image = new Image(width, height);
+        byte[] components = image.getComponents();
+
+        for(int i = 0; i < width * height; i++) {
+            int pixel = imgPixels[i];
+
+            components[i * 4]     = (byte)((pixel >> 16) & 0xFF); // R
+            components[i * 4 + 1] = (byte)((pixel >> 8 ) & 0xFF); // G
+            components[i * 4 + 2] = (byte)((pixel      ) & 0xFF); // B
+            components[i * 4 + 3] = (byte)((pixel >> 24) & 0xFF); // A
+        }
+
+        return image;
+    }
+}
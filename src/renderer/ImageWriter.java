@@ -0,0 +1,171 @@
+package renderer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 把图像保存为PNG文件。
+ * <p>
+ * 直接使用java.util.zip编码，不依赖AWT和ImageIO，可以在无界面的环境中使用。
+ * 压缩数据按固定大小分成多个IDAT数据块边压缩边写出，内存占用与图像尺寸无关。
+ * </p>
+ */
+public class ImageWriter {
+
+    // PNG文件头
+    private final static byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // 每个IDAT数据块的最大长度
+    private final static int IDAT_SIZE = 64 * 1024;
+
+    private ImageWriter() {
+    }
+
+    /**
+     * 保存为PNG文件
+     * @param image
+     * @param fileName
+     * @throws IOException
+     */
+    public static void writePNG(Image image, String fileName) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
+        try {
+            writePNG(image, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 以PNG格式写入输出流，颜色类型为8位RGBA。
+     * @param image
+     * @param out
+     * @throws IOException
+     */
+    public static void writePNG(Image image, OutputStream out) throws IOException {
+        if (image.isReleased()) {
+            throw new IllegalStateException("Image has been released.");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] components = image.getComponents();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        // IHDR
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(chunk);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8);// 位深度
+        header.writeByte(6);// 颜色类型：RGBA
+        header.writeByte(0);// 压缩方式
+        header.writeByte(0);// 滤波方式
+        header.writeByte(0);// 不隔行扫描
+        byte[] headerBytes = chunk.toByteArray();
+        writeChunk(data, "IHDR", headerBytes, headerBytes.length);
+
+        // IDAT，每行前面加一个字节的滤波类型（0表示不滤波）。
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        DeflaterOutputStream deflate = new DeflaterOutputStream(new ChunkOutputStream(data, "IDAT", IDAT_SIZE), deflater);
+        int stride = width * 4;
+        // 堆外的图像逐行复制到临时数组中
+        ByteBuffer buffer = components == null ? image.getBuffer().duplicate() : null;
+        byte[] row = components == null ? new byte[stride] : null;
+        try {
+            for(int y = 0; y < height; y++) {
+                deflate.write(0);
+                if (components != null) {
+                    deflate.write(components, y * stride, stride);
+                } else {
+                    buffer.position(y * stride);
+                    buffer.get(row, 0, stride);
+                    deflate.write(row, 0, stride);
+                }
+            }
+            // 写出剩余的压缩数据，最后一个数据块不足IDAT_SIZE。
+            deflate.close();
+        } finally {
+            deflater.end();
+        }
+
+        // IEND
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    /**
+     * 写入一个数据块：长度、类型、数据和CRC校验码。
+     */
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * 把写入的数据按固定大小切分成同一类型的多个数据块。关闭时写出剩余的数据，但不关闭底层的输出流。
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final String type;
+        private final byte[] data;
+        private int length;
+
+        ChunkOutputStream(DataOutputStream out, String type, int size) {
+            this.out = out;
+            this.type = type;
+            this.data = new byte[size];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == data.length) {
+                flushChunk();
+            }
+            data[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == data.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, data.length - length);
+                System.arraycopy(b, off, data, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                flushChunk();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            writeChunk(out, type, data, length);
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package renderer;
+
+import math.BatchTransform;
+import math.BoundingBox;
+import math.Matrix4f;
+import math.Vector3f;
+import math.Vector4f;
+import scene.Geometry;
+import scene.Mesh;
+
+/**
+ * 遮挡缓冲，用于软件遮挡剔除。
+ * <p>
+ * 每帧先把指定的遮挡物以低分辨率光栅化到深度缓冲中，然后把其他物体的包围盒投影到屏幕上，
+ * 如果包围盒覆盖的每个像素都被更近的遮挡物挡住，该物体就不需要渲染。
+ * </p>
+ * 为了保证剔除结果是保守的：遮挡物只写入被三角形完全覆盖的像素，并且写入的是该像素范围内三角形的最远深度；
+ * 被测物体使用包围盒的最近深度，覆盖范围向外取整。
+ */
+public class OcclusionBuffer {
+
+    // 缓冲尺寸
+    private final int width;
+    private final int height;
+
+    // 深度缓冲，保存NDC空间的z值。
+    private final float[] depthBuffer;
+
+    // 观察-投影变换矩阵
+    private Matrix4f viewProjectionMatrix = new Matrix4f();
+    // 模型-观察-投影变换矩阵
+    private Matrix4f worldViewProjectionMatrix = new Matrix4f();
+
+    // 临时变量
+    private Vector4f clipPosition = new Vector4f();
+    private Vector3f corner = new Vector3f();
+    // 变换后的屏幕坐标 (x, y, z)，每个顶点3个float
+    private float[] screenPositions = new float[0];
+    // 变换后的齐次裁剪空间坐标 (x, y, z, w)，每个顶点4个float
+    private float[] clipPositions = new float[0];
+    // 顶点是否位于近平面之后
+    private boolean[] behindNear = new boolean[0];
+
+    public OcclusionBuffer() {
+        this(256, 128);
+    }
+
+    public OcclusionBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.depthBuffer = new float[width * height];
+        clear();
+    }
+
+    /**
+     * 清空深度缓冲
+     */
+    public void clear() {
+        for(int i = 0; i < depthBuffer.length; i++) {
+            depthBuffer[i] = Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * 设置观察-投影变换矩阵
+     * @param viewProjectionMatrix
+     */
+    public void setViewProjectionMatrix(Matrix4f viewProjectionMatrix) {
+        this.viewProjectionMatrix.set(viewProjectionMatrix);
+    }
+
+    /**
+     * 把遮挡物光栅化到深度缓冲中
+     * @param geom
+     */
+    public void renderOccluder(Geometry geom) {
+        Mesh mesh = geom.getMesh();
+        if (mesh == null) {
+            return;
+        }
+
+        viewProjectionMatrix.mult(geom.getWorldMatrix(), worldViewProjectionMatrix);
+
+        int vertexCount = mesh.getVertexCount();
+        int[] indexes = mesh.getIndexes();
+
+        if (behindNear.length < vertexCount) {
+            behindNear = new boolean[vertexCount];
+            screenPositions = new float[vertexCount * 3];
+            clipPositions = new float[vertexCount * 4];
+        }
+
+        // 批量变换到齐次裁剪空间
+        BatchTransform.projectPoints(worldViewProjectionMatrix, mesh.getVertexData(), 0, mesh.getVertexFormat().getStride(),
+                clipPositions, 0, 4, vertexCount);
+
+        // 顶点变换到屏幕空间
+        for(int i = 0; i < vertexCount; i++) {
+            float w = clipPositions[i * 4 + 3];
+            if (w <= 1e-5f || -clipPositions[i * 4 + 2] > w) {
+                // 没有做近平面裁剪，跨越近平面的三角形不作为遮挡物。
+                behindNear[i] = true;
+                continue;
+            }
+            behindNear[i] = false;
+
+            float invW = 1f / w;
+            screenPositions[i * 3] = (clipPositions[i * 4] * invW + 1f) * 0.5f * width;
+            screenPositions[i * 3 + 1] = (1f - clipPositions[i * 4 + 1] * invW) * 0.5f * height;
+            screenPositions[i * 3 + 2] = clipPositions[i * 4 + 2] * invW;
+        }
+
+        for(int i = 0; i < indexes.length; i += 3) {
+            int i0 = indexes[i];
+            int i1 = indexes[i + 1];
+            int i2 = indexes[i + 2];
+            if (behindNear[i0] || behindNear[i1] || behindNear[i2]) {
+                continue;
+            }
+            rasterizeTriangle(i0 * 3, i1 * 3, i2 * 3);
+        }
+    }
+
+    /**
+     * 光栅化三角形，只写入被完全覆盖的像素。
+     */
+    private void rasterizeTriangle(int a, int b, int c) {
+        float[] p = screenPositions;
+        float x0 = p[a], y0 = p[a + 1], z0 = p[a + 2];
+        float x1 = p[b], y1 = p[b + 1], z1 = p[b + 2];
+        float x2 = p[c], y2 = p[c + 1], z2 = p[c + 2];
+
+        // 有向面积，两个方向的三角形都作为遮挡物。
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            float tx = x1, ty = y1, tz = z1;
+            x1 = x2; y1 = y2; z1 = z2;
+            x2 = tx; y2 = ty; z2 = tz;
+            area = -area;
+        }
+
+        // 包围矩形
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // 边函数 e(x, y) = A * x + B * y + C，三角形内部为正。
+        float a0 = y1 - y2, b0 = x2 - x1, c0 = x1 * y2 - x2 * y1;
+        float a1 = y2 - y0, b1 = x0 - x2, c1 = x2 * y0 - x0 * y2;
+        float a2 = y0 - y1, b2 = x1 - x0, c2 = x0 * y1 - x1 * y0;
+
+        // 像素被完全覆盖时，像素中心的边函数值至少为半个像素的偏移量。
+        float o0 = 0.5f * (Math.abs(a0) + Math.abs(b0));
+        float o1 = 0.5f * (Math.abs(a1) + Math.abs(b1));
+        float o2 = 0.5f * (Math.abs(a2) + Math.abs(b2));
+
+        // 深度平面 z = z0 + dzdx * (x - x0) + dzdy * (y - y0)
+        float invArea = 1f / area;
+        float dzdx = (a0 * z0 + a1 * z1 + a2 * z2) * invArea;
+        float dzdy = (b0 * z0 + b1 * z1 + b2 * z2) * invArea;
+        // 像素范围内的最远深度
+        float zOffset = 0.5f * (Math.abs(dzdx) + Math.abs(dzdy));
+
+        for(int y = minY; y <= maxY; y++) {
+            float py = y + 0.5f;
+            for(int x = minX; x <= maxX; x++) {
+                float px = x + 0.5f;
+                float e0 = a0 * px + b0 * py + c0;
+                float e1 = a1 * px + b1 * py + c1;
+                float e2 = a2 * px + b2 * py + c2;
+                if (e0 < o0 || e1 < o1 || e2 < o2) {
+                    continue;
+                }
+
+                float z = (e0 * z0 + e1 * z1 + e2 * z2) * invArea + zOffset;
+                int index = x + y * width;
+                if (z < depthBuffer[index]) {
+                    depthBuffer[index] = z;
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断一个世界空间包围盒是否被遮挡
+     * @param bound
+     * @return
+     */
+    public boolean isOccluded(BoundingBox bound) {
+        Vector3f center = bound.getCenter();
+        float ex = bound.getXExtent();
+        float ey = bound.getYExtent();
+        float ez = bound.getZExtent();
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+
+        // 把包围盒的8个顶点投影到屏幕上
+        for(int i = 0; i < 8; i++) {
+            corner.set(center.x + ((i & 1) == 0 ? -ex : ex),
+                       center.y + ((i & 2) == 0 ? -ey : ey),
+                       center.z + ((i & 4) == 0 ? -ez : ez));
+            clipPosition.set(corner, 1f);
+            viewProjectionMatrix.mult(clipPosition, clipPosition);
+
+            float w = clipPosition.w;
+            if (w <= 1e-5f || -clipPosition.z > w) {
+                // 包围盒跨越近平面，认为可见。
+                return false;
+            }
+
+            float invW = 1f / w;
+            float sx = (clipPosition.x * invW + 1f) * 0.5f * width;
+            float sy = (1f - clipPosition.y * invW) * 0.5f * height;
+            float sz = clipPosition.z * invW;
+
+            if (sx < minX) minX = sx;
+            if (sx > maxX) maxX = sx;
+            if (sy < minY) minY = sy;
+            if (sy > maxY) maxY = sy;
+            if (sz < minZ) minZ = sz;
+        }
+
+        int x0 = Math.max(0, (int) Math.floor(minX));
+        int x1 = Math.min(width - 1, (int) Math.ceil(maxX));
+        int y0 = Math.max(0, (int) Math.floor(minY));
+        int y1 = Math.min(height - 1, (int) Math.ceil(maxY));
+        if (x0 > x1 || y0 > y1) {
+            // 不在屏幕范围内，交给视锥剔除处理。
+            return false;
+        }
+
+        // 只要有一个像素没有被更近的遮挡物覆盖，物体就可能可见。
+        for(int y = y0; y <= y1; y++) {
+            int row = y * width;
+            for(int x = x0; x <= x1; x++) {
+                if (depthBuffer[row + x] >= minZ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float[] getDepthBuffer() {
+        return depthBuffer;
+    }
+}
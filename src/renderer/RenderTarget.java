@@ -0,0 +1,83 @@
+package renderer;
+
+import material.Texture;
+
+/**
+ * 渲染目标，包含一个颜色图像和对应的深度缓冲。
+ * <p>
+ * 把渲染目标设置给渲染器后，渲染结果会写入它的图像。图像可以直接作为纹理使用，
+ * 纹理与渲染目标共享同一个颜色数组，不需要复制。每次渲染完成后图像的版本号会增加，
+ * 可以据此判断纹理内容是否已经更新。常用于镜面、小地图和预先渲染的替身（Impostor）。
+ * </p>
+ */
+public class RenderTarget {
+
+    // 颜色图像
+    private final Image image;
+
+    // 光栅器，包含深度缓冲。由渲染器在第一次使用时创建。
+    SoftwareRaster raster;
+
+    // 增量渲染使用的脏矩形
+    DirtyRegion dirtyRegion;
+    // 脏矩形最近一次同步的重绘请求
+    int invalidation;
+
+    // 作为纹理使用
+    private Texture texture;
+
+    public RenderTarget(int width, int height) {
+        this(new Image(width, height));
+    }
+
+    public RenderTarget(Image image) {
+        this.image = image;
+    }
+
+    /**
+     * 释放渲染目标占用的堆外内存，包括颜色图像和深度缓冲。之后不能再使用这个渲染目标。
+     */
+    public void release() {
+        if (raster != null) {
+            raster.release();
+            raster = null;
+        }
+        image.release();
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * 获得渲染结果的版本号，每次渲染完成后加1。
+     * @return
+     */
+    public int getVersion() {
+        return image.getVersion();
+    }
+
+    /**
+     * 获得与渲染目标共享颜色数据的纹理
+     * @return
+     * @throws IllegalStateException 图像保存在堆外内存中，不能作为纹理使用。
+     */
+    public Texture getTexture() {
+        if (image.isOffHeap()) {
+            throw new IllegalStateException("Off-heap render target cannot be used as a texture.");
+        }
+        if (texture == null) {
+            texture = new Texture(image);
+            texture.setWarpMode(Texture.WarpMode.CLAMP_TO_EDGE);
+        }
+        return texture;
+    }
+}
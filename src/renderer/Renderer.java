@@ -1,20 +1,23 @@
 package renderer;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
+import animation.SkinnedGeometry;
+import light.DirectionalLight;
 import light.Light;
 import material.Material;
 import material.RenderState.CullMode;
+import math.BoundingBox;
 import math.ColorRGBA;
 import math.Matrix3f;
 import math.Matrix4f;
+import math.Plane;
 import math.Vector3f;
 import scene.Geometry;
+import scene.InstancedGeometry;
 import scene.Mesh;
 import scene.RasterizationVertex;
-import scene.Vertex;
 import shader.Shader;
 
 /**
@@ -26,6 +29,12 @@ public class Renderer {
     private Image image;
     // 光栅器
     private SoftwareRaster raster;
+    // 默认的渲染目标
+    private RenderTarget defaultTarget;
+    // 默认渲染目标当前使用的图像
+    private Image defaultImage;
+    // 当前的渲染目标
+    private RenderTarget target;
     // 清屏颜色
     private ColorRGBA clearColor = ColorRGBA.WHITE;
     // 光源
@@ -37,11 +46,21 @@ public class Renderer {
      * @param height
      */
     public Renderer(int width, int height) {
-        image = new Image(width, height);
-        raster = new SoftwareRaster(this, image);
+        this(width, height, false);
+    }
+    
+    /**
+     * 初始化渲染器
+     * @param width
+     * @param height
+     * @param offHeap 是否把默认渲染目标的颜色和深度缓冲保存在堆外内存中
+     */
+    public Renderer(int width, int height, boolean offHeap) {
+        defaultTarget = new RenderTarget(new Image(width, height, offHeap));
+        defaultImage = defaultTarget.getImage();
         
-        // 计算视口变换矩阵
-        updateViewportMatrix(width, height);
+        // 绑定渲染目标，计算视口变换矩阵。
+        setRenderTarget(defaultTarget);
     }
 
     /**
@@ -51,6 +70,7 @@ public class Renderer {
     public void setBackgroundColor(ColorRGBA color) {
         if (color != null) {
             this.clearColor = color;
+            invalidate();
         }
     }
     
@@ -58,6 +78,7 @@ public class Renderer {
      * 使用背景色填充图像数据
      */
     public void clear() {
+        checkReleased(image);
         raster.fill(clearColor);
         raster.clearDepthBuffer();
     }
@@ -70,6 +91,79 @@ public class Renderer {
         return image;
     }
 
+    /**
+     * 设置渲染目标。之后的渲染结果会写入这个图像，尺寸必须与渲染器相同。
+     * @param image
+     */
+    public void setRenderTarget(Image image) {
+        bindRaster(defaultTarget).setImage(image);
+        defaultImage = image;
+        setRenderTarget(defaultTarget);
+    }
+    
+    /**
+     * 设置渲染目标。渲染目标的尺寸可以与渲染器不同，为null时恢复为默认的渲染目标。
+     * @param target
+     */
+    public void setRenderTarget(RenderTarget target) {
+        if (target == null) {
+            target = defaultTarget;
+        }
+        this.target = target;
+        this.raster = bindRaster(target);
+        this.image = target == defaultTarget ? defaultImage : target.getImage();
+        
+        // 光栅器变化后需要重新设置渲染状态和着色器
+        material = null;
+        boundShader = null;
+        
+        // 计算视口变换矩阵
+        updateViewportMatrix(raster.width, raster.height);
+    }
+    
+    /**
+     * 释放默认渲染目标占用的堆外内存，之后不能再使用这个渲染器。
+     * 通过setRenderTarget(Image)设置的图像由调用者负责释放。
+     */
+    public void release() {
+        if (defaultTarget.raster != null) {
+            defaultTarget.raster.release();
+            defaultTarget.raster = null;
+        }
+        defaultTarget.getImage().release();
+    }
+    
+    /**
+     * 获得当前的渲染目标
+     * @return
+     */
+    public RenderTarget getRenderTarget() {
+        return target;
+    }
+    
+    /**
+     * 检查渲染目标的图像是否已经被释放，避免光栅器读写已经释放的堆外内存。
+     * @param image
+     */
+    private static void checkReleased(Image image) {
+        if (image.isReleased()) {
+            throw new IllegalStateException("Render target has been released.");
+        }
+    }
+    
+    /**
+     * 获得渲染目标的光栅器，第一次使用时创建。
+     * @param target
+     * @return
+     */
+    private SoftwareRaster bindRaster(RenderTarget target) {
+        checkReleased(target.getImage());
+        if (target.raster == null || target.raster.renderer != this) {
+            target.raster = new SoftwareRaster(this, target.getImage());
+        }
+        return target.raster;
+    }
+
     /**
      * 获得光栅器
      * @return
@@ -91,9 +185,47 @@ public class Renderer {
     // 摄像机位置
     private Vector3f cameraPosition = new Vector3f();
     
+    // 世界变换的逆矩阵，用于把摄像机变换到模型空间。
+    private Matrix4f worldMatrixInverse = new Matrix4f();
+    // 摄像机在模型空间中的位置
+    private Vector3f cameraObjectPosition = new Vector3f();
+    
     private Matrix4f viewportMatrix = new Matrix4f();
     
     private Material material;
+    // 当前使用的着色器
+    private Shader boundShader;
+    
+    // 实例化渲染
+    private Matrix4f instancedWorldMatrix = new Matrix4f();
+    private Matrix4f instanceMatrix = new Matrix4f();
+    // 实例变换的旋转缩放部分及其逆矩阵
+    private Matrix3f instanceRotation = new Matrix3f();
+    private Matrix3f instanceInverse = new Matrix3f();
+    // 摄像机在实例化物体（不含实例变换）的模型空间中的位置
+    private Vector3f instancedCameraPosition = new Vector3f();
+    // 单个实例的世界包围盒
+    private BoundingBox instanceBound = new BoundingBox();
+    
+    // 遮挡缓冲，为null时不进行遮挡剔除。
+    private OcclusionBuffer occlusionBuffer;
+    
+    // 调用invalidate()的次数，各渲染目标据此判断是否需要全部重绘。
+    private int invalidation = 0;
+    // 是否只绘制与脏矩形相交的物体
+    private boolean clipToDirtyRegion = false;
+    // 着色器是否使用快速近似计算
+    private boolean fastMath = false;
+    
+    // 本帧需要蒙皮的物体
+    private List<SkinnedGeometry> skinnedList = new ArrayList<SkinnedGeometry>();
+    
+    // 视锥裁剪器
+    private Clipper clipper = new Clipper();
+    // 顶点编码
+    private int[] outcodes = new int[0];
+    // 顶点着色器的输出，在物体之间复用。
+    private RasterizationVertex[] vertexBuffer = new RasterizationVertex[0];
     
     /**
      * 视口变换矩阵
@@ -130,6 +262,7 @@ public class Renderer {
      * @param camera
      */
     public void render(List<Geometry> geomList, Camera camera) {
+        checkReleased(image);
         
         // 根据Camera初始化观察变换矩阵。
         viewMatrix.set(camera.getViewMatrix());
@@ -137,28 +270,241 @@ public class Renderer {
         viewProjectionMatrix.set(camera.getViewProjectionMatrix());
         cameraPosition.set(camera.getLocation());
         
-        // TODO 剔除那些不可见的物体
+        // 光源等状态可能在两帧之间发生变化，每帧开始时重新设置材质。
+        material = null;
+        boundShader = null;
+        
+        // 蒙皮：在顶点着色之前计算可见的骨骼动画物体的顶点，视锥外的物体不需要计算。
+        skinnedList.clear();
+        for(int i=0; i<geomList.size(); i++) {
+            Geometry geom = geomList.get(i);
+            if (geom instanceof SkinnedGeometry) {
+                skinnedList.add((SkinnedGeometry) geom);
+            }
+        }
+        if (!skinnedList.isEmpty()) {
+            SkinnedGeometry.skin(skinnedList);
+        }
+        
+        // 遮挡剔除：先把遮挡物光栅化到低分辨率的深度缓冲中。
+        if (occlusionBuffer != null) {
+            occlusionBuffer.clear();
+            occlusionBuffer.setViewProjectionMatrix(viewProjectionMatrix);
+            for(int i=0; i<geomList.size(); i++) {
+                Geometry geom = geomList.get(i);
+                if (geom.isOccluder() && !(geom instanceof InstancedGeometry)) {
+                    occlusionBuffer.renderOccluder(geom);
+                }
+            }
+        }
         
         // 遍历场景中的Mesh
         for(int i=0; i<geomList.size(); i++) {
             Geometry geom = geomList.get(i);
             
-            // 根据物体的世界变换，计算MVP等变换矩阵。
-            worldMatrix.set(geom.getWorldTransform().toTransformMatrix());
-            viewMatrix.mult(worldMatrix, worldViewMatrix);
-            viewProjectionMatrix.mult(worldMatrix, worldViewProjectionMatrix);
+            // 增量渲染时，跳过不在脏矩形内的物体。
+            if (clipToDirtyRegion && !target.dirtyRegion.intersects(geom)) {
+                continue;
+            }
+            
+            // 在顶点着色之前，剔除被遮挡的物体。
+            if (occlusionBuffer != null && !geom.isOccluder()
+                    && occlusionBuffer.isOccluded(geom.getWorldBound())) {
+                continue;
+            }
             
-            // 计算法向量变换矩阵
-            worldMatrix.toRotationMatrix(normalMatrix);
-            // FIXME 先判断是否为正交矩阵，然后在决定是否要计算Invert、Transpose矩阵。
-            normalMatrix.invertLocal();
-            normalMatrix.transposeLocal();
+            if (geom instanceof InstancedGeometry) {
+                // 实例化渲染
+                renderInstanced((InstancedGeometry) geom, camera);
+                continue;
+            }
             
-            // TODO 使用包围体，剔除不可见物体
+            // 根据屏幕尺寸选择细节层次
+            geom.selectLod(camera);
+            
+            // 根据物体的世界变换，计算MVP等变换矩阵。
+            worldMatrix.set(geom.getWorldMatrix());
+            updateWorldMatrices();
+            
+            // 法向量变换矩阵直接由世界变换的旋转和缩放得到，并缓存在物体中。
+            normalMatrix.set(geom.getWorldNormalMatrix());
             
             // 渲染
             render(geom);
         }
+        
+        // 图像内容已更新，作为纹理使用时可以据此判断是否需要刷新。
+        image.updateVersion();
+    }
+    
+    /**
+     * 更新所有定向光源的阴影贴图，应当在render()之前调用。
+     * 阴影贴图只在光源方向或投射阴影的物体发生变化时才会重新渲染。
+     * @param geomList 投射阴影的物体。视锥外的物体也可能把阴影投射到画面中，所以应当传入剔除前的物体列表。
+     */
+    public void updateShadowMaps(List<Geometry> geomList) {
+        if (lights == null) {
+            return;
+        }
+        for(int i=0; i<lights.size(); i++) {
+            Light light = lights.get(i);
+            if (light instanceof DirectionalLight) {
+                DirectionalLight dl = (DirectionalLight) light;
+                if (dl.getShadowMap() != null && dl.getShadowMap().update(dl.getDirection(), geomList)) {
+                    // 阴影变化的区域无法计算，增量渲染时全部重绘。
+                    invalidate();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 增量渲染场景，不需要先调用clear()。
+     * <p>
+     * 只重新绘制发生变化的物体在上一帧和本帧占据的屏幕区域，其余区域保留渲染目标中原有的画面。
+     * 物体的世界变换、包围盒、网格、材质、实例数据以及骨骼姿势发生变化时会被自动检测到；材质参数等其他变化需要调用invalidate()。
+     * </p>
+     * @param geomList
+     * @param camera
+     */
+    public void renderIncremental(List<Geometry> geomList, Camera camera) {
+        checkReleased(image);
+        if (target.dirtyRegion == null) {
+            target.dirtyRegion = new DirtyRegion(raster.width, raster.height);
+            target.invalidation = invalidation;
+        }
+        DirtyRegion dirtyRegion = target.dirtyRegion;
+        if (target.invalidation != invalidation) {
+            target.invalidation = invalidation;
+            dirtyRegion.invalidate();
+        }
+        
+        // 计算需要重绘的区域
+        if (!dirtyRegion.update(geomList, camera.getViewProjectionMatrix(), image)) {
+            return;
+        }
+        
+        int minX = dirtyRegion.getMinX();
+        int minY = dirtyRegion.getMinY();
+        int maxX = dirtyRegion.getMaxX();
+        int maxY = dirtyRegion.getMaxY();
+        
+        // 只清空和光栅化脏矩形内的像素
+        raster.fill(clearColor, minX, minY, maxX, maxY);
+        raster.clearDepthBuffer(minX, minY, maxX, maxY);
+        raster.setClipRect(minX, minY, maxX, maxY);
+        
+        clipToDirtyRegion = true;
+        try {
+            render(geomList, camera);
+        } finally {
+            clipToDirtyRegion = false;
+            raster.resetClipRect();
+        }
+    }
+    
+    /**
+     * 下一次增量渲染时重绘整个画面
+     */
+    public void invalidate() {
+        invalidation++;
+    }
+    
+    /**
+     * 实例化渲染。
+     * <p>
+     * 材质、着色器和顶点数据只设置一次，物体的世界变换、法向量变换矩阵和摄像机的模型空间位置也只计算一次。
+     * 每个实例先用自己的包围盒做视锥剔除和遮挡剔除，然后把实例变换合并到世界变换中，
+     * 法向量变换矩阵和摄像机位置只需要再乘以实例变换中3x3部分的逆矩阵，不需要求4x4矩阵的逆。
+     * 顶点着色器从实例数组中读取当前实例的颜色。
+     * </p>
+     * @param geom
+     * @param camera
+     */
+    protected void renderInstanced(InstancedGeometry geom, Camera camera) {
+        int count = geom.getInstanceCount();
+        Mesh mesh = geom.getMesh();
+        if (count == 0 || mesh == null) {
+            return;
+        }
+
+        Material material = geom.getMaterial();
+        if (material != this.material || material.getShader() != boundShader) {
+            bindMaterial(material);
+        }
+        CullMode cullMode = material.getRenderState().getCullMode();
+        if (cullMode == CullMode.ALWAYS) {
+            return;
+        }
+
+        // 所有实例共用的数据
+        instancedWorldMatrix.set(geom.getWorldMatrix());
+        Matrix3f instancedNormalMatrix = geom.getWorldNormalMatrix();
+        invertWorldMatrix(geom, instancedWorldMatrix, worldMatrixInverse);
+        worldMatrixInverse.mult(cameraPosition, instancedCameraPosition);
+        BoundingBox modelBound = mesh.getBound();
+        Plane[] planes = camera.getFrustumPlanes();
+        float[] transforms = geom.getTransforms();
+        float[] colors = geom.getColors();
+
+        for(int i = 0; i < count; i++) {
+            // 实例变换是相对于物体的世界变换而言的
+            instanceMatrix.setAffine(transforms, i * InstancedGeometry.TRANSFORM_STRIDE);
+            instancedWorldMatrix.mult(instanceMatrix, worldMatrix);
+
+            // 逐个实例进行视锥剔除和遮挡剔除
+            modelBound.transform(worldMatrix, instanceBound);
+            if (isOutside(instanceBound, planes)) {
+                continue;
+            }
+            if (occlusionBuffer != null && occlusionBuffer.isOccluded(instanceBound)) {
+                continue;
+            }
+
+            // 实例变换的3x3部分不可逆时，实例被压扁成了平面或直线，不需要绘制。
+            instanceMatrix.toRotationMatrix(instanceRotation);
+            if (instanceRotation.determinant() == 0f) {
+                continue;
+            }
+            instanceRotation.invert(instanceInverse);
+
+            updateWorldMatrices();
+
+            // 法向量变换矩阵 = 物体的法向量变换矩阵 * 实例3x3部分的逆转置
+            instanceInverse.transposeLocal();
+            instancedNormalMatrix.mult(instanceInverse, normalMatrix);
+            instanceInverse.transposeLocal();
+
+            // 摄像机在实例模型空间中的位置 = 实例3x3部分的逆 * (摄像机位置 - 实例平移)
+            cameraObjectPosition.set(instancedCameraPosition.x - instanceMatrix.get(0, 3),
+                                     instancedCameraPosition.y - instanceMatrix.get(1, 3),
+                                     instancedCameraPosition.z - instanceMatrix.get(2, 3));
+            instanceInverse.mult(cameraObjectPosition, cameraObjectPosition);
+
+            boundShader.setInstance(colors, i);
+            renderMesh(mesh, cullMode, normalMatrix.determinant() < 0);
+        }
+        boundShader.setInstance(null, 0);
+    }
+
+    /**
+     * 判断包围盒是否完全位于某个视锥平面的外侧
+     */
+    private static boolean isOutside(BoundingBox bound, Plane[] planes) {
+        for(int i = 0; i < planes.length; i++) {
+            if (bound.whichSide(planes[i]) == BoundingBox.OUTSIDE) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 根据世界变换矩阵，计算MVP等变换矩阵。法向量变换矩阵由调用者计算。
+     */
+    private void updateWorldMatrices() {
+        viewMatrix.mult(worldMatrix, worldViewMatrix);
+        viewProjectionMatrix.mult(worldMatrix, worldViewProjectionMatrix);
     }
 
     /**
@@ -167,189 +513,176 @@ public class Renderer {
      */
     protected void render(Geometry geometry) {
 
-        // 设置材质
-        this.material = geometry.getMaterial();
-        // 设置渲染状态
-        this.raster.setRenderState(material.getRenderState());
+        // 相邻物体使用相同的材质时，不需要重新设置材质、渲染状态和着色器。
+        Material material = geometry.getMaterial();
+        if (material != this.material || material.getShader() != boundShader) {
+            bindMaterial(material);
+        }
+        boundShader.setInstance(null, 0);
 
-        // 设置着色器
-        Shader shader = material.getShader();
-        shader.setLights(lights);
-        raster.setShader(shader);
+        // 背面消隐模式
+        CullMode cullMode = material.getRenderState().getCullMode();
+        if (cullMode == CullMode.ALWAYS) {
+            return;
+        }
 
-        // 设置全局变量
-        shader.setWorldMatrix(worldMatrix);
-        shader.setViewMatrix(viewMatrix);
-        shader.setProjectionMatrix(projectionMatrix);
-        shader.setWorldViewMatrix(worldViewMatrix);
-        shader.setViewProjectionMatrix(viewProjectionMatrix);
-        shader.setWorldViewProjectionMatrix(worldViewProjectionMatrix);
-        shader.setNormalMatrix(normalMatrix);
-        shader.setCameraPosition(cameraPosition);
+        // 把摄像机变换到模型空间，在模型空间进行背面消隐。
+        invertWorldMatrix(geometry, worldMatrix, worldMatrixInverse);
+        worldMatrixInverse.mult(cameraPosition, cameraObjectPosition);
+
+        // 镜像变换会翻转三角形的环绕方向
+        renderMesh(geometry.getMesh(), cullMode, normalMatrix.determinant() < 0);
+    }
+
+    /**
+     * 求物体世界变换矩阵的逆矩阵。没有缩放的刚体变换只需要转置旋转部分，不需要计算余子式。
+     * @param geom
+     * @param worldMatrix 物体的世界变换矩阵
+     * @param store
+     */
+    private static void invertWorldMatrix(Geometry geom, Matrix4f worldMatrix, Matrix4f store) {
+        if (geom.getWorldTransform().isRigid()) {
+            worldMatrix.invertRigid(store);
+        } else {
+            worldMatrix.invert(store);
+        }
+    }
+
+    /**
+     * 使用当前的着色器和变换矩阵绘制网格，摄像机的模型空间位置保存在cameraObjectPosition中。
+     * @param mesh
+     * @param cullMode 背面消隐模式
+     * @param mirrored 世界变换是否为镜像变换
+     */
+    private void renderMesh(Mesh mesh, CullMode cullMode, boolean mirrored) {
+        Shader shader = boundShader;
 
         // 提取网格数据
-        Mesh mesh = geometry.getMesh();
         int[] indexes = mesh.getIndexes();
-        Vertex[] vertexes = mesh.getVertexes();
-
-        // 执行顶点着色器
-        RasterizationVertex[] verts = new RasterizationVertex[vertexes.length];
-        for(int i = 0; i<vertexes.length; i++) {
-            verts[i] = shader.vertexShader(vertexes[i]);
+        int vertexCount = mesh.getVertexCount();
+        float[] facePlanes = mesh.getFacePlanes();
+
+        float camX = cameraObjectPosition.x;
+        float camY = cameraObjectPosition.y;
+        float camZ = cameraObjectPosition.z;
+
+        // 执行顶点着色器，输出保存在复用的顶点数组中。
+        if (vertexBuffer.length < vertexCount) {
+            RasterizationVertex[] buffer = new RasterizationVertex[vertexCount];
+            System.arraycopy(vertexBuffer, 0, buffer, 0, vertexBuffer.length);
+            for(int i = vertexBuffer.length; i < buffer.length; i++) {
+                buffer[i] = new RasterizationVertex();
+            }
+            vertexBuffer = buffer;
+        }
+        RasterizationVertex[] verts = vertexBuffer;
+        shader.setVertexData(mesh.getVertexFormat(), mesh.getVertexData());
+        for(int i = 0; i<vertexCount; i++) {
+            RasterizationVertex out = shader.vertexShader(i, verts[i]);
+            if (out != verts[i]) {
+                verts[i].copy(out);
+            }
         }
 
-        // 临时变量
-        // 用于保存变换后的向量坐标。
-        Vector3f v0 = new Vector3f();
-        Vector3f v1 = new Vector3f();
-        Vector3f v2 = new Vector3f();
-        // 用于光栅化
-        RasterizationVertex out0 = new RasterizationVertex();
-        RasterizationVertex out1 = new RasterizationVertex();
-        RasterizationVertex out2 = new RasterizationVertex();
+        // 计算顶点编码，用于视锥裁剪。
+        if (outcodes.length < vertexCount) {
+            outcodes = new int[vertexCount];
+        }
+        for(int i = 0; i<vertexCount; i++) {
+            outcodes[i] = Clipper.outcode(verts[i].position);
+        }
 
         // 遍历所有三角形
-        for (int i = 0; i < indexes.length; i += 3) {
+        for (int i = 0, face = 0; i < indexes.length; i += 3, face += 4) {
 
             int idx0 = indexes[i];
             int idx1 = indexes[i + 1];
             int idx2 = indexes[i + 2];
 
-            // 在观察空间进行背面消隐
-            worldViewMatrix.mult(vertexes[idx0].position, v0);
-            worldViewMatrix.mult(vertexes[idx1].position, v1);
-            worldViewMatrix.mult(vertexes[idx2].position, v2);
-
-            if (cullBackFace(v0, v1, v2))
-                continue;
-
-            // 准备执行光栅化
-            // 为了避免在光栅化阶段
-            out0.copy(verts[idx0]);
-            out1.copy(verts[idx1]);
-            out2.copy(verts[idx2]);
+            // 在模型空间进行背面消隐：摄像机位于三角形平面的哪一侧。
+            if (cullMode != CullMode.NEVER) {
+                float side = facePlanes[face] * camX + facePlanes[face + 1] * camY
+                        + facePlanes[face + 2] * camZ + facePlanes[face + 3];
+                if (mirrored) {
+                    side = -side;
+                }
+                if (cullBackFace(side, cullMode))
+                    continue;
+            }
 
             // 视锥体裁剪
-            if (out0.isValid() && out1.isValid() && out2.isValid()) {
-                raster.rasterizeTriangle(out0, out1, out2);
-            } else {
-
-                List<RasterizationVertex> vertices = new ArrayList<>();
-                List<RasterizationVertex> auxillaryList = new ArrayList<>();
-
-                vertices.add(out0);
-                vertices.add(out1);
-                vertices.add(out2);
-
-                if (clipPolygonAxis(vertices, auxillaryList, 0) &&
-                        clipPolygonAxis(vertices, auxillaryList, 1) &&
-                        clipPolygonAxis(vertices, auxillaryList, 2)) {
-
-                    RasterizationVertex initialVertex = vertices.get(0);
-                    for(int j = 1; j < vertices.size() - 1; j++) {
-                        raster.rasterizeTriangle(initialVertex, vertices.get(j), vertices.get(j+1));
-                    }
+            int code0 = outcodes[idx0];
+            int code1 = outcodes[idx1];
+            int code2 = outcodes[idx2];
+
+            if ((code0 | code1 | code2) == Clipper.INSIDE) {
+                // 完全在视锥内。光栅器会复制顶点数据，不会修改原始值。
+                raster.rasterizeTriangle(verts[idx0], verts[idx1], verts[idx2]);
+            } else if ((code0 & code1 & code2) == Clipper.INSIDE) {
+                // 只对三角形实际跨越的平面进行裁剪
+                int count = clipper.clip(verts[idx0], verts[idx1], verts[idx2], code0 | code1 | code2);
+
+                RasterizationVertex initialVertex = clipper.getVertex(0);
+                for(int j = 1; j < count - 1; j++) {
+                    raster.rasterizeTriangle(initialVertex, clipper.getVertex(j), clipper.getVertex(j + 1));
                 }
             }
+            // 三个顶点位于同一裁剪平面的外侧，整个三角形不可见。
         }
     }
 
+    /**
+     * 设置材质、渲染状态和着色器
+     * @param material
+     */
+    private void bindMaterial(Material material) {
+        // 设置材质
+        this.material = material;
+        // 设置渲染状态
+        this.raster.setRenderState(material.getRenderState());
 
+        // 设置着色器
+        Shader shader = material.getShader();
+        shader.setLights(lights);
+        shader.setFastMath(fastMath);
+        raster.setShader(shader);
 
+        // 设置全局变量
+        // 着色器保存的是矩阵的引用，矩阵的值在每个物体渲染前更新。
+        shader.setWorldMatrix(worldMatrix);
+        shader.setViewMatrix(viewMatrix);
+        shader.setProjectionMatrix(projectionMatrix);
+        shader.setWorldViewMatrix(worldViewMatrix);
+        shader.setViewProjectionMatrix(viewProjectionMatrix);
+        shader.setWorldViewProjectionMatrix(worldViewProjectionMatrix);
+        shader.setNormalMatrix(normalMatrix);
+        shader.setCameraPosition(cameraPosition);
+
+        this.boundShader = shader;
+    }
 
     /**
      * 剔除背面
      * 
-     * @param a
-     * @param b
-     * @param c
+     * @param side 摄像机到三角形平面的有向距离（未单位化），大于0表示摄像机位于三角形的正面。
+     * @param cullMode
      * @return
      */
-    protected boolean cullBackFace(Vector3f a, Vector3f b, Vector3f c) {
-
-        // 计算ab向量
-        Vector3f ab = b.subtract(a, a);
-
-        // 计算bc向量
-        Vector3f bc = c.subtract(b, b);
-
-        // 计算表面法线
-        Vector3f faceNormal = ab.crossLocal(bc);
-        
-        float dot = faceNormal.dot(c);
-
-        CullMode cullMode = material.getRenderState().getCullMode();
+    protected boolean cullBackFace(float side, CullMode cullMode) {
         switch (cullMode) {
         case NEVER:
             return false;
         case ALWAYS:
             return true;
         case BACK:
-            return dot >= 0;
+            return side <= 0;
         case FACE:
-            return dot < 0;
+            return side > 0;
         default:
             return false;
         }
     }
     
-    /**
-     * 使用Sutherland-Hodgman算法，进行多边形裁剪。将三角形的各边与视锥平面进行相交，计算交点。
-     * @param vertices
-     * @param auxillaryList
-     * @param componentIndex
-     * @return
-     */
-    private boolean clipPolygonAxis(List<RasterizationVertex> vertices, List<RasterizationVertex> auxillaryList,
-            int componentIndex) {
-        // 右边
-        clipPolygonComponent(vertices, componentIndex, 1.0f, auxillaryList);
-        vertices.clear();
-
-        if(auxillaryList.isEmpty()) {
-            return false;
-        }
-
-        // 左边
-        clipPolygonComponent(auxillaryList, componentIndex, -1.0f, vertices);
-        auxillaryList.clear();
-
-        return !vertices.isEmpty();
-    }
-    
-    private void clipPolygonComponent(List<RasterizationVertex> vertices, int componentIndex, 
-            float componentFactor, List<RasterizationVertex> result) {
-        RasterizationVertex previousVertex = vertices.get(vertices.size() - 1);
-        
-        float previousComponent = previousVertex.position.get(componentIndex) * componentFactor;
-        boolean previousInside = previousComponent <= previousVertex.position.w;
-
-        Iterator<RasterizationVertex> it = vertices.iterator();
-        while(it.hasNext()) {
-            RasterizationVertex currentVertex = it.next();
-            float currentComponent = currentVertex.position.get(componentIndex) * componentFactor;
-            boolean currentInside = currentComponent <= currentVertex.position.w;
-
-            if(currentInside ^ previousInside) {
-                float lerpAmt = (previousVertex.position.w - previousComponent) /
-                    ((previousVertex.position.w - previousComponent) - 
-                     (currentVertex.position.w - currentComponent));
-
-                RasterizationVertex v = new RasterizationVertex();
-                v.interpolateLocal(previousVertex, currentVertex, lerpAmt);
-                result.add(v);
-            }
-
-            if(currentInside) {
-                result.add(currentVertex);
-            }
-
-            previousVertex = currentVertex;
-            previousComponent = currentComponent;
-            previousInside = currentInside;
-        }
-}
-    
     public Matrix4f getViewportMatrix() {
         return viewportMatrix;
     }
@@ -362,12 +695,46 @@ public class Renderer {
         return material;
     }
     
+    /**
+     * 开启或关闭遮挡剔除
+     * @param enabled
+     */
+    public void setOcclusionCulling(boolean enabled) {
+        if (enabled && occlusionBuffer == null) {
+            occlusionBuffer = new OcclusionBuffer();
+        } else if (!enabled) {
+            occlusionBuffer = null;
+        }
+    }
+    
+    /**
+     * 开启或关闭着色器的快速近似计算。光照结果与精确计算相差不超过几个颜色级别，换来更快的逐像素光照。
+     * @param enabled
+     */
+    public void setFastMath(boolean enabled) {
+        if (fastMath != enabled) {
+            fastMath = enabled;
+            // 下一个物体重新绑定着色器
+            boundShader = null;
+            invalidate();
+        }
+    }
+    
+    public boolean isFastMath() {
+        return fastMath;
+    }
+    
+    public OcclusionBuffer getOcclusionBuffer() {
+        return occlusionBuffer;
+    }
+    
     /**
      * 设置光源
      * @param lights
      */
     public void setLights(List<Light> lights) {
         this.lights = lights;
+        invalidate();
     }
 
 }
@@ -0,0 +1,405 @@
+package renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import animation.SkinnedGeometry;
+import math.BatchTransform;
+import math.BoundingBox;
+import math.Matrix4f;
+import math.Vector3f;
+import scene.Geometry;
+import scene.InstancedGeometry;
+import scene.Mesh;
+
+/**
+ * 定向光源的阴影贴图。
+ * <p>
+ * 从光源方向以正交投影渲染投射阴影的物体，深度缓冲中保存每个纹素到光源的最近距离。
+ * 着色时把片段变换到光源空间，与深度缓冲比较，判断片段是否被遮挡，并使用3x3的PCF（百分比渐近过滤）柔化阴影边缘。
+ * </p>
+ * 阴影贴图只记录深度，使用专门的光栅化流程：不经过着色器，不插值颜色、法线和纹理坐标。
+ * 只有当光源方向或投射阴影的物体发生变化时才重新渲染。
+ */
+public class ShadowMap {
+
+    // 每个物体的签名：世界变换矩阵的前3行（12个float）
+    private final static int SIGNATURE_SIZE = 12;
+
+    // 阴影贴图的尺寸
+    private final int size;
+
+    // 深度缓冲，保存到光源的距离。
+    private final float[] depthBuffer;
+
+    // 从世界空间到阴影贴图空间的变换：x、y为纹素坐标，z为到光源的距离。
+    private Matrix4f lightMatrix = new Matrix4f();
+
+    // 深度偏移量，避免表面自身遮挡产生的阴影失真。
+    private float bias = 0.02f;
+    // 一个纹素在世界空间中的尺寸
+    private float texelSize;
+
+    // 上次渲染时的光源方向和物体状态
+    private Vector3f lastDirection = new Vector3f();
+    private float[] signatures = new float[0];
+    private Object[] meshes = new Object[0];
+    private int[] dataVersions = new int[0];
+    private int casterCount = -1;
+
+    // 本次需要蒙皮的投射阴影物体
+    private List<SkinnedGeometry> skinnedCasters = new ArrayList<SkinnedGeometry>();
+
+    // 临时变量
+    private Matrix4f worldMatrix = new Matrix4f();
+    private Matrix4f instanceMatrix = new Matrix4f();
+    private Matrix4f transformMatrix = new Matrix4f();
+    private Vector3f u = new Vector3f();
+    private Vector3f v = new Vector3f();
+    // 光源空间的坐标轴，d为光照方向。
+    private Vector3f d = new Vector3f();
+    private Vector3f corner = new Vector3f();
+    // 变换后的顶点 (x, y, z)
+    private float[] positions = new float[0];
+
+    public ShadowMap() {
+        this(512);
+    }
+
+    public ShadowMap(int size) {
+        this.size = size;
+        this.depthBuffer = new float[size * size];
+    }
+
+    /**
+     * 如果光源方向或投射阴影的物体发生了变化，重新渲染阴影贴图。
+     * @param direction 光照方向
+     * @param geomList 场景中的物体，只有isCastShadow()为true的物体会投射阴影。
+     * @return 是否重新渲染了阴影贴图
+     */
+    public boolean update(Vector3f direction, List<Geometry> geomList) {
+        if (!isChanged(direction, geomList)) {
+            return false;
+        }
+
+        fitLightMatrix(direction, geomList);
+
+        // 阴影贴图在render()之前更新，蒙皮物体需要先按当前姿势计算顶点。
+        // 光源空间的范围包含所有投射阴影的物体，所以视锥外的蒙皮物体也要计算，一次性并行完成。
+        int len = geomList.size();
+        skinnedCasters.clear();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            if (geom instanceof SkinnedGeometry && geom.isCastShadow() && geom.getMesh() != null) {
+                skinnedCasters.add((SkinnedGeometry) geom);
+            }
+        }
+        if (!skinnedCasters.isEmpty()) {
+            SkinnedGeometry.skin(skinnedCasters);
+            skinnedCasters.clear();
+        }
+
+        for(int i = 0; i < depthBuffer.length; i++) {
+            depthBuffer[i] = Float.POSITIVE_INFINITY;
+        }
+
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            if (!geom.isCastShadow() || geom.getMesh() == null) {
+                continue;
+            }
+
+            worldMatrix.set(geom.getWorldMatrix());
+            if (geom instanceof InstancedGeometry) {
+                InstancedGeometry instanced = (InstancedGeometry) geom;
+                int count = instanced.getInstanceCount();
+                for(int j = 0; j < count; j++) {
+                    instanced.getInstanceTransform(j, instanceMatrix);
+                    worldMatrix.mult(instanceMatrix, instanceMatrix);
+                    lightMatrix.mult(instanceMatrix, transformMatrix);
+                    renderMesh(geom.getMesh(), transformMatrix);
+                }
+            } else {
+                lightMatrix.mult(worldMatrix, transformMatrix);
+                renderMesh(geom.getMesh(), transformMatrix);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 下次调用update()时重新渲染
+     */
+    public void invalidate() {
+        casterCount = -1;
+    }
+
+    /**
+     * 计算世界空间中的点被光源照亮的比例
+     * @param worldPosition
+     * @return 0表示完全处于阴影中，1表示完全被照亮。
+     */
+    public float getVisibility(Vector3f worldPosition) {
+        return getVisibility(worldPosition, bias + texelSize);
+    }
+
+    /**
+     * 计算世界空间中的点被光源照亮的比例，根据表面相对光线的倾斜程度增大深度偏移量。
+     * 表面越倾斜，相邻纹素之间的深度差越大，越容易出现阴影失真。
+     * @param worldPosition
+     * @param normal 世界空间中的单位法线
+     * @return 0表示完全处于阴影中，1表示完全被照亮。
+     */
+    public float getVisibility(Vector3f worldPosition, Vector3f normal) {
+        // 法线与光线夹角的正切值
+        float cos = Math.abs(normal.dot(d));
+        float tan = (float) Math.sqrt(Math.max(0f, 1f - cos * cos)) / Math.max(cos, 0.1f);
+        // PCF会采样到相邻的纹素，偏移量按两个纹素计算。
+        return getVisibility(worldPosition, bias + texelSize * (1f + 2f * tan));
+    }
+
+    private float getVisibility(Vector3f worldPosition, float depthBias) {
+        Matrix4f m = lightMatrix;
+        float px = m.get(0, 0) * worldPosition.x + m.get(0, 1) * worldPosition.y + m.get(0, 2) * worldPosition.z + m.get(0, 3);
+        float py = m.get(1, 0) * worldPosition.x + m.get(1, 1) * worldPosition.y + m.get(1, 2) * worldPosition.z + m.get(1, 3);
+        float pz = m.get(2, 0) * worldPosition.x + m.get(2, 1) * worldPosition.y + m.get(2, 2) * worldPosition.z + m.get(2, 3);
+
+        float depth = pz - depthBias;
+
+        // 3x3 PCF
+        int cx = (int) Math.floor(px);
+        int cy = (int) Math.floor(py);
+        int lit = 0;
+        for(int y = cy - 1; y <= cy + 1; y++) {
+            for(int x = cx - 1; x <= cx + 1; x++) {
+                if (x < 0 || y < 0 || x >= size || y >= size || depth <= depthBuffer[x + y * size]) {
+                    lit++;
+                }
+            }
+        }
+        return lit / 9f;
+    }
+
+    /**
+     * 判断光源方向或投射阴影的物体是否发生了变化，同时记录新的状态。
+     */
+    private boolean isChanged(Vector3f direction, List<Geometry> geomList) {
+        boolean changed = direction.x != lastDirection.x || direction.y != lastDirection.y
+                || direction.z != lastDirection.z;
+        lastDirection.set(direction);
+
+        int count = 0;
+        int len = geomList.size();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            if (!geom.isCastShadow() || geom.getMesh() == null) {
+                continue;
+            }
+
+            if ((count + 1) * SIGNATURE_SIZE > signatures.length) {
+                float[] newSignatures = new float[(count + 1) * SIGNATURE_SIZE * 2];
+                System.arraycopy(signatures, 0, newSignatures, 0, signatures.length);
+                signatures = newSignatures;
+                Object[] newMeshes = new Object[(count + 1) * 2];
+                System.arraycopy(meshes, 0, newMeshes, 0, meshes.length);
+                meshes = newMeshes;
+                int[] newVersions = new int[newMeshes.length];
+                System.arraycopy(dataVersions, 0, newVersions, 0, dataVersions.length);
+                dataVersions = newVersions;
+            }
+
+            if (meshes[count] != geom.getMesh()) {
+                meshes[count] = geom.getMesh();
+                changed = true;
+            }
+
+            worldMatrix.set(geom.getWorldMatrix());
+            int offset = count * SIGNATURE_SIZE;
+            for(int j = 0; j < SIGNATURE_SIZE; j++) {
+                float value = worldMatrix.get(j / 4, j % 4);
+                if (signatures[offset + j] != value) {
+                    signatures[offset + j] = value;
+                    changed = true;
+                }
+            }
+
+            // 实例数据等网格之外的数据通过版本号比较
+            int dataVersion = geom.getDataVersion();
+            if (dataVersions[count] != dataVersion) {
+                dataVersions[count] = dataVersion;
+                changed = true;
+            }
+            count++;
+        }
+
+        if (count != casterCount) {
+            casterCount = count;
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 根据投射阴影物体的包围盒，计算从世界空间到阴影贴图空间的变换。
+     */
+    private void fitLightMatrix(Vector3f direction, List<Geometry> geomList) {
+        // 光源空间的坐标轴
+        d.set(direction).normalizeLocal();
+        if (Math.abs(d.y) < 0.99f) {
+            v.set(0, 1, 0);
+        } else {
+            v.set(1, 0, 0);
+        }
+        u.set(d).crossLocal(v).normalizeLocal();
+        v.set(u).crossLocal(d).normalizeLocal();
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        int len = geomList.size();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            if (!geom.isCastShadow() || geom.getMesh() == null) {
+                continue;
+            }
+
+            BoundingBox bound = geom.getWorldBound();
+            Vector3f center = bound.getCenter();
+            float ex = bound.getXExtent();
+            float ey = bound.getYExtent();
+            float ez = bound.getZExtent();
+            for(int j = 0; j < 8; j++) {
+                corner.set(center.x + ((j & 1) == 0 ? -ex : ex),
+                           center.y + ((j & 2) == 0 ? -ey : ey),
+                           center.z + ((j & 4) == 0 ? -ez : ez));
+                float x = u.dot(corner);
+                float y = v.dot(corner);
+                float z = d.dot(corner);
+                if (x < minX) minX = x;
+                if (y < minY) minY = y;
+                if (z < minZ) minZ = z;
+                if (x > maxX) maxX = x;
+                if (y > maxY) maxY = y;
+                if (z > maxZ) maxZ = z;
+            }
+        }
+
+        if (minX > maxX) {
+            // 没有投射阴影的物体
+            minX = minY = minZ = 0;
+            maxX = maxY = maxZ = 1;
+        }
+
+        // 保持纹素为正方形
+        float extent = Math.max(maxX - minX, maxY - minY);
+        if (extent <= 0) {
+            extent = 1;
+        }
+        float scale = size / extent;
+        texelSize = extent / size;
+
+        lightMatrix.set(u.x * scale, u.y * scale, u.z * scale, -minX * scale,
+                        -v.x * scale, -v.y * scale, -v.z * scale, maxY * scale,
+                        d.x, d.y, d.z, -minZ,
+                        0, 0, 0, 1);
+    }
+
+    /**
+     * 只写入深度的光栅化
+     * @param mesh
+     * @param mat 从模型空间到阴影贴图空间的变换
+     */
+    private void renderMesh(Mesh mesh, Matrix4f mat) {
+        int vertexCount = mesh.getVertexCount();
+        int[] indexes = mesh.getIndexes();
+
+        if (positions.length < vertexCount * 3) {
+            positions = new float[vertexCount * 3];
+        }
+
+        // 正交投影，不需要透视除法。
+        BatchTransform.transformPoints(mat, mesh.getVertexData(), 0, mesh.getVertexFormat().getStride(),
+                positions, 0, 3, vertexCount);
+
+        for(int i = 0; i < indexes.length; i += 3) {
+            rasterizeTriangle(indexes[i] * 3, indexes[i + 1] * 3, indexes[i + 2] * 3);
+        }
+    }
+
+    /**
+     * 光栅化三角形，像素中心在三角形内部时写入最近的深度。
+     */
+    private void rasterizeTriangle(int a, int b, int c) {
+        float[] p = positions;
+        float x0 = p[a], y0 = p[a + 1], z0 = p[a + 2];
+        float x1 = p[b], y1 = p[b + 1], z1 = p[b + 2];
+        float x2 = p[c], y2 = p[c + 1], z2 = p[c + 2];
+
+        // 两个方向的三角形都要渲染
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            float tx = x1, ty = y1, tz = z1;
+            x1 = x2; y1 = y2; z1 = z2;
+            x2 = tx; y2 = ty; z2 = tz;
+            area = -area;
+        }
+
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(size - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(size - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // 边函数 e(x, y) = A * x + B * y + C，三角形内部为正。
+        float a0 = y1 - y2, b0 = x2 - x1, c0 = x1 * y2 - x2 * y1;
+        float a1 = y2 - y0, b1 = x0 - x2, c1 = x2 * y0 - x0 * y2;
+        float a2 = y0 - y1, b2 = x1 - x0, c2 = x0 * y1 - x1 * y0;
+        float invArea = 1f / area;
+
+        for(int y = minY; y <= maxY; y++) {
+            float py = y + 0.5f;
+            float e0 = a0 * (minX + 0.5f) + b0 * py + c0;
+            float e1 = a1 * (minX + 0.5f) + b1 * py + c1;
+            float e2 = a2 * (minX + 0.5f) + b2 * py + c2;
+            int index = minX + y * size;
+            for(int x = minX; x <= maxX; x++, index++, e0 += a0, e1 += a1, e2 += a2) {
+                if (e0 < 0 || e1 < 0 || e2 < 0) {
+                    continue;
+                }
+                float z = (e0 * z0 + e1 * z1 + e2 * z2) * invArea;
+                if (z < depthBuffer[index]) {
+                    depthBuffer[index] = z;
+                }
+            }
+        }
+    }
+
+    public float getBias() {
+        return bias;
+    }
+
+    /**
+     * 设置深度偏移量（世界空间距离）
+     * @param bias
+     */
+    public void setBias(float bias) {
+        this.bias = bias;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public float[] getDepthBuffer() {
+        return depthBuffer;
+    }
+
+    public Matrix4f getLightMatrix() {
+        return lightMatrix;
+    }
+}
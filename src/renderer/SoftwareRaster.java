@@ -1,5 +1,7 @@
 package renderer;
 
+import java.nio.ByteBuffer;
+
 import material.RenderState;
 import math.Matrix4f;
 import math.Vector4f;
@@ -15,10 +17,16 @@ public class SoftwareRaster extends ImageRaster {
 
     // 深度缓冲
     protected float[] depthBuffer;
+    // 堆外的深度缓冲，每个深度值4个字节。图像保存在堆外内存中时使用，此时depthBuffer为null。
+    protected ByteBuffer directDepthBuffer;
 
     // 渲染器
     protected Renderer renderer;
 
+    // 裁剪矩形，只光栅化这个范围内的像素。max为开区间。
+    protected int clipMinX, clipMinY;
+    protected int clipMaxX, clipMaxY;
+
     // 渲染状态
     protected RenderState renderState;
 
@@ -35,8 +43,48 @@ public class SoftwareRaster extends ImageRaster {
 
     public SoftwareRaster(Renderer renderer, Image image) {
         super(image);
-        this.depthBuffer = new float[width * height];
+        // 深度缓冲与颜色数据保存在同一种内存中
+        if (image.isOffHeap()) {
+            this.directDepthBuffer = DirectMemory.allocate(width * height * 4);
+        } else {
+            this.depthBuffer = new float[width * height];
+        }
         this.renderer = renderer;
+        resetClipRect();
+    }
+
+    /**
+     * 设置裁剪矩形，只光栅化这个范围内的像素。
+     * @param minX
+     * @param minY
+     * @param maxX 开区间
+     * @param maxY 开区间
+     */
+    public void setClipRect(int minX, int minY, int maxX, int maxY) {
+        clipMinX = Math.max(0, minX);
+        clipMinY = Math.max(0, minY);
+        clipMaxX = Math.min(width, maxX);
+        clipMaxY = Math.min(height, maxY);
+    }
+
+    /**
+     * 恢复为整个图像
+     */
+    public void resetClipRect() {
+        setClipRect(0, 0, width, height);
+    }
+
+    /**
+     * 立即释放堆外的深度缓冲，并不再引用颜色数据，之后不能再使用这个光栅器。
+     */
+    @Override
+    public void release() {
+        super.release();
+        depthBuffer = null;
+        if (directDepthBuffer != null) {
+            DirectMemory.free(directDepthBuffer);
+            directDepthBuffer = null;
+        }
     }
 
     /**
@@ -44,11 +92,39 @@ public class SoftwareRaster extends ImageRaster {
      */
     public void clearDepthBuffer() {
         int length = width * height;
+        if (depthBuffer == null) {
+            for(int i=0; i<length; i++) {
+                directDepthBuffer.putFloat(i << 2, 1.0f);
+            }
+            return;
+        }
         for(int i=0; i<length; i++) {
             depthBuffer[i] = 1.0f;
         }
     }
 
+    /**
+     * 清除矩形范围内的深度缓冲
+     * @param minX
+     * @param minY
+     * @param maxX 开区间
+     * @param maxY 开区间
+     */
+    public void clearDepthBuffer(int minX, int minY, int maxX, int maxY) {
+        for(int y=minY; y<maxY; y++) {
+            int row = y * width;
+            if (depthBuffer == null) {
+                for(int x=minX; x<maxX; x++) {
+                    directDepthBuffer.putFloat((row + x) << 2, 1.0f);
+                }
+                continue;
+            }
+            for(int x=minX; x<maxX; x++) {
+                depthBuffer[row + x] = 1.0f;
+            }
+        }
+    }
+
     /**
      * 光栅化点
      * @param x
@@ -57,7 +133,7 @@ public class SoftwareRaster extends ImageRaster {
      */
     public void rasterizePixel(int x, int y, RasterizationVertex frag) {
 
-        if (x < 0 || y < 0 || x >= width || y >= height) {
+        if (x < clipMinX || y < clipMinY || x >= clipMaxX || y >= clipMaxY) {
             return;
         }
 
@@ -79,7 +155,8 @@ public class SoftwareRaster extends ImageRaster {
 
         // 深度测试
         if (renderState.isDepthTest()) {
-            if (!depthTest(depthBuffer[index], depth))
+            float oldDepth = depthBuffer != null ? depthBuffer[index] : directDepthBuffer.getFloat(index << 2);
+            if (!depthTest(oldDepth, depth))
             return;
         }
 
@@ -91,7 +168,7 @@ public class SoftwareRaster extends ImageRaster {
 
         // 颜色混合
         Vector4f srcColor = frag.color;
-        Vector4f destColor = getColor(x, y);
+        Vector4f destColor = getColor(x, y, this.destColor);
 
         switch (renderState.getBlendMode()) {
         case OFF:
@@ -118,12 +195,23 @@ public class SoftwareRaster extends ImageRaster {
 
         // 写入depthBuffer
         if (renderState.isDepthWrite()) {
-            depthBuffer[index] = depth;
+            if (depthBuffer != null) {
+                depthBuffer[index] = depth;
+            } else {
+                directDepthBuffer.putFloat(index << 2, depth);
+            }
         }
 
         // 写入frameBuffer
         index *= 4;
 
+        if (components == null) {
+            buffer.put(index, (byte)(destColor.x * 0xFF));
+            buffer.put(index + 1, (byte)(destColor.y * 0xFF));
+            buffer.put(index + 2, (byte)(destColor.z * 0xFF));
+            buffer.put(index + 3, (byte)(destColor.w * 0xFF));
+            return;
+        }
         components[index] = (byte)(destColor.x * 0xFF);
         components[index + 1] = (byte)(destColor.y * 0xFF);
         components[index + 2] = (byte)(destColor.z * 0xFF);
@@ -158,9 +246,27 @@ public class SoftwareRaster extends ImageRaster {
      * @return
      */
     public Vector4f getColor(int x, int y) {
-        Vector4f color = new Vector4f();
+        return getColor(x, y, null);
+    }
+
+    /**
+     * 提取颜色，结果保存在store中。
+     * @param x
+     * @param y
+     * @param store
+     * @return
+     */
+    public Vector4f getColor(int x, int y, Vector4f store) {
+        Vector4f color = store != null ? store : new Vector4f();
 
         int index = (x + y * width) * 4;
+        if (components == null) {
+            float r = (float)(0xFF & buffer.get(index)) * INV_SCALE;
+            float g = (float)(0xFF & buffer.get(index+1)) * INV_SCALE;
+            float b = (float)(0xFF & buffer.get(index+2)) * INV_SCALE;
+            float a = (float)(0xFF & buffer.get(index+3)) * INV_SCALE;
+            return color.set(r, g, b, a);
+        }
         float r = (float)(0xFF & components[index]) * INV_SCALE;
         float g = (float)(0xFF & components[index+1]) * INV_SCALE;
         float b = (float)(0xFF & components[index+2]) * INV_SCALE;
@@ -175,6 +281,14 @@ public class SoftwareRaster extends ImageRaster {
     private RasterizationVertex v1 = new RasterizationVertex();
     private RasterizationVertex v2 = new RasterizationVertex();
 
+    // 三角形分割点、扫描线端点和片段，光栅化过程中复用，避免为每个像素创建新的对象。
+    private RasterizationVertex middleVert = new RasterizationVertex();
+    private RasterizationVertex scanLeft = new RasterizationVertex();
+    private RasterizationVertex scanRight = new RasterizationVertex();
+    private RasterizationVertex frag = new RasterizationVertex();
+    // 颜色混合时读取的目标颜色
+    private Vector4f destColor = new Vector4f();
+
     /**
      * 光栅化三角形
      * @param a
@@ -245,7 +359,6 @@ public class SoftwareRaster extends ImageRaster {
                 // 线性插值
                 // FIXME 需要透视校正
                 float t = (y1 - y0) / (y2 - y0);
-                RasterizationVertex middleVert = new RasterizationVertex();
                 middleVert.interpolateLocal(v0, v2, t);
 
                 if (middleVert.position.x <= v1.position.x)  {// 左三角形
@@ -277,19 +390,17 @@ public class SoftwareRaster extends ImageRaster {
         int y2 = (int) Math.ceil(v2.position.y);
 
         for (int y = y0; y <y2; y++) {
-            if (y >= 0 && y < this.height) {
+            if (y >= clipMinY && y < clipMaxY) {
 
                 // 插值生成左右顶点
                 // FIXME 需要透视校正
                 float t = (y - v0.position.y) / (v1.position.y - v0.position.y);
 
-                RasterizationVertex vl = new RasterizationVertex();
-                vl.interpolateLocal(v0, v1, t);
-                RasterizationVertex vr = new RasterizationVertex();
-                vr.interpolateLocal(v0, v2, t);
+                scanLeft.interpolateLocal(v0, v1, t);
+                scanRight.interpolateLocal(v0, v2, t);
 
                 //扫描线填充
-                rasterizeScanline(vl, vr, y);
+                rasterizeScanline(scanLeft, scanRight, y);
             }
         }
     }
@@ -305,18 +416,16 @@ public class SoftwareRaster extends ImageRaster {
         int y2 = (int) Math.ceil(v2.position.y);
 
         for (int y = y0; y < y2; y++) {
-            if (y >= 0 && y < this.height) {
+            if (y >= clipMinY && y < clipMaxY) {
                 // 插值生成左右顶点
                 // FIXME 需要透视校正
                 float t = (y - v0.position.y) / (v2.position.y - v0.position.y);
 
-                RasterizationVertex vl = new RasterizationVertex();
-                vl.interpolateLocal(v0, v2, t);
-                RasterizationVertex vr = new RasterizationVertex();
-                vr.interpolateLocal(v1, v2, t);
+                scanLeft.interpolateLocal(v0, v2, t);
+                scanRight.interpolateLocal(v1, v2, t);
 
                 //扫描线填充
-                rasterizeScanline(vl, vr, y);
+                rasterizeScanline(scanLeft, scanRight, y);
             }
         }
     }
@@ -333,13 +442,12 @@ public class SoftwareRaster extends ImageRaster {
         int x1 = (int) Math.floor(v1.position.x);
 
         for (int x = x0; x <= x1; x++) {
-            if (x < 0 || x >= width)
+            if (x < clipMinX || x >= clipMaxX)
                 continue;
 
             // 线性插值
             // FIXME 需要透视校正
             float t = (x - v0.position.x) / (v1.position.x - v0.position.x);
-            RasterizationVertex frag = new RasterizationVertex();
             frag.interpolateLocal(v0, v1, t);
 
             rasterizePixel(x, y, frag);
@@ -385,7 +493,6 @@ public class SoftwareRaster extends ImageRaster {
             else
                 t = (x - v0.position.x) / (v1.position.x - v0.position.x);
 
-            RasterizationVertex frag = new RasterizationVertex();
             frag.interpolateLocal(v0, v1, t);
             rasterizePixel(x, y, frag);
 
@@ -0,0 +1,300 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import animation.SkinnedGeometry;
+import material.Material;
+import math.BatchTransform;
+import math.Matrix3f;
+import math.Matrix4f;
+import math.Quaternion;
+import math.Transform;
+import math.Vector3f;
+
+/**
+ * 批处理节点
+ * <p>
+ * 把子节点中使用相同材质、并且是否投射阴影和是否作为遮挡物都相同的Geometry合并成一个网格，
+ * 顶点预先变换到世界空间，合并后的物体保留这两项设置。
+ * 渲染时只提交合并后的物体，从而减少每个物体的材质、着色器设置开销。
+ * 只有当子物体增减、网格/材质/上述设置改变或者空间变换发生变化时，才会重新合并。
+ * 实例化物体、蒙皮物体和设置了细节层次的物体不参与合并，原样输出，它们的变化也不会引起重新合并。
+ * </p>
+ * 适用于大量静态的小物体。
+ */
+public class BatchNode extends Node {
+
+    // 物体设置的标志，设置不同的物体不能合并在一起。
+    private final static int CAST_SHADOW = 1;
+    private final static int OCCLUDER = 2;
+    private final static int LOD = 4;
+
+    // 参与合并的物体
+    private List<Geometry> members = new ArrayList<Geometry>();
+    // 合并时物体的状态，用于判断是否需要重新合并。
+    private List<Transform> memberTransforms = new ArrayList<Transform>();
+    private List<Mesh> memberMeshes = new ArrayList<Mesh>();
+    private List<Material> memberMaterials = new ArrayList<Material>();
+    private List<Integer> memberFlags = new ArrayList<Integer>();
+
+    // 合并后的物体，以及原样输出的物体
+    private List<Geometry> batches = new ArrayList<Geometry>();
+    // 合并的次数
+    private int batchVersion = 0;
+
+    // 临时变量
+    private List<Geometry> tempList = new ArrayList<Geometry>();
+    private Matrix4f worldMatrix = new Matrix4f();
+    private Matrix3f normalMatrix = new Matrix3f();
+
+    /**
+     * 返回合并后的物体，代替子节点中的Geometry。
+     */
+    @Override
+    public List<Geometry> getGeometryList(List<Geometry> list) {
+        if (list == null) {
+            list = new ArrayList<Geometry>();
+        }
+
+        updateBatches();
+
+        list.addAll(batches);
+        return list;
+    }
+
+    /**
+     * 获得合并后的物体，包括不参与合并、原样输出的物体。
+     * @return
+     */
+    public List<Geometry> getBatches() {
+        updateBatches();
+        return batches;
+    }
+
+    /**
+     * 获得合并的次数，每次重新合并后加1。
+     * @return
+     */
+    public int getBatchVersion() {
+        return batchVersion;
+    }
+
+    /**
+     * 检查子物体是否有变化，必要时重新合并。
+     */
+    public void updateBatches() {
+        tempList.clear();
+        super.getGeometryList(tempList);
+
+        if (isChanged(tempList)) {
+            batch(tempList);
+        }
+    }
+
+    /**
+     * 判断子物体相对于上次合并时是否有变化
+     * @param geomList
+     * @return
+     */
+    private boolean isChanged(List<Geometry> geomList) {
+        int len = geomList.size();
+        if (len != members.size()) {
+            return true;
+        }
+
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            if (geom != members.get(i) || getFlags(geom) != memberFlags.get(i)) {
+                return true;
+            }
+            if (!isBatchable(geom)) {
+                continue;
+            }
+            if (geom.getMesh() != memberMeshes.get(i)
+                    || geom.getMaterial() != memberMaterials.get(i)
+                    || !isSameTransform(geom.getWorldTransform(), memberTransforms.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断物体是否参与合并。实例化物体每个实例有自己的变换，合并后就只剩下一份网格；
+     * 蒙皮物体的顶点每帧变化，合并后会被冻结在合并时的姿势；
+     * 细节层次物体需要根据自身的屏幕尺寸切换网格。它们都不参与合并。
+     * @param geom
+     * @return
+     */
+    private static boolean isBatchable(Geometry geom) {
+        return !(geom instanceof InstancedGeometry) && !(geom instanceof SkinnedGeometry)
+                && !geom.hasLodLevels();
+    }
+
+    /**
+     * 获得物体设置的标志
+     * @param geom
+     * @return
+     */
+    private static int getFlags(Geometry geom) {
+        int flags = 0;
+        if (geom.isCastShadow()) flags |= CAST_SHADOW;
+        if (geom.isOccluder()) flags |= OCCLUDER;
+        if (geom.hasLodLevels()) flags |= LOD;
+        return flags;
+    }
+
+    private static boolean isSameTransform(Transform a, Transform b) {
+        Vector3f ta = a.getTranslation(), tb = b.getTranslation();
+        Vector3f sa = a.getScale(), sb = b.getScale();
+        Quaternion ra = a.getRotation(), rb = b.getRotation();
+        return ta.x == tb.x && ta.y == tb.y && ta.z == tb.z
+                && sa.x == sb.x && sa.y == sb.y && sa.z == sb.z
+                && ra.x == rb.x && ra.y == rb.y && ra.z == rb.z && ra.w == rb.w;
+    }
+
+    /**
+     * 按材质和标志分组，合并网格。
+     * @param geomList
+     */
+    private void batch(List<Geometry> geomList) {
+        // 记录合并时的状态
+        members.clear();
+        memberMeshes.clear();
+        memberMaterials.clear();
+        memberFlags.clear();
+        int len = geomList.size();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            members.add(geom);
+            memberMeshes.add(geom.getMesh());
+            memberMaterials.add(geom.getMaterial());
+            memberFlags.add(getFlags(geom));
+            if (memberTransforms.size() <= i) {
+                memberTransforms.add(new Transform());
+            }
+            memberTransforms.get(i).set(geom.getWorldTransform());
+        }
+
+        // 按材质和标志分组，保持物体原来的顺序。不参与合并的物体原样输出。
+        batches.clear();
+        Map<Material, List<Geometry>[]> groups = new IdentityHashMap<Material, List<Geometry>[]>();
+        List<List<Geometry>> order = new ArrayList<List<Geometry>>();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = members.get(i);
+            if (!isBatchable(geom)) {
+                batches.add(geom);
+                continue;
+            }
+            if (geom.getMesh() == null || geom.getMaterial() == null) {
+                continue;
+            }
+            List<Geometry>[] materialGroups = groups.get(geom.getMaterial());
+            if (materialGroups == null) {
+                materialGroups = newGroups();
+                groups.put(geom.getMaterial(), materialGroups);
+            }
+            int flags = getFlags(geom);
+            List<Geometry> group = materialGroups[flags];
+            if (group == null) {
+                group = new ArrayList<Geometry>();
+                materialGroups[flags] = group;
+                order.add(group);
+            }
+            group.add(geom);
+        }
+
+        for(int i = 0; i < order.size(); i++) {
+            List<Geometry> group = order.get(i);
+            Geometry first = group.get(0);
+            Mesh mesh = mergeMeshes(group);
+            // 合并后的物体没有父节点，其世界变换为单位变换。
+            Geometry batch = new Geometry(mesh, first.getMaterial());
+            batch.setCastShadow(first.isCastShadow());
+            batch.setOccluder(first.isOccluder());
+            batches.add(batch);
+        }
+        batchVersion++;
+    }
+
+    /**
+     * 创建按标志索引的分组数组。参与合并的物体没有LOD标志，只用到前4个。
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Geometry>[] newGroups() {
+        return new List[(CAST_SHADOW | OCCLUDER) + 1];
+    }
+
+    /**
+     * 把一组物体的网格合并成一个世界空间中的网格
+     * @param group
+     * @return
+     */
+    private Mesh mergeMeshes(List<Geometry> group) {
+        int vertCount = 0;
+        int indexCount = 0;
+        int attributes = 0;
+        for(int i = 0; i < group.size(); i++) {
+            Mesh mesh = group.get(i).getMesh();
+            vertCount += mesh.getVertexCount();
+            indexCount += mesh.getIndexes().length;
+            attributes |= mesh.getVertexFormat().getAttributes();
+        }
+
+        // 合并后的格式包含所有网格的属性，骨骼数据对静态物体没有意义。
+        VertexFormat format = new VertexFormat(attributes & ~(VertexFormat.JOINTS | VertexFormat.WEIGHTS));
+        int stride = format.getStride();
+        float[] vertexData = new float[vertCount * stride];
+        int[] indexes = new int[indexCount];
+
+        int vertOffset = 0;
+        int indexOffset = 0;
+        for(int i = 0; i < group.size(); i++) {
+            Geometry geom = group.get(i);
+            Mesh mesh = geom.getMesh();
+            VertexFormat srcFormat = mesh.getVertexFormat();
+            int srcCount = mesh.getVertexCount();
+            int[] srcIndexes = mesh.getIndexes();
+
+            // 计算世界变换矩阵和法向量变换矩阵
+            worldMatrix.set(geom.getWorldMatrix());
+            worldMatrix.toRotationMatrix(normalMatrix);
+            normalMatrix.invertLocal();
+            normalMatrix.transposeLocal();
+
+            // 镜像变换会翻转三角形的环绕方向
+            boolean mirrored = normalMatrix.determinant() < 0;
+
+            // 先复制全部属性，颜色和纹理坐标不受空间变换影响。
+            format.convert(srcFormat, mesh.getVertexData(), 0, vertexData, vertOffset, srcCount);
+
+            // 位置和法线变换到世界空间
+            BatchTransform.transformPoints(worldMatrix, vertexData, vertOffset * stride, stride,
+                    vertexData, vertOffset * stride, stride, srcCount);
+            if (srcFormat.has(VertexFormat.NORMAL)) {
+                int normalOffset = vertOffset * stride + format.getNormalOffset();
+                BatchTransform.transformVectors(normalMatrix, vertexData, normalOffset, stride,
+                        vertexData, normalOffset, stride, srcCount, true);
+            }
+
+            for(int j = 0; j < srcIndexes.length; j += 3) {
+                indexes[indexOffset + j] = srcIndexes[j] + vertOffset;
+                if (mirrored) {
+                    indexes[indexOffset + j + 1] = srcIndexes[j + 2] + vertOffset;
+                    indexes[indexOffset + j + 2] = srcIndexes[j + 1] + vertOffset;
+                } else {
+                    indexes[indexOffset + j + 1] = srcIndexes[j + 1] + vertOffset;
+                    indexes[indexOffset + j + 2] = srcIndexes[j + 2] + vertOffset;
+                }
+            }
+
+            vertOffset += srcCount;
+            indexOffset += srcIndexes.length;
+        }
+
+        return new Mesh(format, vertexData, indexes);
+    }
+}
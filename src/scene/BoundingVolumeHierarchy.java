@@ -0,0 +1,513 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import math.BoundingBox;
+import math.Plane;
+import math.Ray;
+import renderer.Camera;
+
+/**
+ * 层次包围体（BVH），以Geometry的世界包围盒为叶子建立的动态AABB树。
+ * <p>
+ * 叶子节点保存的是略微放大的包围盒，物体在放大范围内移动时不需要修改树结构；
+ * 移出放大范围时才把叶子从树中取出并重新插入。插入时按表面积代价选择兄弟节点。
+ * 每个叶子记录物体包围盒的版本号，版本号没有变化的静态物体不需要重新计算包围盒。
+ * 物体与叶子的对应关系由每棵树各自保存，一个物体可以同时属于多棵树。
+ * </p>
+ * 用于视锥剔除、射线拾取和区域查询。
+ */
+public class BoundingVolumeHierarchy {
+
+    /**
+     * 树节点
+     */
+    static class TreeNode {
+        // 包围盒。叶子节点保存放大后的包围盒，内部节点保存子节点的并集。
+        final BoundingBox bound = new BoundingBox();
+
+        TreeNode parent;
+        TreeNode left;
+        TreeNode right;
+
+        // 叶子节点对应的物体
+        Geometry geometry;
+        // 叶子节点在leaves中的下标
+        int leafIndex;
+        // 同步标记
+        int stamp;
+        // 叶子包围盒对应的物体包围盒版本号
+        int boundVersion;
+
+        boolean isLeaf() {
+            return left == null;
+        }
+    }
+
+    // 根节点
+    private TreeNode root;
+
+    // 所有叶子节点
+    private List<TreeNode> leaves = new ArrayList<TreeNode>();
+    // 物体对应的叶子节点
+    private Map<Geometry, TreeNode> leafNodes = new IdentityHashMap<Geometry, TreeNode>();
+
+    // 回收的内部节点，避免频繁创建对象。
+    private List<TreeNode> freeNodes = new ArrayList<TreeNode>();
+
+    // 叶子包围盒的放大量
+    private float margin;
+
+    // 同步计数
+    private int stamp;
+
+    // 增量同步的渲染列表，以及它的变化记录。
+    private RenderList syncedList;
+    private RenderList.ChangeLog changeLog;
+
+    // 临时变量
+    private BoundingBox tempBound = new BoundingBox();
+
+    public BoundingVolumeHierarchy() {
+        this(0.1f);
+    }
+
+    /**
+     * @param margin 叶子包围盒的放大量
+     */
+    public BoundingVolumeHierarchy(float margin) {
+        this.margin = margin;
+    }
+
+    /**
+     * 添加物体
+     * @param geom
+     */
+    public void add(Geometry geom) {
+        if (leafNodes.containsKey(geom)) {
+            return;
+        }
+
+        TreeNode leaf = new TreeNode();
+        leaf.geometry = geom;
+        leaf.boundVersion = geom.getBoundVersion();
+        leaf.bound.set(geom.getWorldBound()).enlargeLocal(margin);
+        leaf.leafIndex = leaves.size();
+        leaf.stamp = stamp;
+        leaves.add(leaf);
+        leafNodes.put(geom, leaf);
+
+        insertLeaf(leaf);
+    }
+
+    /**
+     * 移除物体
+     * @param geom
+     */
+    public void remove(Geometry geom) {
+        TreeNode leaf = leafNodes.remove(geom);
+        if (leaf == null) {
+            return;
+        }
+
+        removeLeaf(leaf);
+
+        // 用最后一个叶子填补空位
+        TreeNode last = leaves.remove(leaves.size() - 1);
+        if (last != leaf) {
+            last.leafIndex = leaf.leafIndex;
+            leaves.set(leaf.leafIndex, last);
+        }
+
+        leaf.geometry = null;
+    }
+
+    /**
+     * 判断物体是否在BVH中
+     * @param geom
+     * @return
+     */
+    public boolean contains(Geometry geom) {
+        return leafNodes.containsKey(geom);
+    }
+
+    /**
+     * 以给定的物体列表为准，添加新物体并移除已不存在的物体，然后更新包围盒。
+     * @param geomList
+     */
+    public void sync(List<Geometry> geomList) {
+        stamp++;
+
+        int len = geomList.size();
+        for(int i = 0; i < len; i++) {
+            Geometry geom = geomList.get(i);
+            TreeNode leaf = leafNodes.get(geom);
+            if (leaf == null) {
+                add(geom);
+                leaf = leafNodes.get(geom);
+            }
+            leaf.stamp = stamp;
+        }
+
+        // 移除没有被标记的物体
+        for(int i = leaves.size() - 1; i >= 0; i--) {
+            TreeNode leaf = leaves.get(i);
+            if (leaf.stamp != stamp) {
+                remove(leaf.geometry);
+            }
+        }
+
+        update();
+    }
+
+    /**
+     * 根据渲染列表自上次同步以来的变化添加、移除物体，然后更新包围盒。
+     * 不需要遍历整个列表，适用于物体很多但很少增减的场景。
+     * 每个层次包围体持有自己的变化记录，多个层次包围体可以同步同一个渲染列表。
+     * 首次同步、换用另一个渲染列表或者变化记录溢出时，与整个列表同步。
+     * @param renderList
+     */
+    public void sync(RenderList renderList) {
+        if (renderList != syncedList) {
+            if (syncedList != null) {
+                syncedList.closeChangeLog(changeLog);
+            }
+            syncedList = renderList;
+            changeLog = renderList.openChangeLog();
+        }
+
+        renderList.update();
+
+        if (changeLog.isOverflow()) {
+            changeLog.clear();
+            sync(renderList.getGeometries());
+            return;
+        }
+
+        // 同一个物体可能先添加后移除，以物体当前是否在列表中为准。
+        List<Geometry> changes = changeLog.getChanges();
+        for(int i = 0; i < changes.size(); i++) {
+            Geometry geom = changes.get(i);
+            if (!renderList.contains(geom)) {
+                remove(geom);
+            } else if (!contains(geom)) {
+                add(geom);
+            }
+        }
+        changeLog.clear();
+
+        update();
+    }
+
+    /**
+     * 更新所有物体的包围盒。包围盒版本号没有变化的物体直接跳过，
+     * 只有当物体移出放大后的包围盒时，才会调整树的结构。
+     */
+    public void update() {
+        int len = leaves.size();
+        for(int i = 0; i < len; i++) {
+            TreeNode leaf = leaves.get(i);
+            int version = leaf.geometry.getBoundVersion();
+            if (version == leaf.boundVersion) {
+                continue;
+            }
+            leaf.boundVersion = version;
+
+            BoundingBox worldBound = leaf.geometry.getWorldBound();
+            if (!leaf.bound.contains(worldBound)) {
+                removeLeaf(leaf);
+                leaf.bound.set(worldBound).enlargeLocal(margin);
+                insertLeaf(leaf);
+            }
+        }
+    }
+
+    /**
+     * 视锥剔除，把可见的物体添加到列表中。
+     * @param camera
+     * @param store
+     * @return
+     */
+    public List<Geometry> cull(Camera camera, List<Geometry> store) {
+        if (store == null) {
+            store = new ArrayList<Geometry>();
+        }
+        if (root != null) {
+            cull(root, camera.getFrustumPlanes(), 0x3F, store);
+        }
+        return store;
+    }
+
+    /**
+     * 射线拾取，返回距离射线起点最近的物体。
+     * @param ray
+     * @return 没有相交时返回null
+     */
+    public Geometry pick(Ray ray) {
+        if (root == null) {
+            return null;
+        }
+
+        Geometry closest = null;
+        float closestDistance = Float.POSITIVE_INFINITY;
+
+        List<TreeNode> stack = new ArrayList<TreeNode>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.remove(stack.size() - 1);
+            float distance = node.bound.intersects(ray);
+            // 比已知的最近物体更远，无需继续检查
+            if (distance >= closestDistance) {
+                continue;
+            }
+
+            if (node.isLeaf()) {
+                // 使用精确的世界包围盒进行检测
+                distance = node.geometry.getWorldBound().intersects(ray);
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closest = node.geometry;
+                }
+            } else {
+                stack.add(node.left);
+                stack.add(node.right);
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * 射线检测，把所有与射线相交的物体添加到列表中。
+     * @param ray
+     * @param store
+     * @return
+     */
+    public List<Geometry> collideWith(Ray ray, List<Geometry> store) {
+        if (store == null) {
+            store = new ArrayList<Geometry>();
+        }
+        if (root != null) {
+            collideWith(root, ray, store);
+        }
+        return store;
+    }
+
+    /**
+     * 区域查询，把世界包围盒与区域相交的物体添加到列表中。
+     * @param region
+     * @param store
+     * @return
+     */
+    public List<Geometry> intersect(BoundingBox region, List<Geometry> store) {
+        if (store == null) {
+            store = new ArrayList<Geometry>();
+        }
+        if (root != null) {
+            intersect(root, region, store);
+        }
+        return store;
+    }
+
+    /**
+     * 获得物体数量
+     * @return
+     */
+    public int size() {
+        return leaves.size();
+    }
+
+    private void cull(TreeNode node, Plane[] planes, int planeMask, List<Geometry> store) {
+        // 只检查父节点没有完全通过的平面
+        for(int i = 0; i < planes.length; i++) {
+            int bit = 1 << i;
+            if ((planeMask & bit) == 0) {
+                continue;
+            }
+            int side = node.bound.whichSide(planes[i]);
+            if (side == BoundingBox.OUTSIDE) {
+                return;
+            } else if (side == BoundingBox.INSIDE) {
+                planeMask &= ~bit;
+            }
+        }
+
+        if (node.isLeaf()) {
+            store.add(node.geometry);
+        } else if (planeMask == 0) {
+            // 完全在视锥内部，无需继续检测。
+            collectAll(node, store);
+        } else {
+            cull(node.left, planes, planeMask, store);
+            cull(node.right, planes, planeMask, store);
+        }
+    }
+
+    private void collectAll(TreeNode node, List<Geometry> store) {
+        if (node.isLeaf()) {
+            store.add(node.geometry);
+        } else {
+            collectAll(node.left, store);
+            collectAll(node.right, store);
+        }
+    }
+
+    private void collideWith(TreeNode node, Ray ray, List<Geometry> store) {
+        if (node.bound.intersects(ray) == Float.POSITIVE_INFINITY) {
+            return;
+        }
+        if (node.isLeaf()) {
+            if (node.geometry.getWorldBound().intersects(ray) != Float.POSITIVE_INFINITY) {
+                store.add(node.geometry);
+            }
+        } else {
+            collideWith(node.left, ray, store);
+            collideWith(node.right, ray, store);
+        }
+    }
+
+    private void intersect(TreeNode node, BoundingBox region, List<Geometry> store) {
+        if (!node.bound.intersects(region)) {
+            return;
+        }
+        if (node.isLeaf()) {
+            if (node.geometry.getWorldBound().intersects(region)) {
+                store.add(node.geometry);
+            }
+        } else {
+            intersect(node.left, region, store);
+            intersect(node.right, region, store);
+        }
+    }
+
+    /**
+     * 插入叶子节点，按表面积代价选择兄弟节点。
+     * @param leaf
+     */
+    private void insertLeaf(TreeNode leaf) {
+        if (root == null) {
+            root = leaf;
+            leaf.parent = null;
+            return;
+        }
+
+        BoundingBox leafBound = leaf.bound;
+
+        // 寻找最佳的兄弟节点
+        TreeNode sibling = root;
+        while (!sibling.isLeaf()) {
+            float area = sibling.bound.getSurfaceArea();
+            float combinedArea = sibling.bound.merge(leafBound, tempBound).getSurfaceArea();
+
+            // 在当前节点创建新父节点的代价
+            float cost = 2f * combinedArea;
+            // 下移到子节点时，当前节点需要扩大的代价
+            float inheritanceCost = 2f * (combinedArea - area);
+
+            float costLeft = descendCost(sibling.left, leafBound) + inheritanceCost;
+            float costRight = descendCost(sibling.right, leafBound) + inheritanceCost;
+
+            if (cost < costLeft && cost < costRight) {
+                break;
+            }
+
+            sibling = costLeft < costRight ? sibling.left : sibling.right;
+        }
+
+        // 创建新的父节点
+        TreeNode oldParent = sibling.parent;
+        TreeNode newParent = obtainNode();
+        newParent.parent = oldParent;
+        sibling.bound.merge(leafBound, newParent.bound);
+
+        if (oldParent != null) {
+            if (oldParent.left == sibling) {
+                oldParent.left = newParent;
+            } else {
+                oldParent.right = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        newParent.left = sibling;
+        newParent.right = leaf;
+        sibling.parent = newParent;
+        leaf.parent = newParent;
+
+        refit(oldParent);
+    }
+
+    /**
+     * 计算把叶子插入到子节点下的代价
+     * @param child
+     * @param leafBound
+     * @return
+     */
+    private float descendCost(TreeNode child, BoundingBox leafBound) {
+        float mergedArea = child.bound.merge(leafBound, tempBound).getSurfaceArea();
+        if (child.isLeaf()) {
+            return mergedArea;
+        }
+        return mergedArea - child.bound.getSurfaceArea();
+    }
+
+    /**
+     * 从树中取出叶子节点
+     * @param leaf
+     */
+    private void removeLeaf(TreeNode leaf) {
+        if (leaf == root) {
+            root = null;
+            return;
+        }
+
+        TreeNode parent = leaf.parent;
+        TreeNode grandParent = parent.parent;
+        TreeNode sibling = parent.left == leaf ? parent.right : parent.left;
+
+        // 用兄弟节点代替父节点
+        if (grandParent != null) {
+            if (grandParent.left == parent) {
+                grandParent.left = sibling;
+            } else {
+                grandParent.right = sibling;
+            }
+            sibling.parent = grandParent;
+            refit(grandParent);
+        } else {
+            root = sibling;
+            sibling.parent = null;
+        }
+
+        leaf.parent = null;
+        freeNode(parent);
+    }
+
+    /**
+     * 自下而上更新内部节点的包围盒
+     * @param node
+     */
+    private void refit(TreeNode node) {
+        while (node != null) {
+            node.left.bound.merge(node.right.bound, node.bound);
+            node = node.parent;
+        }
+    }
+
+    private TreeNode obtainNode() {
+        if (freeNodes.isEmpty()) {
+            return new TreeNode();
+        }
+        return freeNodes.remove(freeNodes.size() - 1);
+    }
+
+    private void freeNode(TreeNode node) {
+        node.parent = null;
+        node.left = null;
+        node.right = null;
+        freeNodes.add(node);
+    }
+}
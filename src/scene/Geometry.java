@@ -1,6 +1,9 @@
 package scene;
 
 import material.Material;
+import math.BoundingBox;
+import math.Matrix3f;
+import renderer.Camera;
 
 /**
  * 3D几何物体类，它是被渲染的最基本单元。
@@ -10,6 +13,31 @@ public class Geometry extends Spatial {
     private Mesh mesh;
     private Material material;
     
+    // 世界空间包围盒
+    private BoundingBox worldBound = new BoundingBox();
+    
+    // 细节层次（LOD），第0级最精细。
+    private Mesh[] lodMeshes;
+    // 每一级所需的最小屏幕尺寸（像素），按降序排列。
+    private float[] lodScreenSizes;
+    // 当前细节层次
+    private int lodLevel;
+    // 切换细节层次时的滞后比例，避免在阈值附近来回切换。
+    private float lodHysteresis = 0.1f;
+    
+    // 是否作为遮挡物参与遮挡剔除
+    private boolean occluder = false;
+    
+    // 是否投射阴影
+    private boolean castShadow = true;
+    
+    // 缓存的法向量变换矩阵，以及计算它时的世界变换版本号。
+    private Matrix3f worldNormalMatrix = new Matrix3f();
+    private int normalMatrixVersion = -1;
+    
+    // 网格或细节层次改变的次数，与世界变换版本号一起决定世界包围盒是否改变。
+    private int meshVersion = 0;
+    
     public Geometry() {}
     
     public Geometry(Mesh mesh) {
@@ -21,12 +49,100 @@ public class Geometry extends Spatial {
         this.material = material;
     }
     
+    /**
+     * 获得当前使用的网格。设置了细节层次时，返回当前层次的网格。
+     * @return
+     */
     public Mesh getMesh() {
+        if (lodMeshes != null) {
+            return lodMeshes[lodLevel];
+        }
         return mesh;
     }
 
     public void setMesh(Mesh mesh) {
         this.mesh = mesh;
+        this.lodMeshes = null;
+        this.lodScreenSizes = null;
+        this.lodLevel = 0;
+        meshVersion++;
+    }
+    
+    /**
+     * 设置细节层次
+     * @param meshes 各级网格，第0级最精细。
+     * @param screenSizes 使用每一级网格所需的最小屏幕尺寸（像素），按降序排列，长度与meshes相同。
+     */
+    public void setLodLevels(Mesh[] meshes, float[] screenSizes) {
+        if (meshes == null || meshes.length == 0) {
+            setMesh(mesh);
+            return;
+        }
+        if (screenSizes == null || screenSizes.length != meshes.length) {
+            throw new IllegalArgumentException("screenSizes must have the same length as meshes.");
+        }
+        this.mesh = meshes[0];
+        this.lodMeshes = meshes;
+        this.lodScreenSizes = screenSizes;
+        this.lodLevel = 0;
+        meshVersion++;
+    }
+    
+    /**
+     * 根据物体在屏幕上的投影尺寸选择细节层次
+     * @param camera
+     */
+    public void selectLod(Camera camera) {
+        if (lodMeshes == null) {
+            return;
+        }
+        
+        // 使用最精细网格的包围盒计算投影尺寸，避免不同层次的包围盒差异引起抖动。
+        BoundingBox bound = lodMeshes[0].getBound().transform(getWorldMatrix(), worldBound);
+        float radius = (float) Math.sqrt(bound.getXExtent() * bound.getXExtent()
+                + bound.getYExtent() * bound.getYExtent()
+                + bound.getZExtent() * bound.getZExtent());
+        float size = camera.getProjectedSize(bound.getCenter(), radius);
+        
+        int level = lodLevel;
+        // 尺寸明显超过上一级的阈值时，切换到更精细的层次。
+        while (level > 0 && size >= lodScreenSizes[level - 1] * (1f + lodHysteresis)) {
+            level--;
+        }
+        // 尺寸明显低于当前层次的阈值时，切换到更粗糙的层次。
+        while (level < lodMeshes.length - 1 && size < lodScreenSizes[level] * (1f - lodHysteresis)) {
+            level++;
+        }
+        if (level != lodLevel) {
+            lodLevel = level;
+            meshVersion++;
+        }
+    }
+    
+    /**
+     * 是否设置了细节层次
+     * @return
+     */
+    public boolean hasLodLevels() {
+        return lodMeshes != null;
+    }
+    
+    public int getLodLevel() {
+        return lodLevel;
+    }
+    
+    public void setLodLevel(int lodLevel) {
+        if (lodMeshes != null) {
+            int level = Math.max(0, Math.min(lodLevel, lodMeshes.length - 1));
+            if (level != this.lodLevel) {
+                this.lodLevel = level;
+                meshVersion++;
+            }
+        }
+    }
+    
+    public void setLodHysteresis(float lodHysteresis) {
+        this.lodHysteresis = lodHysteresis;
     }
 
     public Material getMaterial() {
@@ -36,4 +152,75 @@ public class Geometry extends Spatial {
     public void setMaterial(Material mat) {
         this.material = mat;
     }
+    
+    public boolean isOccluder() {
+        return occluder;
+    }
+    
+    /**
+     * 设置是否作为遮挡物。遮挡物应该是体积较大、面数较少的物体，如墙壁、建筑和地形。
+     * @param occluder
+     */
+    public void setOccluder(boolean occluder) {
+        this.occluder = occluder;
+    }
+    
+    public boolean isCastShadow() {
+        return castShadow;
+    }
+    
+    /**
+     * 设置是否投射阴影
+     * @param castShadow
+     */
+    public void setCastShadow(boolean castShadow) {
+        this.castShadow = castShadow;
+    }
+    
+    /**
+     * 获得世界变换对应的法向量变换矩阵。只有世界变换发生变化时才会重新计算。
+     * @return
+     */
+    public Matrix3f getWorldNormalMatrix() {
+        int version = getWorldVersion();
+        if (normalMatrixVersion != version) {
+            getWorldTransform().toNormalMatrix(worldNormalMatrix);
+            normalMatrixVersion = version;
+        }
+        return worldNormalMatrix;
+    }
+    
+    /**
+     * 获得世界包围盒的版本号。世界变换改变、更换网格或切换细节层次时，版本号会增大。
+     * 网格的顶点被原地修改时版本号不变，需要重新设置网格。
+     * @return
+     */
+    public int getBoundVersion() {
+        // 两个计数都只增不减，它们的和在任何一个改变时都会改变。
+        return getWorldVersion() + meshVersion;
+    }
+    
+    /**
+     * 获得网格之外的渲染数据（例如实例变换和颜色）的版本号，数据改变时版本号会改变。
+     * 增量渲染和阴影贴图用它判断物体的外观是否发生变化。
+     * @return
+     */
+    public int getDataVersion() {
+        return 0;
+    }
+    
+    /**
+     * 获得世界空间包围盒
+     * @return
+     */
+    public BoundingBox getWorldBound() {
+        Mesh mesh = getMesh();
+        if (mesh == null) {
+            worldBound.setMinMax(0, 0, 0, 0, 0, 0);
+            return worldBound;
+        }
+        
+        // 根据世界变换，把模型包围盒变换到世界空间。
+        return mesh.getBound().transform(getWorldMatrix(), worldBound);
+    }
 }
\ No newline at end of file
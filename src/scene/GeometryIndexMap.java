@@ -0,0 +1,116 @@
+package scene;
+
+/**
+ * 以物体的引用为键、int为值的哈希表，使用开放寻址法，存取时不需要装箱。
+ */
+final class GeometryIndexMap {
+
+    private Geometry[] keys;
+    private int[] values;
+    private int size;
+
+    GeometryIndexMap() {
+        keys = new Geometry[16];
+        values = new int[16];
+    }
+
+    /**
+     * 获得物体对应的值
+     * @param key
+     * @return 不存在时返回-1
+     */
+    int get(Geometry key) {
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    boolean containsKey(Geometry key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * 设置物体对应的值
+     * @param key
+     * @param value 不能为负数
+     */
+    void put(Geometry key, int value) {
+        // 装载因子不超过1/2
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * 移除物体
+     * @param key
+     * @return 物体原来对应的值，不存在时返回-1。
+     */
+    int remove(Geometry key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == null) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+        keys[i] = null;
+        size--;
+
+        // 把后面同一簇中的元素前移，保持查找路径连续。
+        int j = (i + 1) & mask;
+        while (keys[j] != null) {
+            int home = hash(keys[j]) & mask;
+            // home不在(i, j]范围内时，元素可以移到空位i。
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        Geometry[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Geometry[capacity];
+        values = new int[capacity];
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(Geometry key) {
+        int h = System.identityHashCode(key);
+        // 打散低位
+        return h ^ (h >>> 16);
+    }
+}
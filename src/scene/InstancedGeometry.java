@@ -0,0 +1,260 @@
+package scene;
+
+import material.Material;
+import math.BoundingBox;
+import math.Matrix4f;
+import math.Transform;
+import math.Vector4f;
+
+/**
+ * 实例化物体，使用同一个网格和材质绘制多个实例。
+ * <p>
+ * 每个实例的空间变换以3x4矩阵（按行存储，12个float）的形式紧凑地保存在一个数组中，
+ * 实例颜色以RGBA（4个float）保存在另一个数组中。实例变换是相对于本物体的世界变换而言的。
+ * 渲染器只设置一次材质和着色器，然后逐个实例更新变换矩阵和实例颜色。
+ * 每次修改实例数据时版本号加1，直接写入数组后需要调用 {@link #markInstancesChanged()}。
+ * </p>
+ */
+public class InstancedGeometry extends Geometry {
+
+    /**
+     * 每个实例变换占用的float数量
+     */
+    public final static int TRANSFORM_STRIDE = 12;
+    /**
+     * 每个实例颜色占用的float数量
+     */
+    public final static int COLOR_STRIDE = 4;
+
+    // 实例数量
+    private int instanceCount;
+    // 实例变换
+    private float[] transforms;
+    // 实例颜色
+    private float[] colors;
+    // 实例数据的版本号
+    private int instanceVersion;
+
+    // 临时变量
+    private Matrix4f tempMatrix = new Matrix4f();
+    private BoundingBox tempBound = new BoundingBox();
+    private BoundingBox instancedBound = new BoundingBox();
+    // instancedBound对应的包围盒版本号
+    private int instancedBoundVersion;
+    private boolean instancedBoundValid = false;
+
+    public InstancedGeometry(Mesh mesh, Material material) {
+        this(mesh, material, 16);
+    }
+
+    public InstancedGeometry(Mesh mesh, Material material, int capacity) {
+        super(mesh, material);
+        this.transforms = new float[capacity * TRANSFORM_STRIDE];
+        this.colors = new float[capacity * COLOR_STRIDE];
+    }
+
+    /**
+     * 获得实例数量
+     * @return
+     */
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * 设置实例数量。新增的实例使用单位变换和白色。
+     * @param count
+     */
+    public void setInstanceCount(int count) {
+        ensureCapacity(count);
+        for(int i = instanceCount; i < count; i++) {
+            setInstanceTransform(i, Matrix4f.IDENTITY);
+            setInstanceColor(i, 1, 1, 1, 1);
+        }
+        this.instanceCount = count;
+        instanceVersion++;
+    }
+
+    /**
+     * 添加一个实例
+     * @param transform
+     * @param color
+     * @return 实例的编号
+     */
+    public int addInstance(Transform transform, Vector4f color) {
+        int index = instanceCount;
+        setInstanceCount(instanceCount + 1);
+        setInstanceTransform(index, transform);
+        if (color != null) {
+            setInstanceColor(index, color.x, color.y, color.z, color.w);
+        }
+        instanceVersion++;
+        return index;
+    }
+
+    /**
+     * 设置实例的空间变换
+     * @param index
+     * @param transform
+     */
+    public void setInstanceTransform(int index, Transform transform) {
+        setInstanceTransform(index, transform.toTransformMatrix(tempMatrix));
+    }
+
+    /**
+     * 设置实例的空间变换
+     * @param index
+     * @param mat
+     */
+    public void setInstanceTransform(int index, Matrix4f mat) {
+        int offset = index * TRANSFORM_STRIDE;
+        for(int row = 0; row < 3; row++) {
+            for(int col = 0; col < 4; col++) {
+                transforms[offset++] = mat.get(row, col);
+            }
+        }
+        instanceVersion++;
+    }
+
+    /**
+     * 获得实例的空间变换
+     * @param index
+     * @param store
+     * @return
+     */
+    public Matrix4f getInstanceTransform(int index, Matrix4f store) {
+        if (store == null) {
+            store = new Matrix4f();
+        }
+        int i = index * TRANSFORM_STRIDE;
+        float[] t = transforms;
+        store.set(t[i],     t[i + 1], t[i + 2],  t[i + 3],
+                  t[i + 4], t[i + 5], t[i + 6],  t[i + 7],
+                  t[i + 8], t[i + 9], t[i + 10], t[i + 11],
+                  0,        0,        0,         1);
+        return store;
+    }
+
+    /**
+     * 设置实例颜色
+     * @param index
+     * @param r
+     * @param g
+     * @param b
+     * @param a
+     */
+    public void setInstanceColor(int index, float r, float g, float b, float a) {
+        int offset = index * COLOR_STRIDE;
+        colors[offset] = r;
+        colors[offset + 1] = g;
+        colors[offset + 2] = b;
+        colors[offset + 3] = a;
+        instanceVersion++;
+    }
+
+    /**
+     * 获得实例颜色
+     * @param index
+     * @param store
+     * @return
+     */
+    public Vector4f getInstanceColor(int index, Vector4f store) {
+        if (store == null) {
+            store = new Vector4f();
+        }
+        int offset = index * COLOR_STRIDE;
+        return store.set(colors[offset], colors[offset + 1], colors[offset + 2], colors[offset + 3]);
+    }
+
+    /**
+     * 实例变换数组，可以直接批量写入。
+     * @return
+     */
+    public float[] getTransforms() {
+        return transforms;
+    }
+
+    /**
+     * 实例颜色数组，可以直接批量写入。
+     * @return
+     */
+    public float[] getColors() {
+        return colors;
+    }
+
+    /**
+     * 通过 getTransforms() 或 getColors() 直接修改实例数据后调用，使版本号增加。
+     */
+    public void markInstancesChanged() {
+        instanceVersion++;
+    }
+
+    /**
+     * 获得实例数据的版本号
+     * @return
+     */
+    public int getInstanceVersion() {
+        return instanceVersion;
+    }
+
+    @Override
+    public int getBoundVersion() {
+        return super.getBoundVersion() + instanceVersion;
+    }
+
+    @Override
+    public int getDataVersion() {
+        return instanceVersion;
+    }
+
+    /**
+     * 包含所有实例的世界空间包围盒。结果被缓存，只有世界变换、网格或实例数据改变后才重新计算。
+     */
+    @Override
+    public BoundingBox getWorldBound() {
+        if (getMesh() == null || instanceCount == 0) {
+            return super.getWorldBound();
+        }
+
+        int version = getBoundVersion();
+        if (instancedBoundValid && instancedBoundVersion == version) {
+            return instancedBound;
+        }
+        instancedBoundVersion = version;
+        instancedBoundValid = true;
+
+        Matrix4f worldMatrix = getWorldMatrix();
+        BoundingBox modelBound = getMesh().getBound();
+
+        for(int i = 0; i < instanceCount; i++) {
+            getInstanceTransform(i, tempMatrix);
+            worldMatrix.mult(tempMatrix, tempMatrix);
+            modelBound.transform(tempMatrix, tempBound);
+            if (i == 0) {
+                instancedBound.set(tempBound);
+            } else {
+                instancedBound.mergeLocal(tempBound);
+            }
+        }
+        return instancedBound;
+    }
+
+    /**
+     * 扩充容量
+     * @param count
+     */
+    private void ensureCapacity(int count) {
+        if (count * TRANSFORM_STRIDE <= transforms.length) {
+            return;
+        }
+        int capacity = Math.max(count, transforms.length / TRANSFORM_STRIDE * 2);
+
+        float[] newTransforms = new float[capacity * TRANSFORM_STRIDE];
+        System.arraycopy(transforms, 0, newTransforms, 0, instanceCount * TRANSFORM_STRIDE);
+        transforms = newTransforms;
+
+        float[] newColors = new float[capacity * COLOR_STRIDE];
+        System.arraycopy(colors, 0, newColors, 0, instanceCount * COLOR_STRIDE);
+        colors = newColors;
+    }
+}
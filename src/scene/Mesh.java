@@ -1,54 +1,268 @@
 package scene;
 
+import math.BoundingBox;
 import math.Vector2f;
 import math.Vector3f;
 import math.Vector4f;
 
 /**
  * 定义三角形网格
+ * <p>
+ * 顶点数据按照顶点格式交错存放在一个float数组中，渲染器、着色器和批量变换直接按顺序读取这个数组。
+ * Vertex对象只用于方便地构造网格，构造完成后网格不再持有它们。
+ * </p>
  */
 public class Mesh {
     /**
-     * 顶点数据
+     * 顶点格式
      */
-    protected Vertex[] vertexes;
+    protected VertexFormat format;
+    /**
+     * 顶点数据，每个顶点占用format.getStride()个float。
+     */
+    protected float[] vertexData;
+    /**
+     * 顶点数量
+     */
+    protected int vertexCount;
     /**
      * 顶点索引
      */
     protected int[] indexes;
+    /**
+     * 模型空间包围盒
+     */
+    protected BoundingBox bound;
+    /**
+     * 模型空间中每个三角形所在的平面，每4个float为一组(nx, ny, nz, d)，用于背面消隐。
+     */
+    protected float[] facePlanes;
+
+    public VertexFormat getVertexFormat() {
+        return format;
+    }
+
+    public float[] getVertexData() {
+        return vertexData;
+    }
 
+    public int getVertexCount() {
+        return vertexCount;
+    }
 
+    /**
+     * 设置顶点数据。顶点位置改变后，包围盒和三角形平面会在下次使用时重新计算。
+     * @param format 顶点格式
+     * @param vertexData 顶点数据，长度必须是顶点格式步长的整数倍。
+     */
+    public void setVertexData(VertexFormat format, float[] vertexData) {
+        if (vertexData.length % format.getStride() != 0) {
+            throw new IllegalArgumentException("Vertex data length must be a multiple of " + format.getStride() + ".");
+        }
+        this.format = format;
+        this.vertexData = vertexData;
+        this.vertexCount = vertexData.length / format.getStride();
+        this.bound = null;
+        this.facePlanes = null;
+    }
+
+    /**
+     * 把分开存放的顶点属性交错存放为顶点数据。
+     * @param positions 顶点位置，每个顶点3个float。
+     * @param normals 顶点法线，每个顶点3个float，可以为null。
+     * @param texCoords 纹理坐标，每个顶点2个float，可以为null。
+     * @param colors 顶点颜色，每个顶点4个float，可以为null。
+     */
+    protected void setVertexData(float[] positions, float[] normals, float[] texCoords, float[] colors) {
+        int attributes = VertexFormat.POSITION;
+        if (normals != null) attributes |= VertexFormat.NORMAL;
+        if (texCoords != null) attributes |= VertexFormat.TEXCOORD;
+        if (colors != null) attributes |= VertexFormat.COLOR;
+        VertexFormat format = new VertexFormat(attributes);
+
+        int count = positions.length / 3;
+        int stride = format.getStride();
+        float[] data = new float[count * stride];
+        for(int i = 0; i < count; i++) {
+            int d = i * stride;
+            System.arraycopy(positions, i * 3, data, d, 3);
+            if (normals != null) {
+                System.arraycopy(normals, i * 3, data, d + format.getNormalOffset(), 3);
+            }
+            if (texCoords != null) {
+                System.arraycopy(texCoords, i * 2, data, d + format.getTexCoordOffset(), 2);
+            }
+            if (colors != null) {
+                System.arraycopy(colors, i * 4, data, d + format.getColorOffset(), 4);
+            }
+        }
+        setVertexData(format, data);
+    }
+
+    /**
+     * 把顶点数据转换为Vertex对象。每次调用都会创建新的对象，修改它们不会影响网格。
+     * @return
+     */
     public Vertex[] getVertexes() {
+        int stride = format.getStride();
+        Vertex[] vertexes = new Vertex[vertexCount];
+        for(int i = 0; i < vertexCount; i++) {
+            vertexes[i] = format.read(vertexData, i * stride);
+        }
         return vertexes;
     }
-    
+
+    /**
+     * 读取顶点位置
+     * @param index 顶点编号
+     * @param store
+     * @return
+     */
+    public Vector3f getPosition(int index, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        int offset = index * format.getStride();
+        return store.set(vertexData[offset], vertexData[offset + 1], vertexData[offset + 2]);
+    }
+
     public int[] getIndexes() {
         return indexes;
     }
-    
+
+    /**
+     * 获得模型空间包围盒，首次调用时计算。
+     * @return
+     */
+    public BoundingBox getBound() {
+        if (bound == null) {
+            updateBound();
+        }
+        return bound;
+    }
+
+    /**
+     * 获得三角形平面数据，首次调用时计算。
+     * @return
+     */
+    public float[] getFacePlanes() {
+        if (facePlanes == null) {
+            updateFacePlanes();
+        }
+        return facePlanes;
+    }
+
+    /**
+     * 根据顶点数据重新计算三角形平面。
+     * <p>法线 n = (v1 - v0) x (v2 - v1)，不做单位化，只用于判断点在平面的哪一侧。</p>
+     */
+    public void updateFacePlanes() {
+        int triCount = indexes.length / 3;
+        if (facePlanes == null || facePlanes.length != triCount * 4) {
+            facePlanes = new float[triCount * 4];
+        }
+
+        float[] data = vertexData;
+        int stride = format.getStride();
+        for(int i = 0; i < triCount; i++) {
+            int p0 = indexes[i * 3] * stride;
+            int p1 = indexes[i * 3 + 1] * stride;
+            int p2 = indexes[i * 3 + 2] * stride;
+
+            float abx = data[p1] - data[p0], aby = data[p1 + 1] - data[p0 + 1], abz = data[p1 + 2] - data[p0 + 2];
+            float bcx = data[p2] - data[p1], bcy = data[p2 + 1] - data[p1 + 1], bcz = data[p2 + 2] - data[p1 + 2];
+
+            float nx = aby * bcz - abz * bcy;
+            float ny = abz * bcx - abx * bcz;
+            float nz = abx * bcy - aby * bcx;
+
+            int index = i * 4;
+            facePlanes[index] = nx;
+            facePlanes[index + 1] = ny;
+            facePlanes[index + 2] = nz;
+            facePlanes[index + 3] = -(nx * data[p0] + ny * data[p0 + 1] + nz * data[p0 + 2]);
+        }
+    }
+
+    /**
+     * 根据顶点数据重新计算包围盒
+     */
+    public void updateBound() {
+        if (bound == null) {
+            bound = new BoundingBox();
+        }
+
+        if (vertexCount == 0) {
+            bound.setMinMax(0, 0, 0, 0, 0, 0);
+            return;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        float[] data = vertexData;
+        int stride = format.getStride();
+        for(int i = 0, p = 0; i < vertexCount; i++, p += stride) {
+            float x = data[p], y = data[p + 1], z = data[p + 2];
+            if (x < minX) minX = x;
+            if (y < minY) minY = y;
+            if (z < minZ) minZ = z;
+            if (x > maxX) maxX = x;
+            if (y > maxY) maxY = y;
+            if (z > maxZ) maxZ = z;
+        }
+        bound.setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
     public Mesh() {
     }
-    
+
+    public Mesh(VertexFormat format, float[] vertexData, int[] indexes) {
+        setVertexData(format, vertexData);
+        this.indexes = indexes;
+    }
+
+    /**
+     * 使用Vertex对象构造网格，数据被复制到顶点数据中。数组中为null的顶点所有属性取默认值。
+     * @param vertexes
+     * @param indexes
+     */
+    public Mesh(Vertex[] vertexes, int[] indexes) {
+        VertexFormat format = VertexFormat.of(vertexes);
+        int stride = format.getStride();
+        float[] data = new float[vertexes.length * stride];
+        for(int i = 0; i < vertexes.length; i++) {
+            format.write(vertexes[i], data, i * stride);
+        }
+        setVertexData(format, data);
+        this.indexes = indexes;
+    }
+
     public Mesh(Vector3f[] positions, int[] indexes) {
         this(positions, indexes, null, null, null);
     }
-    
+
     public Mesh(Vector3f[] positions, int[] indexes, Vector2f[] texCoords, Vector3f[] normals, Vector4f[] colors) {
-        this.indexes = indexes;
-        this.vertexes = new Vertex[positions.length];
-        for(int i = 0; i < indexes.length; i++) {
-            int index = indexes[i];
-            vertexes[index] = new Vertex();
-            vertexes[index].position = positions[index];
+        this(toVertexes(positions, texCoords, normals, colors), indexes);
+    }
+
+    /**
+     * 把分开存放的顶点属性组合为Vertex对象
+     */
+    private static Vertex[] toVertexes(Vector3f[] positions, Vector2f[] texCoords, Vector3f[] normals, Vector4f[] colors) {
+        Vertex[] vertexes = new Vertex[positions.length];
+        for(int i = 0; i < positions.length; i++) {
+            Vertex v = vertexes[i] = new Vertex();
+            v.position = positions[i];
             if (normals != null) {
-                vertexes[index].normal = normals[index];
+                v.normal = normals[i];
             }
             if (colors != null) {
-                vertexes[index].color = colors[index];
+                v.color = colors[i];
             }
             if (texCoords != null) {
-                vertexes[index].texCoord = texCoords[index];
+                v.texCoord = texCoords[i];
             }
         }
+        return vertexes;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,355 @@
+package scene;
+
+import java.util.Arrays;
+
+/**
+ * 网格优化，提高顶点缓存和内存访问的局部性。
+ * <p>
+ * 依次执行三个步骤：
+ * <ol>
+ * <li>合并所有属性完全相同的顶点，减少顶点着色的次数。</li>
+ * <li>使用Forsyth算法重新排列三角形，让相邻的三角形尽量共享最近使用过的顶点。</li>
+ * <li>按照顶点在索引中第一次出现的顺序重新排列顶点，顺序读取顶点数据，同时去掉没有被引用的顶点。</li>
+ * </ol>
+ * 优化不会改变三角形的环绕方向，只改变顶点和三角形的顺序。
+ * </p>
+ */
+public class MeshOptimizer {
+
+    /**
+     * 默认的顶点缓存大小
+     */
+    public final static int DEFAULT_CACHE_SIZE = 32;
+
+    // Forsyth算法的评分参数
+    private final static float CACHE_DECAY_POWER = 1.5f;
+    private final static float LAST_TRI_SCORE = 0.75f;
+    private final static float VALENCE_BOOST_SCALE = 2.0f;
+    private final static float VALENCE_BOOST_POWER = 0.5f;
+    // 预先计算评分的最大剩余三角形数量，更大的数量按这个值计算。
+    private final static int MAX_VALENCE = 64;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * 对网格执行全部优化步骤
+     * @param mesh
+     * @return 优化后的新网格，原网格不变。
+     */
+    public static Mesh optimize(Mesh mesh) {
+        return optimize(mesh, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * 对网格执行全部优化步骤
+     * @param mesh
+     * @param cacheSize 三角形排序时假设的顶点缓存大小，至少为4。
+     * @return 优化后的新网格，原网格不变。
+     */
+    public static Mesh optimize(Mesh mesh, int cacheSize) {
+        Mesh welded = weld(mesh);
+        int[] indexes = optimizeTriangleOrder(welded.getIndexes(), welded.getVertexCount(), cacheSize);
+        return optimizeVertexOrder(new Mesh(welded.getVertexFormat(), welded.getVertexData(), indexes));
+    }
+
+    /**
+     * 合并所有属性完全相同（按位比较）的顶点
+     * @param mesh
+     * @return 新网格，顶点按第一次出现的顺序保存。
+     */
+    public static Mesh weld(Mesh mesh) {
+        VertexFormat format = mesh.getVertexFormat();
+        float[] data = mesh.getVertexData();
+        int vertexCount = mesh.getVertexCount();
+        int stride = format.getStride();
+
+        // 开放寻址的哈希表，保存新顶点的编号加1，0表示空位。
+        int capacity = Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        int[] table = new int[capacity];
+
+        int[] remap = new int[vertexCount];
+        float[] newData = new float[vertexCount * stride];
+        int newCount = 0;
+
+        for(int i = 0; i < vertexCount; i++) {
+            int offset = i * stride;
+            int hash = 1;
+            for(int k = 0; k < stride; k++) {
+                hash = hash * 31 + Float.floatToIntBits(data[offset + k]);
+            }
+            // 打散低位
+            hash ^= (hash >>> 16);
+            hash *= 0x85ebca6b;
+            hash ^= (hash >>> 13);
+
+            int slot = hash & mask;
+            while(true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    // 新的顶点
+                    System.arraycopy(data, offset, newData, newCount * stride, stride);
+                    table[slot] = newCount + 1;
+                    remap[i] = newCount++;
+                    break;
+                }
+                if (equals(newData, (entry - 1) * stride, data, offset, stride)) {
+                    remap[i] = entry - 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        int[] indexes = mesh.getIndexes();
+        int[] newIndexes = new int[indexes.length];
+        for(int i = 0; i < indexes.length; i++) {
+            newIndexes[i] = remap[indexes[i]];
+        }
+
+        return new Mesh(format, Arrays.copyOf(newData, newCount * stride), newIndexes);
+    }
+
+    /**
+     * 按位比较两个顶点
+     */
+    private static boolean equals(float[] a, int aOffset, float[] b, int bOffset, int stride) {
+        for(int k = 0; k < stride; k++) {
+            if (Float.floatToIntBits(a[aOffset + k]) != Float.floatToIntBits(b[bOffset + k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 使用Forsyth算法（Linear-Speed Vertex Cache Optimisation）重新排列三角形。
+     * <p>
+     * 每个顶点根据它在模拟的LRU缓存中的位置和剩余的三角形数量计算评分，三角形的评分为三个顶点评分之和。
+     * 每次输出评分最高的三角形，然后只更新缓存中顶点所在三角形的评分。
+     * 剩余三角形较少的顶点得分更高，使得网格被一块一块地处理完，而不是留下零散的三角形。
+     * </p>
+     * @param indexes 三角形索引
+     * @param vertexCount 顶点数量
+     * @param cacheSize 模拟的缓存大小，至少为4。
+     * @return 新的索引数组
+     */
+    public static int[] optimizeTriangleOrder(int[] indexes, int vertexCount, int cacheSize) {
+        if (cacheSize < 4) {
+            throw new IllegalArgumentException("cacheSize must be at least 4.");
+        }
+        int triCount = indexes.length / 3;
+        int[] result = new int[triCount * 3];
+        if (triCount == 0) {
+            return result;
+        }
+
+        // 预先计算评分
+        float[] cacheScores = new float[cacheSize];
+        for(int i = 0; i < cacheSize; i++) {
+            if (i < 3) {
+                // 刚刚使用过的三个顶点得分固定，避免总是选择共享同一条边的三角形。
+                cacheScores[i] = LAST_TRI_SCORE;
+            } else {
+                float scaler = 1f - (float) (i - 3) / (cacheSize - 3);
+                cacheScores[i] = (float) Math.pow(scaler, CACHE_DECAY_POWER);
+            }
+        }
+        float[] valenceScores = new float[MAX_VALENCE + 1];
+        for(int i = 1; i <= MAX_VALENCE; i++) {
+            valenceScores[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+
+        // 顶点所在的三角形，按顶点连续存放。
+        int[] triStart = new int[vertexCount + 1];
+        for(int i = 0; i < indexes.length; i++) {
+            triStart[indexes[i] + 1]++;
+        }
+        for(int i = 0; i < vertexCount; i++) {
+            triStart[i + 1] += triStart[i];
+        }
+        int[] activeCount = new int[vertexCount];
+        int[] triList = new int[indexes.length];
+        for(int i = 0; i < indexes.length; i++) {
+            int v = indexes[i];
+            triList[triStart[v] + activeCount[v]++] = i / 3;
+        }
+
+        // 初始评分
+        int[] cachePos = new int[vertexCount];
+        Arrays.fill(cachePos, -1);
+        float[] vertScores = new float[vertexCount];
+        for(int v = 0; v < vertexCount; v++) {
+            vertScores[v] = vertexScore(cachePos[v], activeCount[v], cacheScores, valenceScores);
+        }
+        boolean[] triAdded = new boolean[triCount];
+        int bestTri = 0;
+        float bestScore = -1f;
+        for(int t = 0; t < triCount; t++) {
+            float score = vertScores[indexes[t * 3]] + vertScores[indexes[t * 3 + 1]] + vertScores[indexes[t * 3 + 2]];
+            if (score > bestScore) {
+                bestScore = score;
+                bestTri = t;
+            }
+        }
+
+        // 模拟的LRU缓存，多出的3个位置用于暂存被挤出的顶点。
+        int[] cache = new int[cacheSize + 3];
+        int[] newCache = new int[cacheSize + 3];
+        int cacheCount = 0;
+        // 没有候选三角形时，从这里开始顺序查找未输出的三角形。
+        int scanCursor = 0;
+
+        for(int n = 0; n < triCount; n++) {
+            if (bestTri < 0) {
+                while(triAdded[scanCursor]) {
+                    scanCursor++;
+                }
+                bestTri = scanCursor;
+            }
+
+            int t = bestTri;
+            triAdded[t] = true;
+            int a = indexes[t * 3], b = indexes[t * 3 + 1], c = indexes[t * 3 + 2];
+            result[n * 3] = a;
+            result[n * 3 + 1] = b;
+            result[n * 3 + 2] = c;
+
+            // 从顶点的剩余三角形中移除
+            for(int k = 0; k < 3; k++) {
+                int v = indexes[t * 3 + k];
+                int start = triStart[v];
+                int end = start + activeCount[v];
+                for(int j = start; j < end; j++) {
+                    if (triList[j] == t) {
+                        triList[j] = triList[end - 1];
+                        triList[end - 1] = t;
+                        activeCount[v]--;
+                        break;
+                    }
+                }
+            }
+
+            // 三个顶点移到缓存最前面，其余顶点依次后移。
+            int newCount = 0;
+            newCache[newCount++] = a;
+            if (b != a) newCache[newCount++] = b;
+            if (c != a && c != b) newCache[newCount++] = c;
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) {
+                    newCache[newCount++] = v;
+                }
+            }
+            int[] temp = cache;
+            cache = newCache;
+            newCache = temp;
+            cacheCount = newCount;
+
+            // 更新缓存中顶点的评分，被挤出缓存的顶点也需要更新。
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                cachePos[v] = i < cacheSize ? i : -1;
+                vertScores[v] = vertexScore(cachePos[v], activeCount[v], cacheScores, valenceScores);
+            }
+
+            // 重新计算相关三角形的评分，找出评分最高的三角形。
+            bestTri = -1;
+            bestScore = -1f;
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int start = triStart[v];
+                int end = start + activeCount[v];
+                for(int j = start; j < end; j++) {
+                    int tri = triList[j];
+                    float score = vertScores[indexes[tri * 3]] + vertScores[indexes[tri * 3 + 1]]
+                            + vertScores[indexes[tri * 3 + 2]];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTri = tri;
+                    }
+                }
+            }
+
+            if (cacheCount > cacheSize) {
+                cacheCount = cacheSize;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 计算顶点评分
+     * @param cachePosition 顶点在缓存中的位置，-1表示不在缓存中。
+     * @param activeCount 顶点剩余的三角形数量
+     */
+    private static float vertexScore(int cachePosition, int activeCount, float[] cacheScores, float[] valenceScores) {
+        if (activeCount == 0) {
+            // 没有剩余的三角形
+            return -1f;
+        }
+        float score = cachePosition < 0 ? 0f : cacheScores[cachePosition];
+        return score + valenceScores[Math.min(activeCount, MAX_VALENCE)];
+    }
+
+    /**
+     * 按照顶点在索引中第一次出现的顺序重新排列顶点，没有被引用的顶点被丢弃。
+     * @param mesh
+     * @return 新网格，三角形的顺序不变。
+     */
+    public static Mesh optimizeVertexOrder(Mesh mesh) {
+        VertexFormat format = mesh.getVertexFormat();
+        float[] data = mesh.getVertexData();
+        int stride = format.getStride();
+        int[] indexes = mesh.getIndexes();
+
+        int[] remap = new int[mesh.getVertexCount()];
+        Arrays.fill(remap, -1);
+        int[] newIndexes = new int[indexes.length];
+        float[] newData = new float[mesh.getVertexCount() * stride];
+        int newCount = 0;
+        for(int i = 0; i < indexes.length; i++) {
+            int v = indexes[i];
+            if (remap[v] < 0) {
+                System.arraycopy(data, v * stride, newData, newCount * stride, stride);
+                remap[v] = newCount++;
+            }
+            newIndexes[i] = remap[v];
+        }
+
+        return new Mesh(format, Arrays.copyOf(newData, newCount * stride), newIndexes);
+    }
+
+    /**
+     * 使用指定大小的FIFO缓存模拟顶点着色，计算平均每个三角形需要处理的顶点数量（ACMR）。
+     * 理想值接近0.5，最差为3。
+     * @param indexes
+     * @param cacheSize
+     * @return
+     */
+    public static float computeAcmr(int[] indexes, int cacheSize) {
+        int triCount = indexes.length / 3;
+        if (triCount == 0) {
+            return 0f;
+        }
+
+        int maxIndex = 0;
+        for(int i = 0; i < indexes.length; i++) {
+            maxIndex = Math.max(maxIndex, indexes[i]);
+        }
+        // 顶点进入缓存时的计数，计数之差不超过缓存大小时仍在缓存中。
+        int[] timestamps = new int[maxIndex + 1];
+        int time = cacheSize + 1;
+        int misses = 0;
+        for(int i = 0; i < indexes.length; i++) {
+            int v = indexes[i];
+            if (time - timestamps[v] > cacheSize) {
+                timestamps[v] = time++;
+                misses++;
+            }
+        }
+        return (float) misses / triCount;
+    }
+}
@@ -0,0 +1,131 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import math.BoundingBox;
+import math.Vector3f;
+
+/**
+ * 网格简化，用于生成细节层次（LOD）。
+ * <p>
+ * 使用顶点聚类算法：把包围盒划分为均匀的网格，落在同一个格子中的顶点合并为一个顶点，
+ * 位置取平均值，其他属性取格子中第一个顶点的值。合并后退化的三角形会被丢弃。
+ * </p>
+ */
+public class MeshSimplifier {
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * 为任意网格生成细节层次，每一级的格子尺寸加倍。
+     * @param mesh 原始网格，作为第0级。
+     * @param levels 层次数量
+     * @return 各级网格，第0级最精细。
+     */
+    public static Mesh[] createLodLevels(Mesh mesh, int levels) {
+        BoundingBox bound = mesh.getBound();
+        float size = 2f * Math.max(bound.getXExtent(), Math.max(bound.getYExtent(), bound.getZExtent()));
+
+        Mesh[] meshes = new Mesh[levels];
+        meshes[0] = mesh;
+
+        // 第1级把包围盒划分为32格，之后每级减半，最少2格。
+        int divisions = 32;
+        for(int i = 1; i < levels; i++) {
+            meshes[i] = simplify(mesh, size / divisions);
+            divisions = Math.max(2, divisions / 2);
+        }
+        return meshes;
+    }
+
+    /**
+     * 使用顶点聚类简化网格
+     * @param mesh
+     * @param cellSize 格子的边长
+     * @return
+     */
+    public static Mesh simplify(Mesh mesh, float cellSize) {
+        VertexFormat format = mesh.getVertexFormat();
+        float[] data = mesh.getVertexData();
+        int vertexCount = mesh.getVertexCount();
+        int stride = format.getStride();
+        int[] indexes = mesh.getIndexes();
+        Vector3f min = mesh.getBound().getMin(null);
+        float invCellSize = 1f / cellSize;
+
+        // 原顶点到新顶点的映射
+        int[] remap = new int[vertexCount];
+        Map<Long, Integer> cells = new HashMap<Long, Integer>();
+        // 新顶点数据，容量不足时扩大。
+        float[] newData = new float[Math.max(16, vertexCount / 4) * stride];
+        List<Integer> counts = new ArrayList<Integer>();
+
+        for(int i = 0; i < vertexCount; i++) {
+            int p = i * stride;
+            float x = data[p], y = data[p + 1], z = data[p + 2];
+
+            long ix = (long) ((x - min.x) * invCellSize);
+            long iy = (long) ((y - min.y) * invCellSize);
+            long iz = (long) ((z - min.z) * invCellSize);
+            Long key = ix | (iy << 21) | (iz << 42);
+
+            Integer index = cells.get(key);
+            if (index == null) {
+                index = counts.size();
+                cells.put(key, index);
+
+                // 复制格子中第一个顶点的全部属性，位置先作为累加值。
+                if (newData.length < (index + 1) * stride) {
+                    float[] data2 = new float[newData.length * 2];
+                    System.arraycopy(newData, 0, data2, 0, newData.length);
+                    newData = data2;
+                }
+                System.arraycopy(data, p, newData, index * stride, stride);
+                counts.add(1);
+            } else {
+                int q = index * stride;
+                newData[q] += x;
+                newData[q + 1] += y;
+                newData[q + 2] += z;
+                counts.set(index, counts.get(index) + 1);
+            }
+            remap[i] = index;
+        }
+
+        // 顶点位置取平均值
+        int newCount = counts.size();
+        float[] resultData = new float[newCount * stride];
+        System.arraycopy(newData, 0, resultData, 0, resultData.length);
+        for(int i = 0; i < newCount; i++) {
+            float invCount = 1f / counts.get(i);
+            int q = i * stride;
+            resultData[q] *= invCount;
+            resultData[q + 1] *= invCount;
+            resultData[q + 2] *= invCount;
+        }
+
+        // 丢弃退化的三角形
+        int[] resultIndexes = new int[indexes.length];
+        int count = 0;
+        for(int i = 0; i < indexes.length; i += 3) {
+            int i0 = remap[indexes[i]];
+            int i1 = remap[indexes[i + 1]];
+            int i2 = remap[indexes[i + 2]];
+            if (i0 == i1 || i1 == i2 || i0 == i2) {
+                continue;
+            }
+            resultIndexes[count++] = i0;
+            resultIndexes[count++] = i1;
+            resultIndexes[count++] = i2;
+        }
+
+        int[] trimmed = new int[count];
+        System.arraycopy(resultIndexes, 0, trimmed, 0, count);
+
+        return new Mesh(format, resultData, trimmed);
+    }
+}
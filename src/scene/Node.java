@@ -10,26 +10,97 @@ public class Node extends Spatial {
 
     private List<Spatial> children;
     
+    // 渲染列表，只有调用过getRenderList()的节点才会维护。
+    private RenderList renderList;
+    
     public Node() {
         children = new ArrayList<Spatial>();
     }
     
     /**
-     * 添加子节点
+     * 添加子节点。如果它已经有父节点，会先从原来的父节点中移除。
      * @param spatial
      */
     public void attachChild(Spatial spatial) {
+        if (spatial.getParent() != null) {
+            spatial.removeFromParent();
+        }
         children.add(spatial);
         spatial.setParent(this);
+        
+        // 更新祖先节点的渲染列表。批处理节点的子节点由它自己合并，不直接加入渲染列表。
+        Node node = this;
+        while (node != null && !(node instanceof BatchNode)) {
+            if (node.renderList != null) {
+                node.renderList.add(spatial);
+            }
+            node = node.getParent();
+        }
     }
     /**
      * 移除子节点
      * @param spatial
      */
     public void detachChild(Spatial spatial) {
-        children.remove(spatial);
+        if (!children.remove(spatial)) {
+            return;
+        }
+        
+        Node node = this;
+        while (node != null && !(node instanceof BatchNode)) {
+            if (node.renderList != null) {
+                node.renderList.remove(spatial);
+            }
+            node = node.getParent();
+        }
+        spatial.setParent(null);
+    }
+    
+    /**
+     * 获得子节点
+     * @return
+     */
+    public List<Spatial> getChildren() {
+        return children;
+    }
+    
+    /**
+     * 获得渲染列表。第一次调用时根据当前的子节点建立，之后在添加、移除子节点时自动维护，不需要每帧遍历场景。
+     * @return
+     */
+    public RenderList getRenderList() {
+        if (renderList == null) {
+            renderList = new RenderList();
+            int len = children.size();
+            for(int i=0; i<len; i++) {
+                renderList.add(children.get(i));
+            }
+        }
+        return renderList;
     }
 
+    @Override
+    protected void setTransformRefresh() {
+        // 已经被标记的节点，它的子节点也一定已经被标记。
+        if (transformRefresh) {
+            return;
+        }
+        super.setTransformRefresh();
+        int len = children.size();
+        for(int i=0; i<len; i++) {
+            children.get(i).setTransformRefresh();
+        }
+    }
+    
+    @Override
+    public void updateGeometricState() {
+        super.updateGeometricState();
+        int len = children.size();
+        for(int i=0; i<len; i++) {
+            children.get(i).updateGeometricState();
+        }
+    }
+    
     /**
      * 遍历场景，获取所有Geometry
      * @param list
@@ -0,0 +1,229 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 渲染列表，保存根节点下所有需要渲染的Geometry。
+ * <p>
+ * 由Node在添加、移除子节点时维护，不需要每帧遍历场景图。
+ * 每个需要增量更新的使用者（例如层次包围体）通过openChangeLog()获得自己的变化记录，互不影响。
+ * 没有使用者时不记录变化；某个记录长期不被读取时，超过上限后会被清空并标记为溢出，
+ * 它的使用者需要与整个列表重新同步，因此记录占用的内存不会无限增长。
+ * BatchNode作为整体处理，每次update()时检查它是否重新合并，用合并后的物体代替它的子节点。
+ * 一个物体可以同时属于多个渲染列表（例如根节点和子节点各自的列表），每个列表独立记录物体的下标。
+ * </p>
+ */
+public class RenderList {
+
+    // 所有物体
+    private List<Geometry> geometries = new ArrayList<Geometry>();
+    // 物体在列表中的下标
+    private GeometryIndexMap indexes = new GeometryIndexMap();
+
+    // 各使用者的变化记录
+    private List<ChangeLog> changeLogs = new ArrayList<ChangeLog>();
+
+    // 批处理节点，以及已经加入列表的合并物体和对应的合并版本号。
+    private List<BatchNode> batchNodes = new ArrayList<BatchNode>();
+    private List<List<Geometry>> batchGeometries = new ArrayList<List<Geometry>>();
+    private List<Integer> batchVersions = new ArrayList<Integer>();
+
+    // 变化记录的最小容量
+    private final static int MIN_LOG_CAPACITY = 64;
+
+    /**
+     * 渲染列表的变化记录，由一个使用者独占。
+     */
+    public static class ChangeLog {
+        // 自上次清空以来添加或移除的物体，同一个物体可能出现多次。
+        private final List<Geometry> changes = new ArrayList<Geometry>();
+        // 是否丢失了部分变化
+        private boolean overflow = true;
+
+        /**
+         * 获得自上次清空以来添加或移除的物体。物体现在是否在列表中，由RenderList.contains()判断。
+         * @return
+         */
+        public List<Geometry> getChanges() {
+            return changes;
+        }
+
+        /**
+         * 是否丢失了部分变化。为true时需要与整个列表重新同步，而不是读取getChanges()。
+         * @return
+         */
+        public boolean isOverflow() {
+            return overflow;
+        }
+
+        /**
+         * 使用者处理完变化后调用
+         */
+        public void clear() {
+            changes.clear();
+            overflow = false;
+        }
+    }
+
+    /**
+     * 添加一个子树中的物体
+     * @param spatial
+     */
+    void add(Spatial spatial) {
+        if (spatial instanceof Geometry) {
+            addGeometry((Geometry) spatial);
+        } else if (spatial instanceof BatchNode) {
+            batchNodes.add((BatchNode) spatial);
+            batchGeometries.add(new ArrayList<Geometry>());
+            batchVersions.add(-1);
+        } else if (spatial instanceof Node) {
+            List<Spatial> children = ((Node) spatial).getChildren();
+            int len = children.size();
+            for(int i = 0; i < len; i++) {
+                add(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * 移除一个子树中的物体
+     * @param spatial
+     */
+    void remove(Spatial spatial) {
+        if (spatial instanceof Geometry) {
+            removeGeometry((Geometry) spatial);
+        } else if (spatial instanceof BatchNode) {
+            int index = batchNodes.indexOf(spatial);
+            if (index >= 0) {
+                List<Geometry> batches = batchGeometries.get(index);
+                for(int i = 0; i < batches.size(); i++) {
+                    removeGeometry(batches.get(i));
+                }
+                batchNodes.remove(index);
+                batchGeometries.remove(index);
+                batchVersions.remove(index);
+            }
+        } else if (spatial instanceof Node) {
+            List<Spatial> children = ((Node) spatial).getChildren();
+            int len = children.size();
+            for(int i = 0; i < len; i++) {
+                remove(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * 检查批处理节点是否重新合并，用新的合并物体替换旧的。每帧在使用列表前调用一次。
+     */
+    public void update() {
+        int len = batchNodes.size();
+        for(int i = 0; i < len; i++) {
+            BatchNode batchNode = batchNodes.get(i);
+            batchNode.updateBatches();
+
+            int version = batchNode.getBatchVersion();
+            if (version == batchVersions.get(i)) {
+                continue;
+            }
+
+            List<Geometry> published = batchGeometries.get(i);
+            for(int j = 0; j < published.size(); j++) {
+                removeGeometry(published.get(j));
+            }
+            published.clear();
+
+            List<Geometry> batches = batchNode.getBatches();
+            for(int j = 0; j < batches.size(); j++) {
+                Geometry geom = batches.get(j);
+                addGeometry(geom);
+                published.add(geom);
+            }
+            batchVersions.set(i, version);
+        }
+    }
+
+    private void addGeometry(Geometry geom) {
+        if (indexes.containsKey(geom)) {
+            return;
+        }
+        indexes.put(geom, geometries.size());
+        geometries.add(geom);
+        recordChange(geom);
+    }
+
+    private void removeGeometry(Geometry geom) {
+        int index = indexes.remove(geom);
+        if (index < 0) {
+            return;
+        }
+
+        // 用最后一个物体填补空位
+        Geometry last = geometries.remove(geometries.size() - 1);
+        if (last != geom) {
+            indexes.put(last, index);
+            geometries.set(index, last);
+        }
+        recordChange(geom);
+    }
+
+    /**
+     * 判断物体是否在列表中
+     * @param geom
+     * @return
+     */
+    public boolean contains(Geometry geom) {
+        return indexes.containsKey(geom);
+    }
+
+    /**
+     * 把物体的变化写入所有变化记录
+     * @param geom
+     */
+    private void recordChange(Geometry geom) {
+        int len = changeLogs.size();
+        for(int i = 0; i < len; i++) {
+            ChangeLog log = changeLogs.get(i);
+            if (log.overflow) {
+                continue;
+            }
+            // 记录比列表本身还多时，重新同步比逐条处理更快。
+            if (log.changes.size() >= Math.max(MIN_LOG_CAPACITY, geometries.size())) {
+                log.changes.clear();
+                log.overflow = true;
+            } else {
+                log.changes.add(geom);
+            }
+        }
+    }
+
+    /**
+     * 创建一个变化记录。新的记录处于溢出状态，使用者需要先与整个列表同步一次。
+     * @return
+     */
+    public ChangeLog openChangeLog() {
+        ChangeLog log = new ChangeLog();
+        changeLogs.add(log);
+        return log;
+    }
+
+    /**
+     * 关闭变化记录，之后不再记录变化。
+     * @param log
+     */
+    public void closeChangeLog(ChangeLog log) {
+        changeLogs.remove(log);
+    }
+
+    /**
+     * 获得所有物体。返回的列表不应被修改。
+     * @return
+     */
+    public List<Geometry> getGeometries() {
+        return geometries;
+    }
+
+    public int size() {
+        return geometries.size();
+    }
+}
@@ -1,6 +1,9 @@
 package scene;
 
+import math.Matrix4f;
+import math.Quaternion;
 import math.Transform;
+import math.Vector3f;
 
 /**
  * 代表三维空间，是Geometry和Node的父类。
@@ -13,26 +16,179 @@ public abstract class Spatial {
     private Transform localTransform = new Transform();
     // 世界空间变换
     private Transform worldTransform = new Transform();
+    // 世界变换矩阵，与世界空间变换同时更新。
+    private Matrix4f worldMatrix = new Matrix4f();
+    // 世界变换是否需要重新计算
+    boolean transformRefresh = true;
+    // 世界变换的版本号，每次重新计算后加1，用于判断依赖世界变换的缓存是否失效。
+    private int worldVersion = 0;
+    
+    // 绑定的空间变换存储和实体编号，绑定后世界变换从存储中读取。
+    private TransformStore transformStore;
+    private int entity = -1;
+    // 最近一次从存储中读取时实体世界变换的版本号
+    private int storeVersion = -1;
     
     /**
-     * 获得相对空间变换
+     * 获得相对空间变换。
+     * <p>
+     * 调用者可能直接修改返回的对象，因此调用此方法会把自己和所有子节点的世界变换标记为需要更新。
+     * 绑定了空间变换存储时，返回的是存储中相对变换的副本，修改它不会生效，应该使用setLocal*方法。
+     * </p>
      * @return
      */
     public Transform getLocalTransform() {
+        if (transformStore != null) {
+            return transformStore.getLocalTransform(entity, localTransform);
+        }
+        setTransformRefresh();
         return localTransform;
     }
+    
+    /**
+     * 绑定到空间变换存储中的实体，此后Spatial只作为实体的句柄：
+     * setLocal*方法写入存储，世界变换在存储更新后从中读取，不再由父节点计算。
+     * 绑定的Node的子节点也应该绑定到同一个存储中，且实体的父子关系与场景图一致。
+     * @param store 为null时解除绑定
+     * @param entity 实体编号
+     */
+    public void bindTransformStore(TransformStore store, int entity) {
+        if (store != null) {
+            store.setLocalTransform(entity, localTransform);
+        } else if (transformStore != null) {
+            transformStore.getLocalTransform(this.entity, localTransform);
+        }
+        this.transformStore = store;
+        this.entity = store != null ? entity : -1;
+        this.storeVersion = -1;
+        setTransformRefresh();
+    }
+    
+    public TransformStore getTransformStore() {
+        return transformStore;
+    }
+    
+    public int getEntity() {
+        return entity;
+    }
+    
+    /**
+     * 相对变换被修改
+     */
+    private void localTransformChanged() {
+        if (transformStore != null) {
+            transformStore.setLocalTransform(entity, localTransform);
+        } else {
+            setTransformRefresh();
+        }
+    }
+    
+    /**
+     * 设置相对空间变换
+     * @param transform
+     */
+    public void setLocalTransform(Transform transform) {
+        localTransform.set(transform);
+        localTransformChanged();
+    }
+    
+    public void setLocalTranslation(Vector3f translation) {
+        localTransform.setTranslation(translation);
+        localTransformChanged();
+    }
+    
+    public void setLocalTranslation(float x, float y, float z) {
+        localTransform.setTranslation(x, y, z);
+        localTransformChanged();
+    }
+    
+    public void setLocalRotation(Quaternion rotation) {
+        localTransform.setRotation(rotation);
+        localTransformChanged();
+    }
+    
+    public void setLocalScale(float scale) {
+        localTransform.setScale(scale);
+        localTransformChanged();
+    }
+    
+    public void setLocalScale(float x, float y, float z) {
+        localTransform.setScale(x, y, z);
+        localTransformChanged();
+    }
 
     /**
-     * 获得世界空间变换
+     * 获得世界空间变换。只有相对变换或父节点的世界变换发生变化后才会重新计算。
      * @return
      */
     public Transform getWorldTransform() {
+        checkWorldTransform();
+        return worldTransform;
+    }
+    
+    /**
+     * 获得世界变换矩阵
+     * @return
+     */
+    public Matrix4f getWorldMatrix() {
+        checkWorldTransform();
+        return worldMatrix;
+    }
+    
+    /**
+     * 获得世界变换的版本号
+     * @return
+     */
+    public int getWorldVersion() {
+        checkWorldTransform();
+        return worldVersion;
+    }
+    
+    /**
+     * 标记世界变换需要重新计算。Node会把标记传递给所有子节点。
+     */
+    protected void setTransformRefresh() {
+        transformRefresh = true;
+    }
+    
+    /**
+     * 自顶向下更新世界变换，每帧在渲染前调用一次。
+     * 只有被标记的节点才会重新计算，且每个节点只计算一次。
+     */
+    public void updateGeometricState() {
+        checkWorldTransform();
+    }
+    
+    /**
+     * 世界变换过期时重新计算，绑定了空间变换存储时从存储中读取。
+     */
+    private void checkWorldTransform() {
+        if (transformStore != null) {
+            int version = transformStore.getWorldVersion(entity);
+            if (version != storeVersion) {
+                transformStore.getWorldTransform(entity, worldTransform);
+                transformStore.getWorldMatrix(entity, worldMatrix);
+                storeVersion = version;
+                worldVersion++;
+            }
+            transformRefresh = false;
+        } else if (transformRefresh) {
+            updateWorldTransform();
+        }
+    }
+    
+    /**
+     * 根据相对变换和父节点的世界变换计算世界变换
+     */
+    private void updateWorldTransform() {
         worldTransform.set(localTransform);
         if (parent != null) {
-            // 合并父节点的空间变换
+            // 合并父节点的空间变换，父节点需要更新时先更新父节点。
             worldTransform.combineWithParent(parent.getWorldTransform());
         }
-        return worldTransform;
+        worldTransform.toTransformMatrix(worldMatrix);
+        worldVersion++;
+        transformRefresh = false;
     }
     
     /**
@@ -53,6 +209,7 @@ public abstract class Spatial {
             removeFromParent();
         }
         this.parent = newParent;
+        setTransformRefresh();
     }
     
     /**
@@ -0,0 +1,437 @@
+package scene;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import math.Matrix4f;
+import math.Quaternion;
+import math.Transform;
+import math.Vector3f;
+
+/**
+ * 面向数据的空间变换存储。
+ * <p>
+ * 每个实体用一个整数编号表示，相对变换（平移、旋转、缩放）、世界变换和世界变换矩阵
+ * 分别按编号连续存放在float数组中，而不是分散在每个Spatial的多个对象里。
+ * 父实体必须先于子实体创建，因此编号从小到大依次计算就能保证父实体先于子实体更新，
+ * 更新所有实体只需要对数组做一次线性遍历。也可以按层次深度分批并行更新。
+ * </p>
+ * Spatial可以通过bindTransformStore()绑定到一个实体上，此时它只是实体的句柄，世界变换从这里读取。
+ */
+public class TransformStore {
+
+    // 世界变换矩阵按行优先保存前三行，第四行总是(0, 0, 0, 1)。
+    public static final int MATRIX_SIZE = 12;
+
+    // 一批并行任务至少处理的实体数量
+    private static final int PARALLEL_GRAIN = 1024;
+
+    // 实体数量
+    private int size;
+
+    // 父实体编号，根实体为-1。
+    private int[] parents;
+    // 层次深度，根实体为0。
+    private int[] depths;
+
+    // 相对变换
+    private float[] localTranslations;
+    private float[] localRotations;
+    private float[] localScales;
+
+    // 世界变换
+    private float[] worldTranslations;
+    private float[] worldRotations;
+    private float[] worldScales;
+    private float[] worldMatrices;
+
+    // 相对变换是否被修改
+    private boolean[] dirty;
+    // 最近一次更新世界变换时的更新计数
+    private int[] updateStamps;
+    // 世界变换的版本号
+    private int[] worldVersions;
+
+    // 更新计数
+    private int stamp;
+
+    // 按层次深度分组的实体编号，用于并行更新。
+    private int[][] levels;
+
+    public TransformStore() {
+        this(256);
+    }
+
+    /**
+     * @param capacity 初始容量
+     */
+    public TransformStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        parents = new int[capacity];
+        depths = new int[capacity];
+        localTranslations = new float[capacity * 3];
+        localRotations = new float[capacity * 4];
+        localScales = new float[capacity * 3];
+        worldTranslations = new float[capacity * 3];
+        worldRotations = new float[capacity * 4];
+        worldScales = new float[capacity * 3];
+        worldMatrices = new float[capacity * MATRIX_SIZE];
+        dirty = new boolean[capacity];
+        updateStamps = new int[capacity];
+        worldVersions = new int[capacity];
+    }
+
+    /**
+     * 创建一个实体，相对变换为单位变换。
+     * @param parent 父实体编号，没有父实体时为-1。
+     * @return 实体编号
+     */
+    public int create(int parent) {
+        if (parent < -1 || parent >= size) {
+            throw new IllegalArgumentException("Parent entity does not exist: " + parent);
+        }
+
+        if (size == parents.length) {
+            grow(size * 2);
+        }
+
+        int id = size++;
+        parents[id] = parent;
+        depths[id] = parent < 0 ? 0 : depths[parent] + 1;
+
+        localTranslations[id * 3] = 0;
+        localTranslations[id * 3 + 1] = 0;
+        localTranslations[id * 3 + 2] = 0;
+        localRotations[id * 4] = 0;
+        localRotations[id * 4 + 1] = 0;
+        localRotations[id * 4 + 2] = 0;
+        localRotations[id * 4 + 3] = 1;
+        localScales[id * 3] = 1;
+        localScales[id * 3 + 1] = 1;
+        localScales[id * 3 + 2] = 1;
+
+        dirty[id] = true;
+        updateStamps[id] = stamp;
+        worldVersions[id] = 0;
+        levels = null;
+        return id;
+    }
+
+    /**
+     * 扩大容量
+     * @param capacity
+     */
+    private void grow(int capacity) {
+        parents = Arrays.copyOf(parents, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        localTranslations = Arrays.copyOf(localTranslations, capacity * 3);
+        localRotations = Arrays.copyOf(localRotations, capacity * 4);
+        localScales = Arrays.copyOf(localScales, capacity * 3);
+        worldTranslations = Arrays.copyOf(worldTranslations, capacity * 3);
+        worldRotations = Arrays.copyOf(worldRotations, capacity * 4);
+        worldScales = Arrays.copyOf(worldScales, capacity * 3);
+        worldMatrices = Arrays.copyOf(worldMatrices, capacity * MATRIX_SIZE);
+        dirty = Arrays.copyOf(dirty, capacity);
+        updateStamps = Arrays.copyOf(updateStamps, capacity);
+        worldVersions = Arrays.copyOf(worldVersions, capacity);
+    }
+
+    /**
+     * 线性遍历所有实体，更新相对变换被修改或父实体被更新过的实体的世界变换。
+     */
+    public void update() {
+        stamp++;
+        for(int i = 0; i < size; i++) {
+            updateEntity(i);
+        }
+    }
+
+    /**
+     * 按层次深度逐层并行更新世界变换。同一层的实体互不依赖，可以同时计算。
+     * 实体较少时直接线性遍历。
+     */
+    public void updateParallel() {
+        if (size < PARALLEL_GRAIN * 2) {
+            update();
+            return;
+        }
+
+        if (levels == null) {
+            buildLevels();
+        }
+
+        stamp++;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for(int i = 0; i < levels.length; i++) {
+            int[] level = levels[i];
+            if (level.length < PARALLEL_GRAIN * 2) {
+                for(int j = 0; j < level.length; j++) {
+                    updateEntity(level[j]);
+                }
+            } else {
+                pool.invoke(new UpdateTask(level, 0, level.length));
+            }
+        }
+    }
+
+    /**
+     * 按层次深度对实体分组
+     */
+    private void buildLevels() {
+        int maxDepth = 0;
+        for(int i = 0; i < size; i++) {
+            maxDepth = Math.max(maxDepth, depths[i]);
+        }
+
+        int[] counts = new int[maxDepth + 1];
+        for(int i = 0; i < size; i++) {
+            counts[depths[i]]++;
+        }
+
+        levels = new int[maxDepth + 1][];
+        for(int i = 0; i <= maxDepth; i++) {
+            levels[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for(int i = 0; i < size; i++) {
+            int depth = depths[i];
+            levels[depth][counts[depth]++] = i;
+        }
+    }
+
+    /**
+     * 并行更新同一层实体的任务，把区间不断二分直到足够小。
+     */
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] level;
+        private final int from;
+        private final int to;
+
+        UpdateTask(int[] level, int from, int to) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                for(int i = from; i < to; i++) {
+                    updateEntity(level[i]);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new UpdateTask(level, from, mid), new UpdateTask(level, mid, to));
+            }
+        }
+    }
+
+    /**
+     * 根据相对变换和父实体的世界变换计算世界变换，与Transform.combineWithParent()相同。
+     * @param id
+     */
+    private void updateEntity(int id) {
+        int parent = parents[id];
+        if (!dirty[id] && (parent < 0 || updateStamps[parent] != stamp)) {
+            return;
+        }
+
+        int t = id * 3;
+        int r = id * 4;
+
+        float tx = localTranslations[t], ty = localTranslations[t + 1], tz = localTranslations[t + 2];
+        float qx = localRotations[r], qy = localRotations[r + 1], qz = localRotations[r + 2], qw = localRotations[r + 3];
+        float sx = localScales[t], sy = localScales[t + 1], sz = localScales[t + 2];
+
+        if (parent >= 0) {
+            int pt = parent * 3;
+            int pr = parent * 4;
+            float psx = worldScales[pt], psy = worldScales[pt + 1], psz = worldScales[pt + 2];
+            float px = worldRotations[pr], py = worldRotations[pr + 1], pz = worldRotations[pr + 2], pw = worldRotations[pr + 3];
+
+            // 缩放
+            sx *= psx;
+            sy *= psy;
+            sz *= psz;
+
+            // 旋转：父旋转 * 相对旋转
+            float rx = px * qw + py * qz - pz * qy + pw * qx;
+            float ry = -px * qz + py * qw + pz * qx + pw * qy;
+            float rz = px * qy - py * qx + pz * qw + pw * qz;
+            float rw = -px * qx - py * qy - pz * qz + pw * qw;
+            qx = rx;
+            qy = ry;
+            qz = rz;
+            qw = rw;
+
+            // 平移：先按父缩放，再按父旋转，最后加上父平移。
+            // 使用 v' = v + w * c + q x c，其中 c = 2 * (q x v)
+            float vx = tx * psx, vy = ty * psy, vz = tz * psz;
+            float cx = 2 * (py * vz - pz * vy);
+            float cy = 2 * (pz * vx - px * vz);
+            float cz = 2 * (px * vy - py * vx);
+            tx = vx + pw * cx + (py * cz - pz * cy) + worldTranslations[pt];
+            ty = vy + pw * cy + (pz * cx - px * cz) + worldTranslations[pt + 1];
+            tz = vz + pw * cz + (px * cy - py * cx) + worldTranslations[pt + 2];
+        }
+
+        worldTranslations[t] = tx;
+        worldTranslations[t + 1] = ty;
+        worldTranslations[t + 2] = tz;
+        worldRotations[r] = qx;
+        worldRotations[r + 1] = qy;
+        worldRotations[r + 2] = qz;
+        worldRotations[r + 3] = qw;
+        worldScales[t] = sx;
+        worldScales[t + 1] = sy;
+        worldScales[t + 2] = sz;
+
+        // 世界变换矩阵 = T * R * S，旋转矩阵的各列分别乘以缩放系数。
+        float x2 = qx * 2, y2 = qy * 2, z2 = qz * 2;
+        float xx = qx * x2, xy = qx * y2, xz = qx * z2, xw = qw * x2;
+        float yy = qy * y2, yz = qy * z2, yw = qw * y2;
+        float zz = qz * z2, zw = qw * z2;
+
+        int m = id * MATRIX_SIZE;
+        worldMatrices[m] = (1 - (yy + zz)) * sx;
+        worldMatrices[m + 1] = (xy - zw) * sy;
+        worldMatrices[m + 2] = (xz + yw) * sz;
+        worldMatrices[m + 3] = tx;
+        worldMatrices[m + 4] = (xy + zw) * sx;
+        worldMatrices[m + 5] = (1 - (xx + zz)) * sy;
+        worldMatrices[m + 6] = (yz - xw) * sz;
+        worldMatrices[m + 7] = ty;
+        worldMatrices[m + 8] = (xz - yw) * sx;
+        worldMatrices[m + 9] = (yz + xw) * sy;
+        worldMatrices[m + 10] = (1 - (xx + yy)) * sz;
+        worldMatrices[m + 11] = tz;
+
+        dirty[id] = false;
+        updateStamps[id] = stamp;
+        worldVersions[id]++;
+    }
+
+    // 相对变换
+
+    public void setLocalTranslation(int id, float x, float y, float z) {
+        int t = id * 3;
+        localTranslations[t] = x;
+        localTranslations[t + 1] = y;
+        localTranslations[t + 2] = z;
+        dirty[id] = true;
+    }
+
+    public void setLocalRotation(int id, float x, float y, float z, float w) {
+        int r = id * 4;
+        localRotations[r] = x;
+        localRotations[r + 1] = y;
+        localRotations[r + 2] = z;
+        localRotations[r + 3] = w;
+        dirty[id] = true;
+    }
+
+    public void setLocalRotation(int id, Quaternion rot) {
+        setLocalRotation(id, rot.x, rot.y, rot.z, rot.w);
+    }
+
+    public void setLocalScale(int id, float x, float y, float z) {
+        int t = id * 3;
+        localScales[t] = x;
+        localScales[t + 1] = y;
+        localScales[t + 2] = z;
+        dirty[id] = true;
+    }
+
+    /**
+     * 设置实体的相对变换
+     * @param id
+     * @param transform
+     */
+    public void setLocalTransform(int id, Transform transform) {
+        Vector3f t = transform.getTranslation();
+        Vector3f s = transform.getScale();
+        setLocalTranslation(id, t.x, t.y, t.z);
+        setLocalRotation(id, transform.getRotation());
+        setLocalScale(id, s.x, s.y, s.z);
+    }
+
+    /**
+     * 获得实体的相对变换，结果保存在store中。
+     * @param id
+     * @param store
+     * @return
+     */
+    public Transform getLocalTransform(int id, Transform store) {
+        if (store == null) {
+            store = new Transform();
+        }
+        int t = id * 3;
+        int r = id * 4;
+        store.setTranslation(localTranslations[t], localTranslations[t + 1], localTranslations[t + 2]);
+        store.getRotation().set(localRotations[r], localRotations[r + 1], localRotations[r + 2], localRotations[r + 3]);
+        store.setScale(localScales[t], localScales[t + 1], localScales[t + 2]);
+        return store;
+    }
+
+    // 世界变换
+
+    /**
+     * 获得实体的世界变换，结果保存在store中。
+     * @param id
+     * @param store
+     * @return
+     */
+    public Transform getWorldTransform(int id, Transform store) {
+        if (store == null) {
+            store = new Transform();
+        }
+        int t = id * 3;
+        int r = id * 4;
+        store.setTranslation(worldTranslations[t], worldTranslations[t + 1], worldTranslations[t + 2]);
+        store.getRotation().set(worldRotations[r], worldRotations[r + 1], worldRotations[r + 2], worldRotations[r + 3]);
+        store.setScale(worldScales[t], worldScales[t + 1], worldScales[t + 2]);
+        return store;
+    }
+
+    /**
+     * 获得实体的世界变换矩阵，结果保存在store中。
+     * @param id
+     * @param store
+     * @return
+     */
+    public Matrix4f getWorldMatrix(int id, Matrix4f store) {
+        if (store == null) {
+            store = new Matrix4f();
+        }
+        store.setAffine(worldMatrices, id * MATRIX_SIZE);
+        return store;
+    }
+
+    /**
+     * 获得实体世界变换的版本号，每次重新计算后加1。
+     * @param id
+     * @return
+     */
+    public int getWorldVersion(int id) {
+        return worldVersions[id];
+    }
+
+    /**
+     * 获得所有实体的世界变换矩阵，每个实体占MATRIX_SIZE个元素。
+     * @return
+     */
+    public float[] getWorldMatrices() {
+        return worldMatrices;
+    }
+
+    public int getParent(int id) {
+        return parents[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -5,7 +5,8 @@ import math.Vector3f;
 import math.Vector4f;
 
 /**
- * 顶点数据
+ * 顶点数据，用于方便地构造网格。
+ * <p>网格不持有Vertex对象，构造时它们被复制到按 {@link VertexFormat} 交错存放的float数组中。</p>
  */
 public class Vertex {
 
@@ -13,5 +14,8 @@ public class Vertex {
     public Vector3f normal;    // 顶点法线
     public Vector4f color;     // 顶点颜色
     public Vector2f texCoord;  // 纹理坐标
+    
+    public int[] joints;       // 影响顶点的骨骼编号，最多4个，用于骨骼动画。
+    public float[] weights;    // 对应骨骼的权重
 
 }
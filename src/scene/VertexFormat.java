@@ -0,0 +1,266 @@
+package scene;
+
+import math.Vector2f;
+import math.Vector3f;
+import math.Vector4f;
+
+/**
+ * 顶点格式，描述网格顶点数据中各属性的排列方式。
+ * <p>
+ * 网格的所有顶点交错存放在一个float数组中，每个顶点占用stride个float，
+ * 属性依次为位置(3)、法线(3)、纹理坐标(2)、颜色(4)、骨骼编号(4)、骨骼权重(4)。
+ * 位置总是存在，其余属性可选，不存在的属性不占用空间，偏移量为-1。骨骼编号以float保存。
+ * </p>
+ */
+public final class VertexFormat {
+
+    /**
+     * 属性标志
+     */
+    public final static int POSITION = 1;
+    public final static int NORMAL = 2;
+    public final static int TEXCOORD = 4;
+    public final static int COLOR = 8;
+    public final static int JOINTS = 16;
+    public final static int WEIGHTS = 32;
+
+    /**
+     * 每个顶点最多受影响的骨骼数量
+     */
+    public final static int MAX_WEIGHTS = 4;
+
+    // 各属性占用的float数量，与标志的顺序一致。
+    private final static int[] SIZES = {3, 3, 2, 4, MAX_WEIGHTS, MAX_WEIGHTS};
+
+    private final int attributes;
+    private final int[] offsets = new int[SIZES.length];
+    private final int stride;
+
+    /**
+     * 创建顶点格式
+     * @param attributes 属性标志的组合，总是包含位置。
+     */
+    public VertexFormat(int attributes) {
+        this.attributes = attributes | POSITION;
+
+        int offset = 0;
+        for(int i = 0; i < SIZES.length; i++) {
+            if ((this.attributes & (1 << i)) != 0) {
+                offsets[i] = offset;
+                offset += SIZES[i];
+            } else {
+                offsets[i] = -1;
+            }
+        }
+        this.stride = offset;
+    }
+
+    /**
+     * 根据一组顶点对象确定顶点格式，只要有一个顶点具有某个属性，格式中就包含该属性。
+     * @param vertexes
+     * @return
+     */
+    public static VertexFormat of(Vertex[] vertexes) {
+        int attributes = POSITION;
+        for(int i = 0; i < vertexes.length; i++) {
+            Vertex v = vertexes[i];
+            if (v == null) {
+                continue;
+            }
+            if (v.normal != null) attributes |= NORMAL;
+            if (v.texCoord != null) attributes |= TEXCOORD;
+            if (v.color != null) attributes |= COLOR;
+            if (v.joints != null) attributes |= JOINTS;
+            if (v.weights != null) attributes |= WEIGHTS;
+        }
+        return new VertexFormat(attributes);
+    }
+
+    /**
+     * 把顶点对象写入顶点数据。顶点没有的属性写入默认值：颜色为白色，其余为0。
+     * @param vertex 为null时全部写入默认值
+     * @param data
+     * @param offset 顶点在数组中的下标
+     */
+    public void write(Vertex vertex, float[] data, int offset) {
+        for(int i = 0; i < stride; i++) {
+            data[offset + i] = 0f;
+        }
+        if (offsets[3] >= 0) {
+            int c = offset + offsets[3];
+            data[c] = data[c + 1] = data[c + 2] = data[c + 3] = 1f;
+        }
+        if (vertex == null) {
+            return;
+        }
+
+        if (vertex.position != null) {
+            data[offset] = vertex.position.x;
+            data[offset + 1] = vertex.position.y;
+            data[offset + 2] = vertex.position.z;
+        }
+        if (offsets[1] >= 0 && vertex.normal != null) {
+            int n = offset + offsets[1];
+            data[n] = vertex.normal.x;
+            data[n + 1] = vertex.normal.y;
+            data[n + 2] = vertex.normal.z;
+        }
+        if (offsets[2] >= 0 && vertex.texCoord != null) {
+            int t = offset + offsets[2];
+            data[t] = vertex.texCoord.x;
+            data[t + 1] = vertex.texCoord.y;
+        }
+        if (offsets[3] >= 0 && vertex.color != null) {
+            int c = offset + offsets[3];
+            data[c] = vertex.color.x;
+            data[c + 1] = vertex.color.y;
+            data[c + 2] = vertex.color.z;
+            data[c + 3] = vertex.color.w;
+        }
+        if (offsets[4] >= 0 && vertex.joints != null) {
+            int j = offset + offsets[4];
+            for(int k = 0; k < Math.min(MAX_WEIGHTS, vertex.joints.length); k++) {
+                data[j + k] = vertex.joints[k];
+            }
+        }
+        if (offsets[5] >= 0 && vertex.weights != null) {
+            int w = offset + offsets[5];
+            for(int k = 0; k < Math.min(MAX_WEIGHTS, vertex.weights.length); k++) {
+                data[w + k] = vertex.weights[k];
+            }
+        }
+    }
+
+    /**
+     * 从顶点数据中读出一个顶点，创建新的对象。
+     * @param data
+     * @param offset 顶点在数组中的下标
+     * @return
+     */
+    public Vertex read(float[] data, int offset) {
+        Vertex v = new Vertex();
+        v.position = new Vector3f(data[offset], data[offset + 1], data[offset + 2]);
+        if (offsets[1] >= 0) {
+            int n = offset + offsets[1];
+            v.normal = new Vector3f(data[n], data[n + 1], data[n + 2]);
+        }
+        if (offsets[2] >= 0) {
+            int t = offset + offsets[2];
+            v.texCoord = new Vector2f(data[t], data[t + 1]);
+        }
+        if (offsets[3] >= 0) {
+            int c = offset + offsets[3];
+            v.color = new Vector4f(data[c], data[c + 1], data[c + 2], data[c + 3]);
+        }
+        if (offsets[4] >= 0) {
+            int j = offset + offsets[4];
+            v.joints = new int[MAX_WEIGHTS];
+            for(int k = 0; k < MAX_WEIGHTS; k++) {
+                v.joints[k] = (int) data[j + k];
+            }
+        }
+        if (offsets[5] >= 0) {
+            int w = offset + offsets[5];
+            v.weights = new float[MAX_WEIGHTS];
+            for(int k = 0; k < MAX_WEIGHTS; k++) {
+                v.weights[k] = data[w + k];
+            }
+        }
+        return v;
+    }
+
+    /**
+     * 把一组顶点从另一种格式转换为当前格式。当前格式没有的属性被丢弃，源格式没有的属性写入默认值。
+     * @param srcFormat 源格式
+     * @param src 源顶点数据
+     * @param srcIndex 第一个源顶点的编号
+     * @param dst 目标顶点数据
+     * @param dstIndex 第一个目标顶点的编号
+     * @param count 顶点数量
+     */
+    public void convert(VertexFormat srcFormat, float[] src, int srcIndex, float[] dst, int dstIndex, int count) {
+        if (srcFormat.attributes == attributes) {
+            System.arraycopy(src, srcIndex * stride, dst, dstIndex * stride, count * stride);
+            return;
+        }
+
+        for(int i = 0; i < count; i++) {
+            int s = (srcIndex + i) * srcFormat.stride;
+            int d = (dstIndex + i) * stride;
+            for(int a = 0; a < SIZES.length; a++) {
+                if (offsets[a] < 0) {
+                    continue;
+                }
+                if (srcFormat.offsets[a] >= 0) {
+                    System.arraycopy(src, s + srcFormat.offsets[a], dst, d + offsets[a], SIZES[a]);
+                } else {
+                    // 颜色默认为白色
+                    float value = (1 << a) == COLOR ? 1f : 0f;
+                    for(int k = 0; k < SIZES[a]; k++) {
+                        dst[d + offsets[a] + k] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断是否包含属性
+     * @param attribute 属性标志
+     * @return
+     */
+    public boolean has(int attribute) {
+        return (attributes & attribute) == attribute;
+    }
+
+    public int getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 获得每个顶点占用的float数量
+     * @return
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    public int getPositionOffset() {
+        return offsets[0];
+    }
+
+    public int getNormalOffset() {
+        return offsets[1];
+    }
+
+    public int getTexCoordOffset() {
+        return offsets[2];
+    }
+
+    public int getColorOffset() {
+        return offsets[3];
+    }
+
+    public int getJointsOffset() {
+        return offsets[4];
+    }
+
+    public int getWeightsOffset() {
+        return offsets[5];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VertexFormat && ((VertexFormat) obj).attributes == attributes;
+    }
+
+    @Override
+    public int hashCode() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "VertexFormat [attributes=" + attributes + ", stride=" + stride + "]";
+    }
+}
@@ -1,10 +1,6 @@
 package scene.shape;
 
-import math.Vector2f;
-import math.Vector3f;
-import math.Vector4f;
 import scene.Mesh;
-import scene.Vertex;
 
 /**
  * 四边形网格。
@@ -51,16 +47,6 @@ public class Quad extends Mesh {
                 0, 2, 3
         };
         
-        this.vertexes = new Vertex[positions.length / 3];
-        
-        for(int i = 0; i < indexes.length; i++) {
-            int index = indexes[i];
-            
-            vertexes[index] = new Vertex();
-            vertexes[index].position = new Vector3f( positions[index*3], positions[index*3+1], positions[index*3+2]);
-            vertexes[index].normal = new Vector3f( normals[index*3], normals[index*3+1], normals[index*3+2]);
-            vertexes[index].color = new Vector4f( colors[index*4], colors[index*4+1], colors[index*4+2], colors[index*4+3]);
-            vertexes[index].texCoord = new Vector2f(texCoords[index*2], texCoords[index*2+1]);
-        }
+        setVertexData(positions, normals, texCoords, colors);
     }
 }
@@ -1,9 +1,8 @@
 package scene.shape;
 
-import math.Vector2f;
 import math.Vector3f;
 import scene.Mesh;
-import scene.Vertex;
+import scene.VertexFormat;
 
 /**
  * 球体网格
@@ -47,12 +46,35 @@ public class Sphere extends Mesh {
         createIndexBuffer();
     }
     
+    /**
+     * 生成球体的细节层次（LOD）网格，每一级的经线和纬线数量减半。
+     * @param radius 半径
+     * @param lonCount 最精细一级的经线数量
+     * @param latCount 最精细一级的纬线数量
+     * @param levels 层次数量
+     * @return 各级网格，第0级最精细。
+     */
+    public static Mesh[] createLodLevels(float radius, int lonCount, int latCount, int levels) {
+        Mesh[] meshes = new Mesh[levels];
+        for(int i = 0; i < levels; i++) {
+            meshes[i] = new Sphere(radius, lonCount, latCount);
+            // 经线不少于6根，纬线不少于4根。
+            lonCount = Math.max(6, lonCount / 2);
+            latCount = Math.max(4, (latCount + 1) / 2);
+        }
+        return meshes;
+    }
+    
     /**
      * 生成球体网格
      */
     private void createVertexBuffer() {
         this.vertCount = (latCount - 2) * (lonCount + 1) + 2;
-        this.vertexes = new Vertex[vertCount];
+        VertexFormat format = new VertexFormat(VertexFormat.NORMAL | VertexFormat.TEXCOORD);
+        int stride = format.getStride();
+        int normalOffset = format.getNormalOffset();
+        int texCoordOffset = format.getTexCoordOffset();
+        float[] data = new float[vertCount * stride];
         
         // 生成球体
         
@@ -70,9 +92,9 @@ public class Sphere extends Mesh {
         cos[lonCount] = cos[0];
         
         // 生成Sphere顶点数据
-        Vertex v;
+        Vector3f normal = new Vector3f();
         float factor = 2.0f / (latCount - 1);
-        int i = 0;
+        int v = 0;
         for (int iY = 1; iY < (latCount - 1); iY++) {
             float fAFraction = HALF_PI * (-1.0f + factor * iY); // in (-pi/2, pi/2)
             
@@ -82,45 +104,51 @@ public class Sphere extends Mesh {
             float sliceHeight = (float) sinZ * radius;
             float sliceRadius = (float) Math.cos(fAFraction) * radius;
 
-            // 计算圆截面上的顶点坐标，首位两个顶点共用相同的位置和法线。
-            int iSave = i;
+            // 计算圆截面上的顶点坐标，首位两个顶点具有相同的位置和法线。
+            int vSave = v;
             for (int iR = 0; iR < lonCount; iR++) {
-                v = vertexes[i] = new Vertex();
-                
                 // 顶点坐标
-                v.position = new Vector3f(cos[iR] * sliceRadius, sliceHeight, sin[iR] * sliceRadius);
+                data[v] = cos[iR] * sliceRadius;
+                data[v + 1] = sliceHeight;
+                data[v + 2] = sin[iR] * sliceRadius;
                 
                 // 法线方向
-                v.normal = new Vector3f(v.position);
-                v.normal.normalizeLocal();
-                if (interior) v.normal.negateLocal();
+                normal.set(data[v], data[v + 1], data[v + 2]);
+                normal.normalizeLocal();
+                if (interior) normal.negateLocal();
+                data[v + normalOffset] = normal.x;
+                data[v + normalOffset + 1] = normal.y;
+                data[v + normalOffset + 2] = normal.z;
 
                 // 纹理坐标
-                v.texCoord = new Vector2f(1f - iR * invLonCount, 0.5f * (factor * iY));
+                data[v + texCoordOffset] = 1f - iR * invLonCount;
+                data[v + texCoordOffset + 1] = 0.5f * (factor * iY);
 
-                i++;
+                v += stride;
             }
 
-            v = vertexes[i] = new Vertex();
-            v.position = vertexes[iSave].position;
-            v.normal = vertexes[iSave].normal;
-            v.texCoord = new Vector2f(0f, 0.5f * (factor * iY));
-            i++;
+            // 复制第一个顶点的位置和法线
+            System.arraycopy(data, vSave, data, v, normalOffset + 3);
+            data[v + texCoordOffset] = 0f;
+            data[v + texCoordOffset + 1] = 0.5f * (factor * iY);
+            v += stride;
         }
 
         // 南极点
-        v = vertexes[i] = new Vertex();
-        v.position = new Vector3f(0, -radius, 0);
-        v.normal = new Vector3f(0, interior ? 1 : -1, 0);
-        v.texCoord = new Vector2f(0.5f, 0.0f);
+        data[v + 1] = -radius;
+        data[v + normalOffset + 1] = interior ? 1 : -1;
+        data[v + texCoordOffset] = 0.5f;
+        data[v + texCoordOffset + 1] = 0.0f;
 
-        i++;
+        v += stride;
 
         // 北极点
-        v = vertexes[i] = new Vertex();
-        v.position = new Vector3f(0, radius, 0);
-        v.normal = new Vector3f(0, interior ? -1 : 1, 0);
-        v.texCoord = new Vector2f(0.5f, 1.0f);
+        data[v + 1] = radius;
+        data[v + normalOffset + 1] = interior ? -1 : 1;
+        data[v + texCoordOffset] = 0.5f;
+        data[v + texCoordOffset + 1] = 1.0f;
+        
+        setVertexData(format, data);
     }
     
     /**
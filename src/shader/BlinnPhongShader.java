@@ -4,10 +4,10 @@ import light.AmbientLight;
 import light.DirectionalLight;
 import light.Light;
 import material.Texture;
+import math.FastMath;
 import math.Vector3f;
 import math.Vector4f;
 import scene.RasterizationVertex;
-import scene.Vertex;
 
 /**
  * Blinn-Phong着色器
@@ -61,22 +61,34 @@ public class BlinnPhongShader extends Shader {
             // 计算顶点到光源的方向向量
             lightVector.set(dl.getDirection());
             lightVector.negateLocal();
-            lightVector.normalizeLocal();
             
             // 计算顶点到眼睛的方向向量
             cameraPosition.subtract(position, eyeVector);
-            eyeVector.normalizeLocal();
             
-            // 计算光线和眼睛向量之间的半途向量，用于计算高光反射强度。
-            lightVector.add(eyeVector, halfVector);
-            halfVector.normalizeLocal();
+            if (fastMath) {
+                FastMath.normalizeLocal(lightVector);
+                FastMath.normalizeLocal(eyeVector);
+                // 计算光线和眼睛向量之间的半途向量，用于计算高光反射强度。
+                lightVector.add(eyeVector, halfVector);
+                FastMath.normalizeLocal(halfVector);
+            } else {
+                lightVector.normalizeLocal();
+                eyeVector.normalizeLocal();
+                // 计算光线和眼睛向量之间的半途向量，用于计算高光反射强度。
+                lightVector.add(eyeVector, halfVector);
+                halfVector.normalizeLocal();
+            }
 
             // 计算漫反射强度
             float kd = Math.max(normal.dot(lightVector), 0.0f);
 
             // 计算高光强度
             float ks = Math.max(normal.dot(halfVector), 0.0f);
-            ks = (float) Math.pow(ks, material.getShininess());
+            if (fastMath) {
+                ks = material.getSpecularTable().pow(ks);
+            } else {
+                ks = (float) Math.pow(ks, material.getShininess());
+            }
             
             // 计算漫射光颜色
             material.getDiffuse().mult(light.getColor(), diffuse);
@@ -86,8 +98,9 @@ public class BlinnPhongShader extends Shader {
             material.getSpecular().mult(light.getColor(), specular);
             specular.multLocal(ks);
             
-            // 计算光最终的颜色
-            diffuse.addLocal(specular).multLocal(light.getColor().w);
+            // 计算光最终的颜色，乘以阴影中被照亮的比例。
+            float visibility = getShadowVisibility(dl, position, normal);
+            diffuse.addLocal(specular).multLocal(light.getColor().w * visibility);
             
             return color.set(diffuse.x, diffuse.y, diffuse.z);
         }
@@ -96,14 +109,15 @@ public class BlinnPhongShader extends Shader {
     }
     
     @Override
-    public RasterizationVertex vertexShader(Vertex vertex) {
-        RasterizationVertex out = copy(vertex);
+    public RasterizationVertex vertexShader(int index) {
+        RasterizationVertex out = copy(index);
 
         // 顶点法线
         normalMatrix.mult(out.normal, out.normal);
         out.normal.normalizeLocal();
 
-        worldMatrix.mult(vertex.position, out.worldSpacePosition);
+        position.set(out.position.x, out.position.y, out.position.z);
+        worldMatrix.mult(position, out.worldSpacePosition);
         // 模型-观察-透视 变换
         worldViewProjectionMatrix.mult(out.position, out.position);
         
@@ -122,10 +136,11 @@ public class BlinnPhongShader extends Shader {
             frag.color.y += color.y;
             frag.color.z += color.z;
         }
+        applyInstanceColor(frag.color);
         
         Texture texture = material.getDiffuseMap();
         if (texture != null) {
-            Vector4f texColor = texture.sample2d(frag.texCoord);
+            texture.sample2d(frag.texCoord, texColor);
             frag.color.multLocal(texColor);
         }
         
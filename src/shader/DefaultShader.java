@@ -1,9 +1,7 @@
 package shader;
 
 import material.Texture;
-import math.Vector4f;
 import scene.RasterizationVertex;
-import scene.Vertex;
 
 /**
  * 默认着色器
@@ -11,9 +9,11 @@ import scene.Vertex;
 public class DefaultShader extends Shader {
 
     @Override
-    public RasterizationVertex vertexShader(Vertex vertex) {
-        RasterizationVertex out = copy(vertex);
+    public RasterizationVertex vertexShader(int index) {
+        RasterizationVertex out = copy(index);
 
+        applyInstanceColor(out.color);
+        
         // 模型-观察-透视 变换
         worldViewProjectionMatrix.mult(out.position, out.position);
         
@@ -24,7 +24,7 @@ public class DefaultShader extends Shader {
     public boolean fragmentShader(RasterizationVertex frag) {
         Texture texture = material.getDiffuseMap();
         if (texture != null) {
-            Vector4f texColor = texture.sample2d(frag.texCoord);
+            texture.sample2d(frag.texCoord, texColor);
             frag.color.multLocal(texColor);
         }
         
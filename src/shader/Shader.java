@@ -2,13 +2,15 @@ package shader;
 
 import java.util.List;
 
+import light.DirectionalLight;
 import light.Light;
 import material.Material;
 import math.Matrix3f;
 import math.Matrix4f;
 import math.Vector3f;
+import math.Vector4f;
 import scene.RasterizationVertex;
-import scene.Vertex;
+import scene.VertexFormat;
 
 /**
  * 着色器
@@ -25,17 +27,41 @@ public abstract class Shader {
     
     protected Matrix3f normalMatrix;// 法向量变换矩阵
     protected Vector3f cameraPosition;
+    protected boolean fastMath;// 是否使用快速近似计算光照
     
     // attributes
     protected Material material;
     protected List<Light> lights;
+    protected VertexFormat vertexFormat;// 顶点格式
+    protected float[] vertexData;// 交错存放的顶点数据
+    protected float[] instanceColors;// 所有实例的颜色，每个实例4个float，非实例化渲染时为null。
+    protected int instanceIndex;// 当前实例的编号
+    
+    // 顶点着色器的输出对象，由调用者提供以便复用。为null时创建新的对象。
+    private RasterizationVertex outputVertex;
+    
+    // 临时变量，保存纹理采样的结果。
+    protected Vector4f texColor = new Vector4f();
     
     /**
      * 顶点着色器
-     * @param vertex
+     * @param index 顶点编号，顶点数据由 {@link #setVertexData(VertexFormat, float[])} 设置。
      * @return
      */
-    public abstract RasterizationVertex vertexShader(Vertex vertex);
+    public abstract RasterizationVertex vertexShader(int index);
+    
+    /**
+     * 顶点着色器，输出保存在store中，避免为每个顶点创建新的对象。
+     * @param index
+     * @param store
+     * @return
+     */
+    public RasterizationVertex vertexShader(int index, RasterizationVertex store) {
+        outputVertex = store;
+        RasterizationVertex out = vertexShader(index);
+        outputVertex = null;
+        return out;
+    }
     
     /**
      * 片段着色器
@@ -44,30 +70,74 @@ public abstract class Shader {
     public abstract boolean fragmentShader(RasterizationVertex frag);
 
     /**
-     * 复制顶点数据
-     * @param vertex
+     * 从顶点数据中复制一个顶点。调用者提供了输出对象时，复用该对象，顶点格式中没有的属性恢复为默认值。
+     * @param index 顶点编号
      * @return
      */
-    protected RasterizationVertex copy(Vertex vertex) {
-        RasterizationVertex out = new RasterizationVertex();
+    protected RasterizationVertex copy(int index) {
+        RasterizationVertex out = outputVertex;
+        if (out == null) {
+            out = new RasterizationVertex();
+        } else {
+            out.normal.set(0, 0, 0);
+            out.texCoord.set(0, 0);
+            out.color.set(1, 1, 1, 1);
+            out.worldSpacePosition.set(0, 0, 0);
+        }
+        
+        float[] data = vertexData;
+        VertexFormat format = vertexFormat;
+        int offset = index * format.getStride();
+        
         // 顶点位置
-        out.position.set(vertex.position, 1f);
+        out.position.set(data[offset], data[offset + 1], data[offset + 2], 1f);
         // 顶点法线
-        if (vertex.normal != null) {
-            out.normal.set(vertex.normal);
+        int attr = format.getNormalOffset();
+        if (attr >= 0) {
+            out.normal.set(data[offset + attr], data[offset + attr + 1], data[offset + attr + 2]);
         }
         // 纹理坐标
-        if (vertex.texCoord != null) {
-            out.texCoord.set(vertex.texCoord);
+        attr = format.getTexCoordOffset();
+        if (attr >= 0) {
+            out.texCoord.set(data[offset + attr], data[offset + attr + 1]);
         }
         // 顶点颜色
-        if (vertex.color != null) {
-            out.color.set(vertex.color);
+        attr = format.getColorOffset();
+        if (attr >= 0) {
+            out.color.set(data[offset + attr], data[offset + attr + 1], data[offset + attr + 2], data[offset + attr + 3]);
         }
         
         return out;
     }
     
+    /**
+     * 计算世界空间中的点被定向光源照亮的比例
+     * @param light
+     * @param worldPosition
+     * @param normal 世界空间中的单位法线
+     * @return 0表示完全处于阴影中，1表示完全被照亮。光源没有阴影贴图时返回1。
+     */
+    protected float getShadowVisibility(DirectionalLight light, Vector3f worldPosition, Vector3f normal) {
+        if (light.getShadowMap() == null) {
+            return 1f;
+        }
+        return light.getShadowMap().getVisibility(worldPosition, normal);
+    }
+    
+    /**
+     * 实例化渲染时，把实例颜色叠加到顶点颜色上。
+     * @param color
+     */
+    protected void applyInstanceColor(Vector4f color) {
+        if (instanceColors != null) {
+            int offset = instanceIndex * 4;
+            color.x *= instanceColors[offset];
+            color.y *= instanceColors[offset + 1];
+            color.z *= instanceColors[offset + 2];
+            color.w *= instanceColors[offset + 3];
+        }
+    }
+    
     // getter/setters
     public void setWorldMatrix(Matrix4f worldMatrix) {
         this.worldMatrix = worldMatrix;
@@ -101,6 +171,25 @@ public abstract class Shader {
         this.cameraPosition = cameraPosition;
     }
 
+    /**
+     * 设置实例数据，实例化渲染时每个实例开始前调用。实例变换已经合并到世界变换矩阵中。
+     * @param instanceColors 所有实例的颜色，为null时表示非实例化渲染。
+     * @param instanceIndex 当前实例的编号
+     */
+    public void setInstance(float[] instanceColors, int instanceIndex) {
+        this.instanceColors = instanceColors;
+        this.instanceIndex = instanceIndex;
+    }
+
+    /**
+     * 开启或关闭快速近似计算。开启后，光照计算使用近似的平方根倒数单位化向量，
+     * 用材质的查找表计算高光指数，误差见 FastMath 和 PowTable。
+     * @param fastMath
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+    
     public void setMaterial(Material material) {
         this.material = material;
     }
@@ -108,5 +197,15 @@ public abstract class Shader {
     public void setLights(List<Light> lights) {
         this.lights = lights;
     }
+
+    /**
+     * 设置顶点数据，渲染每个网格之前调用。
+     * @param vertexFormat 顶点格式
+     * @param vertexData 交错存放的顶点数据
+     */
+    public void setVertexData(VertexFormat vertexFormat, float[] vertexData) {
+        this.vertexFormat = vertexFormat;
+        this.vertexData = vertexData;
+    }
     
 }
\ No newline at end of file
@@ -1,9 +1,7 @@
 package shader;
 
 import material.Texture;
-import math.Vector4f;
 import scene.RasterizationVertex;
-import scene.Vertex;
 
 /**
  * Unshaded着色器
@@ -11,8 +9,8 @@ import scene.Vertex;
 public class UnshadedShader extends Shader {
 
     @Override
-    public RasterizationVertex vertexShader(Vertex vertex) {
-        RasterizationVertex out = copy(vertex);
+    public RasterizationVertex vertexShader(int index) {
+        RasterizationVertex out = copy(index);
 
         if (material.isUseVertexColor()) {
             out.color.multLocal(material.getDiffuse());
@@ -20,6 +18,8 @@ public class UnshadedShader extends Shader {
             out.color.set(material.getDiffuse());
         }
         
+        applyInstanceColor(out.color);
+        
         // 模型-观察-透视 变换
         worldViewProjectionMatrix.mult(out.position, out.position);
         
@@ -30,7 +30,7 @@ public class UnshadedShader extends Shader {
     public boolean fragmentShader(RasterizationVertex frag) {
         Texture texture = material.getDiffuseMap();
         if (texture != null) {
-            Vector4f texColor = texture.sample2d(frag.texCoord);
+            texture.sample2d(frag.texCoord, texColor);
             frag.color.multLocal(texColor);
         }
         